@@ -0,0 +1,84 @@
+package org.gcd.etl;
+
+import com.indeed.flamdex.writer.FlamdexDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds one document per invocation from synthetic rows through the default field mapping, as the extraction
+ * does: with the story credits taken from the row's own columns or from gcd_story_credit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentBuilderBenchmark {
+    private static final int ROWS = 4096;
+    private static final long UNIX_TIME = 1546300800L;
+
+    private ExtractionPlan.Binding flamdex;
+    private ExtractionPlan.Binding parquet;
+    private List<BufferedRow> rows;
+    private GcdStoryCredit[] credits;
+    private int row;
+
+    @Setup
+    public void setup() throws SQLException {
+        final GcdMetadata metadata = SyntheticData.metadata();
+        final ExtractionPlan plan = ExtractionPlan.compile(new MappingProfile(), new GcdSchema(),
+                Arrays.asList(OutputType.FLAMDEX, OutputType.PARQUET));
+        flamdex = plan.bind(SyntheticData.COLUMNS, OutputType.FLAMDEX, metadata, UNIX_TIME, new RunMetrics());
+        parquet = plan.bind(SyntheticData.COLUMNS, OutputType.PARQUET, metadata, UNIX_TIME, new RunMetrics());
+        rows = SyntheticData.rows(ROWS, 42);
+        final Random random = new Random(42);
+        credits = new GcdStoryCredit[ROWS];
+        for (int r = 0; r < ROWS; r++) {
+            if (rows.get(r).getObject("story_id") != null) {
+                credits[r] = SyntheticData.credit(rows.get(r).getLong("story_id"), random);
+            }
+        }
+    }
+
+    @Benchmark
+    public FlamdexDocument flamdexDocument() throws SQLException {
+        return flamdex.buildFlamdexDocument(rows.get(nextRow()), null);
+    }
+
+    @Benchmark
+    public FlamdexDocument flamdexDocumentWithCredits() throws SQLException {
+        final int r = nextRow();
+        return flamdex.buildFlamdexDocument(rows.get(r), credits[r]);
+    }
+
+    @Benchmark
+    public GcdIssueData parquetDocument() throws SQLException {
+        return parquet.buildIssueData(rows.get(nextRow()), null);
+    }
+
+    @Benchmark
+    public GcdIssueData parquetDocumentWithCredits() throws SQLException {
+        final int r = nextRow();
+        return parquet.buildIssueData(rows.get(r), credits[r]);
+    }
+
+    private int nextRow() {
+        row = (row + 1) % ROWS;
+        return row;
+    }
+}
@@ -0,0 +1,243 @@
+package org.gcd.etl;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.google.common.io.Resources;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of the ETL: generates a {@link SyntheticGcd} at each of the given scales in an
+ * embedded MariaDB, or in a MySQL server given as -Dloadtest.url=jdbc:mysql://HOST:PORT with -Dloadtest.user
+ * and -Dloadtest.password, runs {@link Main} against it for every {@link OutputType} in a JVM of its own, and
+ * reports documents per second, peak heap and the size of the archives or part files written. Results are
+ * appended to WORK_DIR/results.tsv.
+ * <p>
+ * Usage: LoadTest WORK_DIR [SCALE ...], with scales 1, 5 and 20 by default. Each scale has a database of
+ * its own, which is kept and reused by later runs. The ETL JVMs run with -Dloadtest.heap (default 4g) of heap and the
+ * configuration in -Dloadtest.config (default loadtest.yml).
+ */
+public class LoadTest {
+    private static final Logger log = Logger.getLogger(LoadTest.class);
+
+    private static final String DATE = "2019-01-01";
+    private static final String INDEX_NAME = "gcdload";
+    private static final Pattern DOCUMENTS = Pattern.compile("Wrote (\\d+) documents from GCD database");
+    private static final Pattern PEAK_HEAP = Pattern.compile("Peak heap usage: (\\d+) MB");
+
+    private final File workDir;
+    private final String configTemplate;
+    private final String heap;
+
+    private LoadTest(final File workDir, final String configTemplate, final String heap) {
+        this.workDir = workDir;
+        this.configTemplate = configTemplate;
+        this.heap = heap;
+    }
+
+    private static final class Result {
+        private final double scale;
+        private final OutputType outputType;
+        private final long documents;
+        private final double seconds;
+        private final long peakHeapMb;
+        private final long outputBytes;
+
+        private Result(final double scale, final OutputType outputType, final long documents, final double seconds,
+                final long peakHeapMb, final long outputBytes) {
+            this.scale = scale;
+            this.outputType = outputType;
+            this.documents = documents;
+            this.seconds = seconds;
+            this.peakHeapMb = peakHeapMb;
+            this.outputBytes = outputBytes;
+        }
+
+        private String toTsv() {
+            return String.format("%s\t%s\t%d\t%.1f\t%.0f\t%d\t%d", scale, outputType, documents, seconds, documents / seconds,
+                    peakHeapMb, outputBytes / (1024 * 1024));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.INFO);
+
+        final File workDir = new File(args[0]);
+        final List<Double> scales = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            scales.add(Double.parseDouble(args[i]));
+        }
+        if (scales.isEmpty()) {
+            scales.add(1.0);
+            scales.add(5.0);
+            scales.add(20.0);
+        }
+        final String configFile = System.getProperty("loadtest.config");
+        final String configTemplate = configFile != null
+                ? new String(Files.readAllBytes(Paths.get(configFile)), StandardCharsets.UTF_8)
+                : Resources.toString(Resources.getResource("loadtest.yml"), StandardCharsets.UTF_8);
+        final LoadTest loadTest = new LoadTest(workDir, configTemplate, System.getProperty("loadtest.heap", "4g"));
+
+        final String serverUrl = System.getProperty("loadtest.url");
+        final List<Result> results = new ArrayList<>();
+        if (serverUrl != null) {
+            final String user = System.getProperty("loadtest.user");
+            final String password = System.getProperty("loadtest.password", "");
+            for (double scale : scales) {
+                final String database = getDatabaseName(scale);
+                try (Connection conn = DriverManager.getConnection(serverUrl, user, password);
+                     Statement st = conn.createStatement()) {
+                    st.execute("CREATE DATABASE IF NOT EXISTS " + database);
+                }
+                results.addAll(loadTest.run(scale, serverUrl.replaceAll("/+$", "") + "/" + database, user, password));
+            }
+        } else {
+            final DBConfigurationBuilder dbConfig = DBConfigurationBuilder.newBuilder();
+            dbConfig.setPort(0);
+            dbConfig.setDataDir(new File(workDir, "mariadb").getAbsolutePath());
+            final DB db = DB.newEmbeddedDB(dbConfig.build());
+            db.start();
+            try {
+                for (double scale : scales) {
+                    final String database = getDatabaseName(scale);
+                    db.createDB(database);
+                    results.addAll(loadTest.run(scale, dbConfig.getURL(database), "root", ""));
+                }
+            } finally {
+                db.stop();
+            }
+        }
+
+        System.out.println("scale\toutput\tdocuments\tseconds\tdocs/s\tpeak heap MB\toutput MB");
+        for (Result result : results) {
+            System.out.println(result.toTsv());
+        }
+    }
+
+    private static String getDatabaseName(final double scale) {
+        return "gcd_" + Double.toString(scale).replace('.', '_');
+    }
+
+    private List<Result> run(final double scale, final String url, final String user, final String password)
+            throws SQLException, IOException, InterruptedException {
+        try (Connection conn = DriverManager.getConnection(withBatchRewrite(url), user, password)) {
+            if (SyntheticGcd.isPopulated(conn)) {
+                log.info("Reusing the generated database for scale " + scale);
+            } else {
+                final long start = System.nanoTime();
+                new SyntheticGcd(scale, 42).populate(conn);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("ANALYZE TABLE gcd_issue, gcd_series, gcd_publisher, gcd_indicia_publisher, gcd_brand, gcd_story, gcd_story_credit");
+                }
+                log.info(String.format("Generated the database for scale %s in %.0fs", scale, (System.nanoTime() - start) / 1e9));
+            }
+        }
+        final List<Result> results = new ArrayList<>();
+        for (OutputType outputType : OutputType.values()) {
+            final Result result = runEtl(scale, outputType, url, user, password);
+            log.info("Load test result: " + result.toTsv());
+            Files.write(new File(workDir, "results.tsv").toPath(), (result.toTsv() + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Result runEtl(final double scale, final OutputType outputType, final String url, final String user,
+            final String password) throws IOException, InterruptedException {
+        final File runDir = new File(workDir, "scale-" + scale + "/" + outputType);
+        deleteRecursively(runDir.toPath());
+        Files.createDirectories(runDir.toPath());
+        final File config = new File(runDir, "config.yml");
+        try (PrintWriter out = new PrintWriter(config, "UTF-8")) {
+            out.print(configTemplate.replace("${url}", url).replace("${user}", user == null ? "" : user)
+                    .replace("${password}", password == null ? "" : password));
+        }
+        final File etlLog = new File(runDir, "etl.log");
+        final ProcessBuilder etl = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(), "-Xmx" + heap,
+                "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                config.getName(), DATE, INDEX_NAME, outputType.name())
+                .directory(runDir)
+                .redirectErrorStream(true)
+                .redirectOutput(etlLog);
+        log.info("Running the " + outputType + " ETL for scale " + scale + " in " + runDir);
+        final long start = System.nanoTime();
+        final int exitCode = etl.start().waitFor();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        if (exitCode != 0) {
+            throw new IOException("The ETL exited with " + exitCode + ", see " + etlLog);
+        }
+        final String output = new String(Files.readAllBytes(etlLog.toPath()), StandardCharsets.UTF_8);
+        return new Result(scale, outputType, lastMatch(DOCUMENTS, output), seconds, lastMatch(PEAK_HEAP, output),
+                getOutputBytes(runDir, outputType));
+    }
+
+    private static long lastMatch(final Pattern pattern, final String output) {
+        final Matcher m = pattern.matcher(output);
+        long value = -1;
+        while (m.find()) {
+            value = Long.parseLong(m.group(1));
+        }
+        return value;
+    }
+
+    // the size of what would be shipped: the .sqar archives or the Parquet part files
+    private static long getOutputBytes(final File runDir, final OutputType outputType) throws IOException {
+        try (Stream<Path> paths = Files.walk(runDir.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> isOutput(path, outputType))
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        }
+    }
+
+    // the files of .sqar archives, or the part files of the Parquet or Arrow output
+    private static boolean isOutput(final Path path, final OutputType outputType) {
+        switch (outputType) {
+            case FLAMDEX:
+                return path.getParent().getFileName().toString().endsWith(".sqar");
+            case ARROW:
+                return path.getFileName().toString().endsWith(".arrow");
+            default:
+                return path.getFileName().toString().endsWith(".parquet");
+        }
+    }
+
+    private static void deleteRecursively(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            final List<Path> all = new ArrayList<>();
+            paths.forEach(all::add);
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Files.delete(all.get(i));
+            }
+        }
+    }
+
+    private static String withBatchRewrite(final String url) {
+        return url + (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+    }
+}
@@ -0,0 +1,99 @@
+package org.gcd.etl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one field of a synthetic row per invocation through an {@link ExtractionPlan} of that field alone, for
+ * the codecs of dates, timestamps and semicolon-separated lists. The run's unix time is added with every field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowFieldBenchmark {
+    private static final int ROWS = 4096;
+    private static final long UNIX_TIME = 1546300800L;
+
+    private List<BufferedRow> rows;
+    private int row;
+    private ExtractionPlan.Binding date;
+    private ExtractionPlan.Binding timestamp;
+    private ExtractionPlan.Binding multiValue;
+
+    // the terms keep the last value so that it is not optimized away
+    private long term;
+    private Iterable<? extends CharSequence> terms;
+    private final FlamdexTerms consumer = new FlamdexTerms() {
+        @Override
+        public void addIntTerm(final String field, final long value) {
+            term = value;
+        }
+
+        @Override
+        public void addIntTerms(final String field, final Iterable<Long> values) {
+        }
+
+        @Override
+        public void addStringTerm(final String field, final CharSequence value) {
+        }
+
+        @Override
+        public void addStringTerms(final String field, final Iterable<? extends CharSequence> values) {
+            terms = values;
+        }
+    };
+
+    @Setup
+    public void setup() throws SQLException {
+        rows = SyntheticData.rows(ROWS, 42);
+        date = bind("publication_date");
+        timestamp = bind("modified");
+        multiValue = bind("story_script");
+    }
+
+    private static ExtractionPlan.Binding bind(final String field) throws SQLException {
+        final MappingProfile mapping = new MappingProfile();
+        mapping.setInclude(Collections.singletonList(field));
+        return ExtractionPlan.compile(mapping, new GcdSchema(), Collections.singletonList(OutputType.FLAMDEX))
+                .bind(SyntheticData.COLUMNS, OutputType.FLAMDEX, SyntheticData.metadata(), UNIX_TIME, new RunMetrics());
+    }
+
+    @Benchmark
+    public long date() throws SQLException {
+        date.addFlamdexTerms(rows.get(nextRow()), null, consumer);
+        return term;
+    }
+
+    @Benchmark
+    public long dateFromTimestamp() throws SQLException {
+        timestamp.addFlamdexTerms(rows.get(nextRow()), null, consumer);
+        return term;
+    }
+
+    @Benchmark
+    public Iterable<? extends CharSequence> multiValue() throws SQLException {
+        multiValue.addFlamdexTerms(rows.get(nextRow()), null, consumer);
+        return terms;
+    }
+
+    private int nextRow() {
+        row = (row + 1) % ROWS;
+        return row;
+    }
+}
@@ -0,0 +1,75 @@
+package org.gcd.etl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the credits of one story per invocation with {@link GcdStoryCredit#addCredit}, as the credit
+ * lookups do for each group of gcd_story_credit rows: either single credit types only or the usual mix
+ * including combined types such as pencils and inks, which are expanded into their parts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoryCreditBenchmark {
+    private static final int STORIES = 4096;
+
+    private int[][] singleTypes;
+    private int[][] mixedTypes;
+    private long[][] creatorIds;
+    private String[][] names;
+    private int story;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        singleTypes = new int[STORIES][];
+        mixedTypes = new int[STORIES][];
+        creatorIds = new long[STORIES][];
+        names = new String[STORIES][];
+        for (int s = 0; s < STORIES; s++) {
+            mixedTypes[s] = SyntheticData.creditTypes(random);
+            singleTypes[s] = new int[mixedTypes[s].length];
+            creatorIds[s] = new long[mixedTypes[s].length];
+            names[s] = new String[mixedTypes[s].length];
+            for (int c = 0; c < mixedTypes[s].length; c++) {
+                singleTypes[s][c] = 1 + random.nextInt(6);
+                creatorIds[s][c] = random.nextInt(100000);
+                names[s][c] = "Creator " + creatorIds[s][c];
+            }
+        }
+    }
+
+    @Benchmark
+    public GcdStoryCredit singleTypes() {
+        return addCredits(singleTypes);
+    }
+
+    @Benchmark
+    public GcdStoryCredit multiPartTypes() {
+        return addCredits(mixedTypes);
+    }
+
+    private GcdStoryCredit addCredits(final int[][] types) {
+        story = (story + 1) % STORIES;
+        final GcdStoryCredit credit = new GcdStoryCredit(story);
+        for (int c = 0; c < types[story].length; c++) {
+            credit.addCredit(types[story][c], creatorIds[story][c], names[story][c]);
+        }
+        return credit;
+    }
+}
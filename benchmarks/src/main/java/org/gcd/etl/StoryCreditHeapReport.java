@@ -0,0 +1,134 @@
+package org.gcd.etl;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Loads the credits of a {@link SyntheticGcd} with {@link GcdStoryCredit#loadAllStoryCredits}, with and without a
+ * creator name dictionary, and into a {@link GcdStoryCreditStore}, one after the other, and reports the heap each
+ * retains: the used heap after garbage collection with the credits loaded, less the used heap after garbage
+ * collection before loading them.
+ * <p>
+ * Usage: StoryCreditHeapReport WORK_DIR [SCALE], with scale 1 by default. As with {@link LoadTest}, the database is
+ * generated in an embedded MariaDB under WORK_DIR, or in a MySQL server given as -Dloadtest.url, -Dloadtest.user and
+ * -Dloadtest.password, and is reused by later runs. Run with a heap large enough for the preloaded map, and with
+ * -XX:+UseSerialGC for the steadiest numbers.
+ */
+public class StoryCreditHeapReport {
+    private static final Logger log = Logger.getLogger(StoryCreditHeapReport.class);
+
+    private static final int GC_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.INFO);
+
+        final File workDir = new File(args[0]);
+        final double scale = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        final String database = "gcd_" + Double.toString(scale).replace('.', '_');
+
+        final String serverUrl = System.getProperty("loadtest.url");
+        if (serverUrl != null) {
+            final String user = System.getProperty("loadtest.user");
+            final String password = System.getProperty("loadtest.password", "");
+            try (Connection conn = DriverManager.getConnection(serverUrl, user, password);
+                 Statement st = conn.createStatement()) {
+                st.execute("CREATE DATABASE IF NOT EXISTS " + database);
+            }
+            report(scale, serverUrl.replaceAll("/+$", "") + "/" + database, user, password);
+        } else {
+            final DBConfigurationBuilder dbConfig = DBConfigurationBuilder.newBuilder();
+            dbConfig.setPort(0);
+            dbConfig.setDataDir(new File(workDir, "mariadb").getAbsolutePath());
+            final DB db = DB.newEmbeddedDB(dbConfig.build());
+            db.start();
+            try {
+                db.createDB(database);
+                report(scale, dbConfig.getURL(database), "root", "");
+            } finally {
+                db.stop();
+            }
+        }
+    }
+
+    private static void report(final double scale, final String url, final String user, final String password)
+            throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url + (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true",
+                user, password)) {
+            if (!SyntheticGcd.isPopulated(conn)) {
+                new SyntheticGcd(scale, 42).populate(conn);
+            }
+            long credits = 0;
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM gcd_story_credit")) {
+                if (rs.next()) {
+                    credits = rs.getLong(1);
+                }
+            }
+
+            long baseline = usedHeapAfterGc();
+            Map<Long, GcdStoryCredit> preloaded = GcdStoryCredit.loadAllStoryCredits(conn, null, StringDictionary.NONE);
+            final long preloadedBytes = usedHeapAfterGc() - baseline;
+            final int preloadedStories = preloaded.size();
+            preloaded = null;
+
+            baseline = usedHeapAfterGc();
+            final StringDictionary names = new StringDictionary(new MappingProfile().getDictionarySize());
+            preloaded = GcdStoryCredit.loadAllStoryCredits(conn, null, names);
+            // the dictionary is retained alongside the map, as it is by a run
+            final long internedBytes = usedHeapAfterGc() - baseline;
+            log.info("Interned creator names: " + names + " for " + preloaded.size() + " stories");
+            preloaded = null;
+
+            baseline = usedHeapAfterGc();
+            GcdStoryCreditStore store = GcdStoryCreditStore.load(conn.prepareStatement(GcdStoryCredit.getCreditQuery(null)));
+            final long storeBytes = usedHeapAfterGc() - baseline;
+            final int storeStories = store.getStoryCount();
+            final long estimatedBytes = store.estimateRetainedBytes();
+            store = null;
+
+            if (preloadedStories != storeStories) {
+                throw new IllegalStateException("Loaded " + preloadedStories + " stories into the map, but " +
+                        storeStories + " into the store");
+            }
+            System.out.println("scale\tcredits\tstories\tlookup\tretained MB\tbytes/credit");
+            print(scale, credits, storeStories, "PRELOAD", preloadedBytes);
+            print(scale, credits, storeStories, "PRELOAD interned", internedBytes);
+            print(scale, credits, storeStories, "STORE", storeBytes);
+            print(scale, credits, storeStories, "STORE estimated", estimatedBytes);
+        }
+    }
+
+    private static void print(final double scale, final long credits, final int stories, final String lookup,
+            final long bytes) {
+        System.out.println(String.format("%s\t%d\t%d\t%s\t%.1f\t%.1f", scale, credits, stories, lookup,
+                bytes / (1024.0 * 1024.0), credits > 0 ? (double) bytes / credits : 0.0));
+    }
+
+    /**
+     * Used heap after a few rounds of System.gc(), which the JVM is free to ignore, so only as good as the collector
+     * in use makes it.
+     */
+    private static long usedHeapAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
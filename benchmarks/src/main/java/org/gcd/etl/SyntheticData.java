@@ -0,0 +1,261 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates rows shaped like those of the GCD extraction query, with the value types Connector/J returns
+ * for them, plus the metadata and story credits to build documents from, so the extraction code can be
+ * benchmarked without a database.
+ */
+final class SyntheticData {
+    // the columns of the wide extraction query
+    static final String[] COLUMNS = {
+            "issue_id", "issue_number_raw", "pubdateraw", "price", "page_count", "indicia_frequency", "isbn",
+            "variant_name", "variant_of_issue_id", "barcode", "title", "onsaledateraw", "rating", "volume_not_printed",
+            "editing", "notes", "created", "modified",
+            "series_id", "series_name", "series_year_began", "series_year_ended", "series_is_current", "scountryid",
+            "slangid", "series_has_gallery", "series_is_comics_publication", "series_color", "series_dimensions",
+            "series_paper_stock", "series_binding", "series_publishing_format", "spubtypeid", "series_is_singleton",
+            "series_created", "series_modified",
+            "publisher_id", "publisher_name", "pubcountryid", "publisher_url", "publisher_created", "publisher_modified",
+            "indicia_publisher_id", "indicia_publisher_name", "indpubcountryid", "indicia_publisher_parent_id",
+            "indicia_publisher_year_began", "indicia_publisher_year_ended", "indicia_publisher_is_surrogate",
+            "indicia_publisher_url", "indicia_publisher_created", "indicia_publisher_modified",
+            "brand_id", "brand_name", "brand_url", "brand_created", "brand_modified",
+            "story_id", "story_title", "story_feature", "story_sequence_number", "story_page_count", "story_script",
+            "story_pencils", "story_inks", "story_colors", "story_letters", "story_editing", "story_genre",
+            "story_characters", "strtypeid", "story_job_number", "story_first_line", "story_created", "story_modified"
+    };
+
+    private static final String[] WORDS = {
+            "Amazing", "Spider", "Man", "Detective", "Comics", "Action", "Tales", "Suspense", "Strange", "Adventures",
+            "Western", "Romance", "Funnies", "Mystery", "Planet", "Love", "Secret", "Weird", "War", "Stories"
+    };
+
+    private SyntheticData() {
+    }
+
+    static GcdMetadata metadata() {
+        final Map<Integer, String> countries = new HashMap<>();
+        final Map<Integer, String> languages = new HashMap<>();
+        for (int i = 0; i < 250; i++) {
+            countries.put(i, "c" + i);
+            languages.put(i, "l" + i);
+        }
+        final Map<Integer, String> publicationTypes = ImmutableMap.of(1, "magazine", 2, "album", 3, "book");
+        final Map<Integer, String> storyTypes = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            storyTypes.put(i, "story type " + i);
+        }
+        return new GcdMetadata(countries, languages, publicationTypes, storyTypes);
+    }
+
+    /**
+     * Rows as the extraction pipeline buffers them; most have a story, a few are issues without one.
+     */
+    static List<BufferedRow> rows(final int count, final long seed) throws SQLException {
+        final Random random = new Random(seed);
+        final BufferedRow.Layout layout = new BufferedRow.Layout(COLUMNS);
+        final List<BufferedRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Map<String, Object> values = new HashMap<>();
+            values.put("issue_id", 100000 + i);
+            values.put("issue_number_raw", random.nextInt(10) == 0 ? "Annual " + random.nextInt(20) : Integer.toString(1 + random.nextInt(600)));
+            values.put("pubdateraw", date(random));
+            values.put("price", random.nextBoolean() ? "0.10 USD" : "0.10 USD; 0.12 CAD; 5 d GBP");
+            values.put("page_count", random.nextInt(5) == 0 ? null : 16 + random.nextInt(64));
+            values.put("indicia_frequency", random.nextBoolean() ? "monthly" : "bi-monthly");
+            values.put("isbn", "");
+            values.put("variant_name", "");
+            values.put("variant_of_issue_id", random.nextInt(10) == 0 ? 100000 + random.nextInt(i + 1) : null);
+            values.put("barcode", Long.toString(70000000000L + random.nextInt(Integer.MAX_VALUE)));
+            values.put("title", words(random, 2));
+            values.put("onsaledateraw", date(random));
+            values.put("rating", "");
+            values.put("volume_not_printed", random.nextInt(10) == 0);
+            values.put("editing", names(random, 1 + random.nextInt(2)));
+            values.put("notes", words(random, random.nextInt(20)));
+            values.put("created", timestamp(random));
+            values.put("modified", timestamp(random));
+
+            values.put("series_id", 5000 + random.nextInt(10000));
+            values.put("series_name", words(random, 3));
+            values.put("series_year_began", 1930 + random.nextInt(90));
+            values.put("series_year_ended", random.nextBoolean() ? null : 1940 + random.nextInt(80));
+            values.put("series_is_current", random.nextInt(10) == 0);
+            values.put("scountryid", random.nextInt(250));
+            values.put("slangid", random.nextInt(250));
+            values.put("series_has_gallery", random.nextBoolean());
+            values.put("series_is_comics_publication", true);
+            values.put("series_color", "color");
+            values.put("series_dimensions", "standard Golden Age US");
+            values.put("series_paper_stock", "newsprint");
+            values.put("series_binding", random.nextBoolean() ? "saddle-stitched" : "saddle-stitched; squarebound");
+            values.put("series_publishing_format", "was ongoing series");
+            values.put("spubtypeid", 1 + random.nextInt(3));
+            values.put("series_is_singleton", false);
+            values.put("series_created", timestamp(random));
+            values.put("series_modified", timestamp(random));
+
+            values.put("publisher_id", 1 + random.nextInt(1000));
+            values.put("publisher_name", words(random, 2));
+            values.put("pubcountryid", random.nextInt(250));
+            values.put("publisher_url", "http://www.example.com/");
+            values.put("publisher_created", timestamp(random));
+            values.put("publisher_modified", timestamp(random));
+
+            values.put("indicia_publisher_id", 1 + random.nextInt(3000));
+            values.put("indicia_publisher_name", words(random, 3));
+            values.put("indpubcountryid", random.nextInt(250));
+            values.put("indicia_publisher_parent_id", 1 + random.nextInt(1000));
+            values.put("indicia_publisher_year_began", 1930 + random.nextInt(90));
+            values.put("indicia_publisher_year_ended", null);
+            values.put("indicia_publisher_is_surrogate", false);
+            values.put("indicia_publisher_url", "");
+            values.put("indicia_publisher_created", timestamp(random));
+            values.put("indicia_publisher_modified", timestamp(random));
+
+            values.put("brand_id", random.nextBoolean() ? 1 + random.nextInt(5000) : null);
+            values.put("brand_name", values.get("brand_id") != null ? words(random, 1) : null);
+            values.put("brand_url", values.get("brand_id") != null ? "" : null);
+            values.put("brand_created", values.get("brand_id") != null ? timestamp(random) : null);
+            values.put("brand_modified", values.get("brand_id") != null ? timestamp(random) : null);
+
+            if (random.nextInt(20) != 0) {
+                values.put("story_id", 1000000L + i);
+                values.put("story_title", words(random, 3));
+                values.put("story_feature", words(random, 2));
+                values.put("story_sequence_number", random.nextInt(10));
+                values.put("story_page_count", new BigDecimal(1 + random.nextInt(30)));
+                values.put("story_script", names(random, 1 + random.nextInt(2)));
+                values.put("story_pencils", names(random, 1 + random.nextInt(2)));
+                values.put("story_inks", names(random, 1 + random.nextInt(2)));
+                values.put("story_colors", names(random, 1));
+                values.put("story_letters", names(random, 1));
+                values.put("story_editing", names(random, 1));
+                values.put("story_genre", random.nextBoolean() ? "superhero" : "superhero; science fiction");
+                values.put("story_characters", names(random, random.nextInt(8)));
+                values.put("strtypeid", random.nextInt(30));
+                values.put("story_job_number", "");
+                values.put("story_first_line", words(random, 8));
+                values.put("story_created", timestamp(random));
+                values.put("story_modified", timestamp(random));
+            }
+            rows.add(layout.copy(new MapRow(values)));
+        }
+        return rows;
+    }
+
+    /**
+     * The credits of a story: a writer, artists and a few combined credits such as pencils and inks.
+     */
+    static GcdStoryCredit credit(final long storyId, final Random random) {
+        final GcdStoryCredit credit = new GcdStoryCredit(storyId);
+        final int[] creditTypes = creditTypes(random);
+        for (int creditType : creditTypes) {
+            final long creatorId = random.nextInt(100000);
+            credit.addCredit(creditType, creatorId, "Creator " + creatorId);
+        }
+        return credit;
+    }
+
+    /**
+     * Credit type ids of one story, in gcd_credit_type numbering.
+     */
+    static int[] creditTypes(final Random random) {
+        final int[] types = new int[2 + random.nextInt(6)];
+        for (int i = 0; i < types.length; i++) {
+            // mostly single credits, with some of the combined ones (7, 8 and 10 to 13)
+            types[i] = random.nextInt(4) == 0 ? new int[] {7, 8, 10, 11, 12, 13}[random.nextInt(6)] : 1 + random.nextInt(6);
+        }
+        return types;
+    }
+
+    private static String date(final Random random) {
+        final int year = 1930 + random.nextInt(90);
+        // the GCD has partial dates such as 1962-08-00
+        return String.format("%04d-%02d-%02d", year, 1 + random.nextInt(12), random.nextInt(29));
+    }
+
+    private static long timestamp(final Random random) {
+        return 1000000000L + random.nextInt(700000000);
+    }
+
+    private static String words(final Random random, final int count) {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private static String names(final Random random, final int count) {
+        final StringBuilder names = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                names.append(random.nextBoolean() ? "; " : ";");
+            }
+            names.append("Creator ").append(random.nextInt(100000));
+        }
+        return names.toString();
+    }
+
+    private static final class MapRow implements GcdRow {
+        private final Map<String, Object> values;
+
+        private MapRow(final Map<String, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public String getString(final String column) {
+            return GcdRow.toString(values.get(column));
+        }
+
+        @Override
+        public int getInt(final String column) throws SQLException {
+            return GcdRow.toInt(values.get(column));
+        }
+
+        @Override
+        public long getLong(final String column) throws SQLException {
+            return GcdRow.toLong(values.get(column));
+        }
+
+        @Override
+        public Object getObject(final String column) {
+            return values.get(column);
+        }
+
+        @Override
+        public String getString(final int column) {
+            return getString(COLUMNS[column - 1]);
+        }
+
+        @Override
+        public int getInt(final int column) throws SQLException {
+            return getInt(COLUMNS[column - 1]);
+        }
+
+        @Override
+        public long getLong(final int column) throws SQLException {
+            return getLong(COLUMNS[column - 1]);
+        }
+
+        @Override
+        public Object getObject(final int column) {
+            return getObject(COLUMNS[column - 1]);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package org.gcd.etl;
+
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+/**
+ * Fills a MySQL-compatible database with a synthetic GCD: the tables and columns the extraction query,
+ * {@link GcdMetadata.Builder}, the story credit lookups and {@link IssueDelta} read, with long-tailed
+ * distributions of issues per series, stories per issue, credits per story and text lengths. A scale of 1
+ * is roughly the size of the GCD at the time of writing.
+ */
+public class SyntheticGcd {
+    private static final Logger log = Logger.getLogger(SyntheticGcd.class);
+
+    // rows at scale 1
+    private static final int PUBLISHERS = 12000;
+    private static final int INDICIA_PUBLISHERS = 8000;
+    private static final int BRANDS = 9000;
+    private static final int SERIES = 130000;
+    private static final int ISSUES = 1600000;
+    private static final int CREATORS = 90000;
+
+    private static final int COUNTRIES = 250;
+    private static final int LANGUAGES = 200;
+    private static final String[] PUBLICATION_TYPES = {"magazine", "album", "book"};
+    private static final String[] STORY_TYPES = {
+            "comic story", "cover", "text story", "advertisement", "letters page", "in-house column", "activity",
+            "illustration", "photo story", "foreword", "table of contents", "filler", "credits", "insert",
+            "character profile", "recap", "about comics", "pin-up", "promo", "blank page", "cartoon"
+    };
+    // gcd_credit_type ids: 1-6 and 9 are single credits, the others combinations such as pencils and inks
+    private static final int[] SINGLE_CREDIT_TYPES = {1, 2, 3, 4, 5, 6, 9};
+    private static final int[] COMBINED_CREDIT_TYPES = {7, 8, 10, 11, 12, 13};
+
+    private static final String[] WORDS = {
+            "Amazing", "Spider", "Man", "Detective", "Comics", "Action", "Tales", "Suspense", "Strange", "Adventures",
+            "Western", "Romance", "Funnies", "Mystery", "Planet", "Love", "Secret", "Weird", "War", "Stories",
+            "the", "of", "and", "in", "a", "from", "Beyond", "Doom", "Return", "Night", "City", "Star", "Lost",
+            "Fantastic", "Mighty", "Journey", "Sword", "Ghost", "Jungle", "Space", "Captain", "Girl", "Kid"
+    };
+    private static final String[] FIRST_NAMES = {
+            "Jack", "Steve", "Stan", "Will", "Carl", "John", "Gil", "Alex", "Neal", "Marie", "Ramona", "Jim",
+            "Alan", "Frank", "Jaime", "Gilbert", "Wally", "Curt", "Joe", "Bill", "Dave", "Jean", "Osamu", "Herg\u00e9"
+    };
+    private static final String[] LAST_NAMES = {
+            "Kirby", "Ditko", "Lee", "Eisner", "Barks", "Buscema", "Kane", "Toth", "Adams", "Severin", "Fradon",
+            "Starlin", "Moore", "Miller", "Hernandez", "Wood", "Swan", "Shuster", "Finger", "Gibbons", "Giraud",
+            "Tezuka", "Romita", "Colan", "Everett", "Infantino", "Anderson", "Giordano", "Sinnott", "Ayers"
+    };
+    private static final String[] GENRES = {"superhero", "humor", "science fiction", "western", "romance", "crime", "horror",
+            "war", "fantasy", "adventure", "teen", "funny animal"};
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long EPOCH = 1041379200L;
+
+    private final double scale;
+    private final Random random;
+
+    public SyntheticGcd(final double scale, final long seed) {
+        this.scale = scale;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Whether the database already has generated issues, so that a generated database can be reused.
+     */
+    public static boolean isPopulated(final Connection conn) throws SQLException {
+        try (ResultSet tables = conn.getMetaData().getTables(conn.getCatalog(), null, "gcd_issue", null)) {
+            if (!tables.next()) {
+                return false;
+            }
+        }
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM gcd_issue")) {
+            return rs.next() && rs.getLong(1) > 0;
+        }
+    }
+
+    public void populate(final Connection conn) throws SQLException {
+        final boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            createTables(conn);
+            insertLookupTables(conn);
+            final int publishers = scaled(PUBLISHERS);
+            final int indiciaPublishers = scaled(INDICIA_PUBLISHERS);
+            final int brands = scaled(BRANDS);
+            final int series = scaled(SERIES);
+            final int creators = scaled(CREATORS);
+            insertPublishers(conn, publishers, indiciaPublishers, brands);
+            insertSeries(conn, series, publishers);
+            insertCreators(conn, creators);
+            insertIssues(conn, scaled(ISSUES), series, indiciaPublishers, brands, creators);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int scaled(final int rows) {
+        return (int) Math.max(1, Math.round(rows * scale));
+    }
+
+    private static void createTables(final Connection conn) throws SQLException {
+        final String[] ddl = {
+                "CREATE TABLE stddata_country (id INT PRIMARY KEY, code VARCHAR(10) NOT NULL, name VARCHAR(255) NOT NULL)",
+                "CREATE TABLE stddata_language (id INT PRIMARY KEY, code VARCHAR(10) NOT NULL, name VARCHAR(255) NOT NULL)",
+                "CREATE TABLE gcd_series_publication_type (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL)",
+                "CREATE TABLE gcd_story_type (id INT PRIMARY KEY, name VARCHAR(50) NOT NULL)",
+                "CREATE TABLE gcd_publisher (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, country_id INT NOT NULL, " +
+                        "url VARCHAR(255) NOT NULL, created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (modified))",
+                "CREATE TABLE gcd_indicia_publisher (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, country_id INT NOT NULL, " +
+                        "parent_id INT NOT NULL, year_began INT NULL, year_ended INT NULL, is_surrogate TINYINT(1) NOT NULL, " +
+                        "url VARCHAR(255) NOT NULL, created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (modified))",
+                "CREATE TABLE gcd_brand (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, url VARCHAR(255) NOT NULL, " +
+                        "created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (modified))",
+                "CREATE TABLE gcd_series (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, year_began INT NOT NULL, " +
+                        "year_ended INT NULL, is_current TINYINT(1) NOT NULL, publisher_id INT NOT NULL, country_id INT NOT NULL, " +
+                        "language_id INT NOT NULL, has_gallery TINYINT(1) NOT NULL, is_comics_publication TINYINT(1) NOT NULL, " +
+                        "color VARCHAR(255) NOT NULL, dimensions VARCHAR(255) NOT NULL, paper_stock VARCHAR(255) NOT NULL, " +
+                        "binding VARCHAR(255) NOT NULL, publishing_format VARCHAR(255) NOT NULL, publication_type_id INT NULL, " +
+                        "is_singleton TINYINT(1) NOT NULL, created DATETIME NOT NULL, modified DATETIME NOT NULL, " +
+                        "INDEX (publisher_id), INDEX (modified))",
+                "CREATE TABLE gcd_issue (id INT PRIMARY KEY, number VARCHAR(50) NOT NULL, key_date VARCHAR(10) NOT NULL, " +
+                        "price VARCHAR(255) NOT NULL, page_count DECIMAL(10,3) NULL, indicia_frequency VARCHAR(255) NOT NULL, " +
+                        "isbn VARCHAR(32) NOT NULL, variant_name VARCHAR(255) NOT NULL, variant_of_id INT NULL, " +
+                        "barcode VARCHAR(38) NOT NULL, title VARCHAR(255) NOT NULL, on_sale_date VARCHAR(10) NOT NULL, " +
+                        "rating VARCHAR(255) NOT NULL, volume_not_printed TINYINT(1) NOT NULL, editing LONGTEXT NOT NULL, " +
+                        "notes LONGTEXT NOT NULL, series_id INT NOT NULL, indicia_publisher_id INT NULL, brand_id INT NULL, " +
+                        "created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (series_id), INDEX (modified))",
+                "CREATE TABLE gcd_story (id INT PRIMARY KEY, title VARCHAR(255) NOT NULL, feature VARCHAR(255) NOT NULL, " +
+                        "sequence_number INT NOT NULL, page_count DECIMAL(10,3) NULL, script LONGTEXT NOT NULL, " +
+                        "pencils LONGTEXT NOT NULL, inks LONGTEXT NOT NULL, colors LONGTEXT NOT NULL, letters LONGTEXT NOT NULL, " +
+                        "editing LONGTEXT NOT NULL, genre VARCHAR(255) NOT NULL, characters LONGTEXT NOT NULL, " +
+                        "type_id INT NOT NULL, job_number VARCHAR(25) NOT NULL, first_line VARCHAR(255) NOT NULL, " +
+                        "issue_id INT NOT NULL, created DATETIME NOT NULL, modified DATETIME NOT NULL, " +
+                        "INDEX (issue_id), INDEX (modified))",
+                "CREATE TABLE gcd_creator (id INT PRIMARY KEY, gcd_official_name VARCHAR(255) NOT NULL, " +
+                        "created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (modified))",
+                "CREATE TABLE gcd_creator_name_detail (id INT PRIMARY KEY, creator_id INT NOT NULL, name VARCHAR(255) NOT NULL, " +
+                        "created DATETIME NOT NULL, modified DATETIME NOT NULL, INDEX (creator_id))",
+                "CREATE TABLE gcd_story_credit (id INT PRIMARY KEY, story_id INT NOT NULL, creator_id INT NOT NULL, " +
+                        "credit_type_id INT NOT NULL, created DATETIME NOT NULL, modified DATETIME NOT NULL, " +
+                        "INDEX (story_id), INDEX (modified))"
+        };
+        try (Statement st = conn.createStatement()) {
+            for (String table : ddl) {
+                st.execute(table);
+            }
+        }
+        conn.commit();
+    }
+
+    private static void insertLookupTables(final Connection conn) throws SQLException {
+        try (Batch countries = new Batch(conn, "INSERT INTO stddata_country VALUES (?, ?, ?)");
+             Batch languages = new Batch(conn, "INSERT INTO stddata_language VALUES (?, ?, ?)");
+             Batch publicationTypes = new Batch(conn, "INSERT INTO gcd_series_publication_type VALUES (?, ?)");
+             Batch storyTypes = new Batch(conn, "INSERT INTO gcd_story_type VALUES (?, ?)")) {
+            for (int i = 1; i <= COUNTRIES; i++) {
+                countries.add(i, code(i), "Country " + i);
+            }
+            for (int i = 1; i <= LANGUAGES; i++) {
+                languages.add(i, code(i), "Language " + i);
+            }
+            for (int i = 0; i < PUBLICATION_TYPES.length; i++) {
+                publicationTypes.add(i + 1, PUBLICATION_TYPES[i]);
+            }
+            for (int i = 0; i < STORY_TYPES.length; i++) {
+                storyTypes.add(i + 1, STORY_TYPES[i]);
+            }
+        }
+    }
+
+    private void insertPublishers(final Connection conn, final int publishers, final int indiciaPublishers, final int brands)
+            throws SQLException {
+        log.info("Generating " + publishers + " publishers, " + indiciaPublishers + " indicia publishers and " + brands + " brands");
+        try (Batch batch = new Batch(conn, "INSERT INTO gcd_publisher VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= publishers; id++) {
+                final Timestamp created = timestamp();
+                batch.add(id, words(1 + random.nextInt(4)), country(), url(), created, modified(created));
+            }
+        }
+        try (Batch batch = new Batch(conn, "INSERT INTO gcd_indicia_publisher VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= indiciaPublishers; id++) {
+                final int began = year();
+                final Timestamp created = timestamp();
+                batch.add(id, words(1 + random.nextInt(5)), country(), 1 + skewed(publishers),
+                        random.nextInt(10) == 0 ? null : began, random.nextBoolean() ? null : began + random.nextInt(30),
+                        random.nextInt(20) == 0, url(), created, modified(created));
+            }
+        }
+        try (Batch batch = new Batch(conn, "INSERT INTO gcd_brand VALUES (?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= brands; id++) {
+                final Timestamp created = timestamp();
+                batch.add(id, words(1 + random.nextInt(3)), url(), created, modified(created));
+            }
+        }
+    }
+
+    private void insertSeries(final Connection conn, final int series, final int publishers) throws SQLException {
+        log.info("Generating " + series + " series");
+        try (Batch batch = new Batch(conn, "INSERT INTO gcd_series VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= series; id++) {
+                final int began = year();
+                final boolean current = random.nextInt(20) == 0;
+                final Timestamp created = timestamp();
+                batch.add(id, words(1 + random.nextInt(5)), began, current ? null : began + random.nextInt(15), current,
+                        1 + skewed(publishers), country(), 1 + skewed(LANGUAGES), random.nextInt(3) == 0, random.nextInt(10) != 0,
+                        random.nextInt(5) == 0 ? "black and white" : "color", "standard Modern Age US", "glossy",
+                        random.nextBoolean() ? "saddle-stitched" : "saddle-stitched; squarebound", "was ongoing series",
+                        random.nextInt(4) == 0 ? null : 1 + random.nextInt(PUBLICATION_TYPES.length), random.nextInt(30) == 0,
+                        created, modified(created));
+            }
+        }
+    }
+
+    private void insertCreators(final Connection conn, final int creators) throws SQLException {
+        log.info("Generating " + creators + " creators");
+        try (Batch creator = new Batch(conn, "INSERT INTO gcd_creator VALUES (?, ?, ?, ?)");
+             Batch nameDetail = new Batch(conn, "INSERT INTO gcd_creator_name_detail VALUES (?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= creators; id++) {
+                final String name = name();
+                final Timestamp created = timestamp();
+                creator.add(id, name, created, modified(created));
+                // name detail ids are the creator ids, so credits can pick either
+                nameDetail.add(id, id, name, created, modified(created));
+            }
+        }
+    }
+
+    private void insertIssues(final Connection conn, final int issues, final int series, final int indiciaPublishers,
+            final int brands, final int creators) throws SQLException {
+        log.info("Generating " + issues + " issues with their stories and credits");
+        long stories = 0;
+        long credits = 0;
+        try (Batch issue = new Batch(conn, "INSERT INTO gcd_issue VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             Batch story = new Batch(conn, "INSERT INTO gcd_story VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             Batch credit = new Batch(conn, "INSERT INTO gcd_story_credit VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= issues; id++) {
+                final boolean variant = id > 1 && random.nextInt(8) == 0;
+                final Timestamp created = timestamp();
+                final String date = date();
+                issue.add(id, random.nextInt(15) == 0 ? "Annual " + (1 + random.nextInt(30)) : Integer.toString(1 + skewed(600)),
+                        date, price(), random.nextInt(6) == 0 ? null : 16 + 4 * random.nextInt(20), "monthly",
+                        random.nextInt(10) == 0 ? "978" + (1000000000L + random.nextInt(Integer.MAX_VALUE)) : "",
+                        variant ? words(2) + " Variant" : "", variant ? id - 1 - random.nextInt(Math.min(id - 1, 20)) : null,
+                        Long.toString(70000000000L + random.nextInt(Integer.MAX_VALUE)), random.nextInt(5) == 0 ? words(3) : "",
+                        date, random.nextInt(4) == 0 ? "Approved by the Comics Code Authority" : "", random.nextInt(10) == 0,
+                        names(random.nextInt(3)), text(), 1 + skewed(series),
+                        random.nextInt(5) == 0 ? null : 1 + skewed(indiciaPublishers), random.nextBoolean() ? null : 1 + skewed(brands),
+                        created, modified(created));
+
+                // variants mostly share the stories of the issue they are a variant of
+                final int issueStories = variant ? random.nextInt(2) : storiesPerIssue();
+                for (int sequence = 0; sequence < issueStories; sequence++) {
+                    final long storyId = ++stories;
+                    final Timestamp storyCreated = timestamp();
+                    final int type = sequence == 0 ? 2 : 1 + skewed(STORY_TYPES.length);
+                    story.add(storyId, random.nextInt(3) == 0 ? "" : words(1 + random.nextInt(6)), words(1 + random.nextInt(3)),
+                            sequence, random.nextInt(10) == 0 ? null : sequence == 0 ? 1 : 1 + skewed(30),
+                            names(creditNames()), names(creditNames()), names(creditNames()), names(creditNames()),
+                            names(creditNames()), names(random.nextInt(2)), genres(), names(skewed(12)), type,
+                            random.nextInt(10) == 0 ? "J-" + random.nextInt(10000) : "", random.nextInt(4) == 0 ? words(12) : "",
+                            id, storyCreated, modified(storyCreated));
+                    final int storyCredits = creditsPerStory();
+                    for (int c = 0; c < storyCredits; c++) {
+                        final Timestamp creditCreated = timestamp();
+                        credit.add(++credits, storyId, 1 + skewed(creators), creditType(), creditCreated, modified(creditCreated));
+                    }
+                }
+                if (id % 100000 == 0) {
+                    log.info("Generated " + id + " issues, " + stories + " stories and " + credits + " credits");
+                }
+            }
+        }
+        log.info("Generated " + issues + " issues, " + stories + " stories and " + credits + " credits");
+    }
+
+    // 0 for unindexed issues, otherwise a cover plus a geometric number of sequences with a long tail
+    private int storiesPerIssue() {
+        if (random.nextInt(6) == 0) {
+            return 0;
+        }
+        return Math.min(80, 1 + geometric(0.3));
+    }
+
+    // gcd_story_credit is filled in for part of the stories only
+    private int creditsPerStory() {
+        if (random.nextInt(5) < 2) {
+            return 0;
+        }
+        return Math.min(20, 1 + geometric(0.4));
+    }
+
+    private int creditNames() {
+        return random.nextInt(3) == 0 ? 0 : Math.min(6, 1 + geometric(0.6));
+    }
+
+    private int creditType() {
+        return random.nextInt(5) == 0
+                ? COMBINED_CREDIT_TYPES[random.nextInt(COMBINED_CREDIT_TYPES.length)]
+                : SINGLE_CREDIT_TYPES[random.nextInt(SINGLE_CREDIT_TYPES.length)];
+    }
+
+    private int geometric(final double p) {
+        return (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+    }
+
+    // an index in [0, n) biased towards low values, for the few big publishers and long-running series
+    private int skewed(final int n) {
+        final double u = random.nextDouble();
+        return (int) (n * u * u * u);
+    }
+
+    private int year() {
+        return 1930 + random.nextInt(90);
+    }
+
+    private int country() {
+        return 1 + skewed(COUNTRIES);
+    }
+
+    private String date() {
+        final int precision = random.nextInt(10);
+        final String year = Integer.toString(year());
+        if (precision == 0) {
+            return "";
+        }
+        if (precision == 1) {
+            return year + "-00-00";
+        }
+        return String.format("%s-%02d-%02d", year, 1 + random.nextInt(12), precision < 5 ? 0 : 1 + random.nextInt(28));
+    }
+
+    private Timestamp timestamp() {
+        return new Timestamp((EPOCH + (long) (random.nextDouble() * 500000000L)) * 1000L);
+    }
+
+    private Timestamp modified(final Timestamp created) {
+        return random.nextInt(3) == 0 ? created : new Timestamp(created.getTime() + (long) (random.nextDouble() * 100000000L) * 1000L);
+    }
+
+    private String price() {
+        final int prices = random.nextInt(4) == 0 ? 1 + random.nextInt(4) : 1;
+        final StringBuilder price = new StringBuilder();
+        for (int i = 0; i < prices; i++) {
+            if (i > 0) {
+                price.append("; ");
+            }
+            price.append(String.format("%.2f %s", 0.1 + random.nextInt(600) / 100.0, new String[] {"USD", "CAD", "GBP", "EUR"}[i % 4]));
+        }
+        return price.toString();
+    }
+
+    private String url() {
+        return random.nextInt(3) == 0 ? "" : "http://www." + code(random.nextInt(100000)) + ".example.com/";
+    }
+
+    private String words(final int count) {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    // notes are mostly empty, with a log-normal length otherwise
+    private String text() {
+        if (random.nextInt(3) != 0) {
+            return "";
+        }
+        return words((int) Math.min(400, Math.exp(2.5 + random.nextGaussian())));
+    }
+
+    private String name() {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private String names(final int count) {
+        final StringBuilder names = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                names.append("; ");
+            }
+            names.append(name());
+            if (random.nextInt(10) == 0) {
+                names.append(" [as ").append(name()).append(']');
+            }
+        }
+        return names.toString();
+    }
+
+    private String genres() {
+        final int count = random.nextInt(4) == 0 ? 0 : Math.min(3, 1 + geometric(0.7));
+        final StringBuilder genres = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                genres.append("; ");
+            }
+            genres.append(GENRES[skewed(GENRES.length)]);
+        }
+        return genres.toString();
+    }
+
+    private static String code(final int i) {
+        return Integer.toString(i, 36);
+    }
+
+    /**
+     * Inserts rows in JDBC batches, committing each batch.
+     */
+    private static final class Batch implements AutoCloseable {
+        private final Connection conn;
+        private final PreparedStatement st;
+        private int size = 0;
+
+        private Batch(final Connection conn, final String insert) throws SQLException {
+            this.conn = conn;
+            this.st = conn.prepareStatement(insert);
+        }
+
+        private void add(final Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    st.setNull(i + 1, Types.NULL);
+                } else {
+                    st.setObject(i + 1, values[i]);
+                }
+            }
+            st.addBatch();
+            if (++size == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (size > 0) {
+                st.executeBatch();
+                conn.commit();
+                size = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            flush();
+            st.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.gcd.etl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decodes the dates, timestamps and multi-value fields of one extracted row (2 dates, 12 timestamps and
+ * 11 semicolon lists, as in the document builders of {@link Main}) with {@link ValueCodecs} and with the
+ * regex and {@code SimpleDateFormat} code it replaced. Compare their gc.alloc.rate.norm to see the
+ * allocations saved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueCodecsBenchmark {
+    private static final int ROWS = 1024;
+    private static final int DATES_PER_ROW = 2;
+    private static final int TIMESTAMPS_PER_ROW = 12;
+    private static final int LISTS_PER_ROW = 11;
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d\\d\\d\\d)-(\\d\\d)-(\\d\\d)");
+    private static final ThreadLocal<SimpleDateFormat> COMPARABLE_DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yMMdd"));
+
+    private String[][] dates;
+    private long[][] timestamps;
+    private String[][] lists;
+    private int row;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        dates = new String[ROWS][DATES_PER_ROW];
+        timestamps = new long[ROWS][TIMESTAMPS_PER_ROW];
+        lists = new String[ROWS][LISTS_PER_ROW];
+        for (int r = 0; r < ROWS; r++) {
+            for (int i = 0; i < DATES_PER_ROW; i++) {
+                // a few of the GCD's partial dates such as 1962-08-00 or 1962-08
+                dates[r][i] = random.nextInt(10) == 0
+                        ? String.format("%04d-%02d", 1930 + random.nextInt(90), 1 + random.nextInt(12))
+                        : String.format("%04d-%02d-%02d", 1930 + random.nextInt(90), 1 + random.nextInt(12), random.nextInt(29));
+            }
+            for (int i = 0; i < TIMESTAMPS_PER_ROW; i++) {
+                timestamps[r][i] = 1000000000L + random.nextInt(700000000);
+            }
+            for (int i = 0; i < LISTS_PER_ROW; i++) {
+                final StringBuilder list = new StringBuilder();
+                final int values = 1 + random.nextInt(4);
+                for (int v = 0; v < values; v++) {
+                    if (v > 0) {
+                        list.append(random.nextBoolean() ? "; " : " ;");
+                    }
+                    list.append("Creator ").append(random.nextInt(100000));
+                }
+                lists[r][i] = list.toString();
+            }
+        }
+    }
+
+    @Benchmark
+    public void codecs(final Blackhole blackhole) {
+        final int r = nextRow();
+        for (String date : dates[r]) {
+            blackhole.consume(ValueCodecs.parseDate(date));
+        }
+        for (long timestamp : timestamps[r]) {
+            blackhole.consume(ValueCodecs.epochSecondsToDate(timestamp));
+        }
+        for (String list : lists[r]) {
+            blackhole.consume(ValueCodecs.splitMultiValue(list));
+        }
+    }
+
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        final int r = nextRow();
+        for (String date : dates[r]) {
+            final Matcher m = DATE_PATTERN.matcher(date);
+            blackhole.consume(m.matches() ? Integer.parseInt(String.format("%s%s%s", m.group(1), m.group(2), m.group(3))) : -1);
+        }
+        for (long timestamp : timestamps[r]) {
+            blackhole.consume(Integer.parseInt(COMPARABLE_DATE_FORMAT.get().format(new Date(timestamp * 1000L))));
+        }
+        for (String list : lists[r]) {
+            blackhole.consume(list.split("\\s*;\\s*"));
+        }
+    }
+
+    private int nextRow() {
+        row = (row + 1) % ROWS;
+        return row;
+    }
+}
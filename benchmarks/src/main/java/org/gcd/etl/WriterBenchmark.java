@@ -0,0 +1,140 @@
+package org.gcd.etl;
+
+import com.indeed.flamdex.simple.SimpleFlamdexDocWriter;
+import com.indeed.flamdex.writer.FlamdexDocument;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Writes a batch of prebuilt documents per invocation to a new output in a temporary directory, including
+ * closing the writer, so that flushing and merging segments or row groups is part of the score. The Parquet
+ * object models are also compared from the rows, building each GcdIssueData or not. Scores are per document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WriterBenchmark {
+    private static final int DOCS = 20000;
+    private static final long UNIX_TIME = 1546300800L;
+
+    private List<FlamdexDocument> flamdexDocuments;
+    private List<GcdIssueData> parquetDocuments;
+    private List<BufferedRow> rows;
+    private ExtractionPlan.Binding parquet;
+    private File directory;
+    private int output;
+
+    @Setup
+    public void setup() throws SQLException {
+        // parquet formats its record consumer state for every value when debug logging is enabled, as it is
+        // by default; Main runs at INFO
+        Logger.getRootLogger().setLevel(org.apache.log4j.Level.INFO);
+        final GcdSchema schema = new GcdSchema();
+        final GcdMetadata metadata = SyntheticData.metadata();
+        rows = SyntheticData.rows(DOCS, 42);
+        final ExtractionPlan plan = ExtractionPlan.compile(new MappingProfile(), schema,
+                Arrays.asList(OutputType.FLAMDEX, OutputType.PARQUET));
+        final ExtractionPlan.Binding flamdex = plan.bind(SyntheticData.COLUMNS, OutputType.FLAMDEX, metadata, UNIX_TIME, new RunMetrics());
+        parquet = plan.bind(SyntheticData.COLUMNS, OutputType.PARQUET, metadata, UNIX_TIME, new RunMetrics());
+        flamdexDocuments = new ArrayList<>(DOCS);
+        parquetDocuments = new ArrayList<>(DOCS);
+        for (BufferedRow row : rows) {
+            flamdexDocuments.add(flamdex.buildFlamdexDocument(row, null));
+            parquetDocuments.add(parquet.buildIssueData(row, null));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("gcd-etl-bench").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void simpleFlamdexDocWriter() throws IOException {
+        final SimpleFlamdexDocWriter writer =
+                new SimpleFlamdexDocWriter(nextOutput(), new SimpleFlamdexDocWriter.Config());
+        for (FlamdexDocument doc : flamdexDocuments) {
+            writer.addDocument(doc);
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void parquetWriter() throws IOException {
+        final ParquetProfile profile = new ParquetProfile();
+        profile.setRecordsPerPart(0);
+        final ParquetPartWriter<GcdIssueData> writer = new ParquetPartWriter<>(nextOutput(), profile, GcdIssueData.getClassSchema());
+        for (GcdIssueData doc : parquetDocuments) {
+            writer.write(doc);
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void avroParquetRows() throws IOException, SQLException {
+        final ParquetProfile profile = new ParquetProfile();
+        profile.setRecordsPerPart(0);
+        final ParquetPartWriter<GcdIssueData> writer = new ParquetPartWriter<>(nextOutput(), profile, GcdIssueData.getClassSchema());
+        for (BufferedRow row : rows) {
+            writer.write(parquet.buildIssueData(row, null));
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void directParquetRows() throws IOException, SQLException {
+        final ParquetProfile profile = new ParquetProfile();
+        profile.setRecordsPerPart(0);
+        final ParquetPartWriter<IssueRowWriteSupport.IssueRow> writer =
+                new ParquetPartWriter<>(nextOutput(), -1, 0, profile, IssueRowWriteSupport.Builder::new);
+        final IssueRowWriteSupport.IssueRow issue = new IssueRowWriteSupport.IssueRow(parquet);
+        for (BufferedRow row : rows) {
+            writer.write(issue.set(row, null));
+        }
+        writer.close();
+    }
+
+    private String nextOutput() {
+        return new File(directory, "out" + output++).getPath();
+    }
+}
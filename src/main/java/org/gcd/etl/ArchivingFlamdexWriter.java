@@ -0,0 +1,81 @@
+package org.gcd.etl;
+
+import com.indeed.flamdex.writer.FlamdexWriter;
+import com.indeed.flamdex.writer.IntFieldWriter;
+import com.indeed.flamdex.writer.StringFieldWriter;
+
+import java.io.IOException;
+
+/**
+ * A {@link FlamdexWriter} that hands each field's files to a {@link SqarArchiver} as soon as the field is
+ * closed, so that the archive is compressed while the remaining fields are still being written.
+ */
+public class ArchivingFlamdexWriter implements FlamdexWriter {
+    private final FlamdexWriter writer;
+    private final SqarArchiver archiver;
+
+    public ArchivingFlamdexWriter(final FlamdexWriter writer, final SqarArchiver archiver) {
+        this.writer = writer;
+        this.archiver = archiver;
+    }
+
+    @Override
+    public String getOutputDirectory() {
+        return writer.getOutputDirectory();
+    }
+
+    @Override
+    public void resetMaxDocs(final long maxDocs) {
+        writer.resetMaxDocs(maxDocs);
+    }
+
+    @Override
+    public IntFieldWriter getIntFieldWriter(final String field) throws IOException {
+        final IntFieldWriter fieldWriter = writer.getIntFieldWriter(field);
+        return new IntFieldWriter() {
+            @Override
+            public void nextTerm(final long term) throws IOException {
+                fieldWriter.nextTerm(term);
+            }
+
+            @Override
+            public void nextDoc(final int doc) throws IOException {
+                fieldWriter.nextDoc(doc);
+            }
+
+            @Override
+            public void close() throws IOException {
+                fieldWriter.close();
+                // terms, docs and the term index of the field
+                archiver.addFinished("fld-" + field + ".int");
+            }
+        };
+    }
+
+    @Override
+    public StringFieldWriter getStringFieldWriter(final String field) throws IOException {
+        final StringFieldWriter fieldWriter = writer.getStringFieldWriter(field);
+        return new StringFieldWriter() {
+            @Override
+            public void nextTerm(final String term) throws IOException {
+                fieldWriter.nextTerm(term);
+            }
+
+            @Override
+            public void nextDoc(final int doc) throws IOException {
+                fieldWriter.nextDoc(doc);
+            }
+
+            @Override
+            public void close() throws IOException {
+                fieldWriter.close();
+                archiver.addFinished("fld-" + field + ".str");
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,370 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Writes {@link GcdIssueData} records to a sequence of Arrow IPC files in a snapshot directory such as
+ * ./index/snapshot=yyyymmdd, named and committed as {@link ParquetPartWriter} does its parts. Each field of
+ * the record is a vector of record batches of the profile's number of rows, arrays being list vectors. The
+ * fields decoded through GCD's lookup tables, and the CREDIT_SOURCE fields, are dictionary-encoded against
+ * those tables, which are known before the first batch as the file format requires. Buffers are not compressed, so readers can memory-map
+ * a part and use its batches in place.
+ */
+public class ArrowPartWriter implements Closeable {
+    private static final Logger log = Logger.getLogger(ArrowPartWriter.class);
+
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+
+    private final String directory;
+    // -1 when not writing one of several partitions
+    private final int partition;
+    private final ArrowProfile profile;
+    private final BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+    private final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+    private final VectorSchemaRoot root;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<Path> parts = new ArrayList<>();
+
+    private ArrowFileWriter writer;
+    private int part = 0;
+    private int count = 0;
+    private int partCount = 0;
+    private int batchCount = 0;
+
+    /**
+     * @param partition the extraction partition whose records these are, or -1
+     * @param codecs the codec of each field written, as {@link ExtractionPlan#getCodecs} gives them
+     */
+    public ArrowPartWriter(final String directory, final int partition, final ArrowProfile profile, final GcdMetadata metadata,
+            final Map<String, FieldCodec> codecs) {
+        this.directory = directory;
+        this.partition = partition;
+        this.profile = profile;
+        final Map<String, Encoder> encoders = profile.isDictionaryEncoding() ? newEncoders(metadata, codecs) : new HashMap<>();
+        final List<Field> fields = new ArrayList<>();
+        final Schema schema = GcdIssueData.getClassSchema();
+        for (Schema.Field field : schema.getFields()) {
+            fields.add(toArrowField(field, encoders.get(field.name())));
+        }
+        this.root = VectorSchemaRoot.create(new org.apache.arrow.vector.types.pojo.Schema(fields), allocator);
+        root.allocateNew();
+        for (Schema.Field field : schema.getFields()) {
+            columns.add(newColumn(field.pos(), root.getVector(field.name()), encoders.get(field.name())));
+        }
+    }
+
+    // one dictionary per codec, shared by the fields decoded through it
+    private Map<String, Encoder> newEncoders(final GcdMetadata metadata, final Map<String, FieldCodec> codecs) {
+        final Map<FieldCodec, Encoder> byCodec = new EnumMap<>(FieldCodec.class);
+        final Map<String, Encoder> encoders = new HashMap<>();
+        for (Map.Entry<String, FieldCodec> field : codecs.entrySet()) {
+            final Collection<String> values = getDictionaryValues(field.getValue(), metadata);
+            if (values == null) {
+                continue;
+            }
+            Encoder encoder = byCodec.get(field.getValue());
+            if (encoder == null) {
+                encoder = newEncoder(byCodec.size(), values);
+                byCodec.put(field.getValue(), encoder);
+            }
+            encoders.put(field.getKey(), encoder);
+        }
+        return encoders;
+    }
+
+    // the values a field of the codec can have, or null if they are not known up front
+    private static Collection<String> getDictionaryValues(final FieldCodec codec, final GcdMetadata metadata) {
+        switch (codec) {
+            case COUNTRY:
+                return metadata.getCountryCodeMap().values();
+            case LANGUAGE:
+                return metadata.getLanguageCodeMap().values();
+            case PUBLICATION_TYPE:
+                return metadata.getPublicationTypeMap().values();
+            case STORY_TYPE:
+                return metadata.getStoryTypeMap().values();
+            case CREDIT_SOURCE:
+                return ImmutableList.of("gcd_story", "gcd_story_credit");
+            default:
+                return null;
+        }
+    }
+
+    private Encoder newEncoder(final long id, final Collection<String> values) {
+        final VarCharVector vector = new VarCharVector("dictionary" + id, allocator);
+        vector.allocateNew();
+        final Encoder encoder = new Encoder(new DictionaryEncoding(id, false, INDEX_TYPE));
+        for (String value : new TreeSet<>(values)) {
+            final int index = encoder.indexes.size();
+            vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            encoder.indexes.put(value, index);
+        }
+        vector.setValueCount(encoder.indexes.size());
+        dictionaries.put(new Dictionary(vector, encoder.encoding));
+        return encoder;
+    }
+
+    private static Field toArrowField(final Schema.Field field, final Encoder encoder) {
+        Schema type = field.schema();
+        final boolean nullable = type.getType() == Schema.Type.UNION;
+        if (nullable) {
+            type = type.getTypes().get(1);
+        }
+        if (encoder != null) {
+            return new Field(field.name(), new FieldType(nullable, INDEX_TYPE, encoder.encoding), null);
+        }
+        if (type.getType() == Schema.Type.ARRAY) {
+            final Field item = new Field("item", FieldType.nullable(toArrowType(type.getElementType())), null);
+            return new Field(field.name(), new FieldType(nullable, ArrowType.List.INSTANCE, null), ImmutableList.of(item));
+        }
+        return new Field(field.name(), new FieldType(nullable, toArrowType(type), null), null);
+    }
+
+    private static ArrowType toArrowType(final Schema type) {
+        switch (type.getType()) {
+            case LONG:
+                return new ArrowType.Int(64, true);
+            case INT:
+                return new ArrowType.Int(32, true);
+            case BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            case STRING:
+                return ArrowType.Utf8.INSTANCE;
+            default:
+                throw new IllegalArgumentException("No Arrow type for " + type);
+        }
+    }
+
+    private static Column newColumn(final int pos, final FieldVector vector, final Encoder encoder) {
+        if (encoder != null) {
+            final IntVector indexes = (IntVector) vector;
+            return (row, record) -> {
+                final Object value = record.get(pos);
+                if (value == null) {
+                    indexes.setNull(row);
+                } else {
+                    indexes.setSafe(row, encoder.encode(vector.getName(), value));
+                }
+            };
+        }
+        if (vector instanceof ListVector) {
+            final ListVector list = (ListVector) vector;
+            final Value item = newValue(list.getDataVector());
+            return (row, record) -> {
+                final List<?> values = (List<?>) record.get(pos);
+                if (values == null) {
+                    // left unset, so null; the row count fills in its offset
+                    return;
+                }
+                final int offset = list.startNewValue(row);
+                for (int i = 0; i < values.size(); i++) {
+                    item.set(offset + i, values.get(i));
+                }
+                list.endValue(row, values.size());
+            };
+        }
+        final Value value = newValue(vector);
+        return (row, record) -> value.set(row, record.get(pos));
+    }
+
+    private static Value newValue(final FieldVector vector) {
+        if (vector instanceof BigIntVector) {
+            final BigIntVector longs = (BigIntVector) vector;
+            return (index, value) -> {
+                if (value == null) {
+                    longs.setNull(index);
+                } else {
+                    longs.setSafe(index, (Long) value);
+                }
+            };
+        }
+        if (vector instanceof IntVector) {
+            final IntVector ints = (IntVector) vector;
+            return (index, value) -> {
+                if (value == null) {
+                    ints.setNull(index);
+                } else {
+                    ints.setSafe(index, (Integer) value);
+                }
+            };
+        }
+        if (vector instanceof BitVector) {
+            final BitVector booleans = (BitVector) vector;
+            return (index, value) -> {
+                if (value == null) {
+                    booleans.setNull(index);
+                } else {
+                    booleans.setSafe(index, (Boolean) value ? 1 : 0);
+                }
+            };
+        }
+        final VarCharVector strings = (VarCharVector) vector;
+        return (index, value) -> {
+            if (value == null) {
+                strings.setNull(index);
+            } else if (value instanceof Utf8) {
+                strings.setSafe(index, ((Utf8) value).getBytes(), 0, ((Utf8) value).getByteLength());
+            } else {
+                strings.setSafe(index, value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    public void write(final GcdIssueData record) throws IOException {
+        if (writer == null) {
+            openWriter();
+        }
+        for (Column column : columns) {
+            column.set(batchCount, record);
+        }
+        batchCount++;
+        count++;
+        partCount++;
+        if (batchCount >= profile.getBatchRows()) {
+            writeBatch();
+        }
+        if (profile.getRecordsPerPart() > 0 && partCount >= profile.getRecordsPerPart()) {
+            log.info("Processed document #" + count);
+            closeWriter();
+        }
+    }
+
+    /**
+     * The number of records written.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void writeBatch() throws IOException {
+        root.setRowCount(batchCount);
+        writer.writeBatch();
+        batchCount = 0;
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer == null && count == 0) {
+                // always leave at least one (empty) part behind, as the PARQUET output does
+                openWriter();
+            }
+            if (writer != null) {
+                closeWriter();
+            }
+            commit();
+        } finally {
+            root.close();
+            for (long id : dictionaries.getDictionaryIds()) {
+                dictionaries.lookup(id).getVector().close();
+            }
+            allocator.close();
+        }
+    }
+
+    // renames the parts written so far into place
+    private void commit() throws IOException {
+        for (Path path : parts) {
+            Files.move(path, Paths.get(directory, path.getFileName().toString()), StandardCopyOption.ATOMIC_MOVE);
+        }
+        parts.clear();
+    }
+
+    private String getName(final int part) {
+        final String fmtPart;
+        if (partition < 0) {
+            fmtPart = String.format("%04d", part);
+        } else {
+            fmtPart = String.format("%04d-%04d", partition, part);
+        }
+        return "part-" + fmtPart + ".arrow";
+    }
+
+    private void openWriter() throws IOException {
+        final Path path = Paths.get(directory, "_temporary", getName(part));
+        Files.createDirectories(path.getParent());
+        parts.add(path);
+        // replaces what a failed run left behind
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        writer = new ArrowFileWriter(root, dictionaries, channel);
+        writer.start();
+    }
+
+    private void closeWriter() throws IOException {
+        if (batchCount > 0) {
+            writeBatch();
+        }
+        // ends the file and closes its channel
+        writer.close();
+        writer = null;
+        partCount = 0;
+        part++;
+    }
+
+    private interface Column {
+        void set(int row, GcdIssueData record);
+    }
+
+    private interface Value {
+        void set(int index, Object value);
+    }
+
+    private static final class Encoder {
+        private final DictionaryEncoding encoding;
+        private final Object2IntOpenHashMap<String> indexes = new Object2IntOpenHashMap<>();
+
+        private Encoder(final DictionaryEncoding encoding) {
+            this.encoding = encoding;
+            indexes.defaultReturnValue(-1);
+        }
+
+        private int encode(final String column, final Object value) {
+            final int index = indexes.getInt(value.toString());
+            if (index < 0) {
+                throw new IllegalArgumentException("No " + value + " in the dictionary of " + column);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.gcd.etl;
+
+/**
+ * Settings of the ARROW output: rows per record batch, when to start a new part file, and whether the code
+ * columns are dictionary-encoded.
+ */
+public final class ArrowProfile {
+    private int batchRows = 65536;
+    // 0 for no limit
+    private int recordsPerPart = 2000000;
+    // encode the country, language, publication type, story type and credit source columns against their lookup tables
+    private boolean dictionaryEncoding = true;
+
+    public int getBatchRows() {
+        return batchRows;
+    }
+
+    public void setBatchRows(int batchRows) {
+        this.batchRows = batchRows;
+    }
+
+    public int getRecordsPerPart() {
+        return recordsPerPart;
+    }
+
+    public void setRecordsPerPart(int recordsPerPart) {
+        this.recordsPerPart = recordsPerPart;
+    }
+
+    public boolean isDictionaryEncoding() {
+        return dictionaryEncoding;
+    }
+
+    public void setDictionaryEncoding(boolean dictionaryEncoding) {
+        this.dictionaryEncoding = dictionaryEncoding;
+    }
+
+    @Override
+    public String toString() {
+        return "ArrowProfile{" +
+                "batchRows=" + batchRows +
+                ", recordsPerPart=" + recordsPerPart +
+                ", dictionaryEncoding=" + dictionaryEncoding + '}';
+    }
+}
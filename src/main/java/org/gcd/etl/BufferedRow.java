@@ -0,0 +1,101 @@
+package org.gcd.etl;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A copy of the values of one row, so that rows can be handed from the thread reading a result set to the
+ * threads building documents from them.
+ */
+public final class BufferedRow implements GcdRow {
+    private final Map<String, Integer> columns;
+    private final Object[] values;
+
+    private BufferedRow(final Map<String, Integer> columns, final Object[] values) {
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * The columns of the rows of one result set.
+     */
+    public static final class Layout {
+        private final String[] labels;
+        private final Map<String, Integer> columns;
+
+        public Layout(final String[] labels) {
+            this.labels = labels;
+            this.columns = new HashMap<>();
+            for (int i = 0; i < labels.length; i++) {
+                columns.put(labels[i], i);
+            }
+        }
+
+        /**
+         * Copies a row of a result set with these column labels.
+         */
+        public BufferedRow copy(final GcdRow row) throws SQLException {
+            final Object[] values = new Object[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                values[i] = row.getObject(i + 1);
+            }
+            return new BufferedRow(columns, values);
+        }
+    }
+
+    private Object getValue(final String column) throws SQLException {
+        final Integer index = columns.get(column);
+        if (index == null) {
+            throw new SQLException("Column '" + column + "' not found.");
+        }
+        return values[index];
+    }
+
+    private Object getValue(final int column) throws SQLException {
+        if (column < 1 || column > values.length) {
+            throw new SQLException("Column index " + column + " out of range.");
+        }
+        return values[column - 1];
+    }
+
+    @Override
+    public String getString(final String column) throws SQLException {
+        return GcdRow.toString(getValue(column));
+    }
+
+    @Override
+    public int getInt(final String column) throws SQLException {
+        return GcdRow.toInt(getValue(column));
+    }
+
+    @Override
+    public long getLong(final String column) throws SQLException {
+        return GcdRow.toLong(getValue(column));
+    }
+
+    @Override
+    public Object getObject(final String column) throws SQLException {
+        return getValue(column);
+    }
+
+    @Override
+    public String getString(final int column) throws SQLException {
+        return GcdRow.toString(getValue(column));
+    }
+
+    @Override
+    public int getInt(final int column) throws SQLException {
+        return GcdRow.toInt(getValue(column));
+    }
+
+    @Override
+    public long getLong(final int column) throws SQLException {
+        return GcdRow.toLong(getValue(column));
+    }
+
+    @Override
+    public Object getObject(final int column) throws SQLException {
+        return getValue(column);
+    }
+}
@@ -0,0 +1,215 @@
+package org.gcd.etl;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Series, publishers, indicia publishers and brands loaded once and keyed by id, so that the extraction query
+ * only has to return the narrow issue x story columns. The dimension columns of each row are read from the
+ * cached records instead of being sent, decoded and allocated again for every story of every issue.
+ */
+public class DimensionCache {
+    private static final Logger log = Logger.getLogger(DimensionCache.class);
+
+    // join keys the narrow query must select, besides the issue and story columns
+    public static final String SERIES_KEY = "dim_series_id";
+    public static final String INDICIA_PUBLISHER_KEY = "dim_indicia_publisher_id";
+    public static final String BRAND_KEY = "dim_brand_id";
+    // join key the series query must select
+    public static final String PUBLISHER_KEY = "series_publisher_id";
+
+    private static final int SERIES = 0;
+    private static final int PUBLISHER = 1;
+    private static final int INDICIA_PUBLISHER = 2;
+    private static final int BRAND = 3;
+
+    private final Dimension[] dimensions;
+    // column label -> { dimension, column index }
+    private final Map<String, int[]> routes;
+    // the labels and routes of the cached columns, in the order rows index them after the query's columns
+    private final String[] cachedLabels;
+    private final int[][] cachedRoutes;
+    private final int seriesPublisherColumn;
+
+    private DimensionCache(final Dimension[] dimensions) {
+        this.dimensions = dimensions;
+        this.routes = new LinkedHashMap<>();
+        for (int d = 0; d < dimensions.length; d++) {
+            final String[] labels = dimensions[d].labels;
+            for (int c = 0; c < labels.length; c++) {
+                routes.put(labels[c], new int[] { d, c });
+            }
+        }
+        if (!routes.containsKey(PUBLISHER_KEY)) {
+            throw new IllegalArgumentException("Series query must select " + PUBLISHER_KEY);
+        }
+        this.cachedLabels = routes.keySet().toArray(new String[0]);
+        this.cachedRoutes = routes.values().toArray(new int[0][]);
+        this.seriesPublisherColumn = routes.get(PUBLISHER_KEY)[1];
+    }
+
+    /**
+     * Loads each dimension from a query selecting the same column labels as the joined extraction query.
+     */
+    public static DimensionCache load(final Connection conn, final String seriesQuery, final String publisherQuery,
+            final String indiciaPublisherQuery, final String brandQuery) throws SQLException {
+        final Dimension[] dimensions = new Dimension[4];
+        dimensions[SERIES] = Dimension.load(conn, seriesQuery, "series_id");
+        dimensions[PUBLISHER] = Dimension.load(conn, publisherQuery, "publisher_id");
+        dimensions[INDICIA_PUBLISHER] = Dimension.load(conn, indiciaPublisherQuery, "indicia_publisher_id");
+        dimensions[BRAND] = Dimension.load(conn, brandQuery, "brand_id");
+        log.info("Cached " + dimensions[SERIES].records.size() + " series, " + dimensions[PUBLISHER].records.size() + " publishers, " +
+                dimensions[INDICIA_PUBLISHER].records.size() + " indicia publishers and " + dimensions[BRAND].records.size() + " brands");
+        return new DimensionCache(dimensions);
+    }
+
+    /**
+     * Rows of a narrow query joined to the cached dimensions. Like the INNER JOINs of the full query, rows
+     * whose series or publisher is missing are skipped; a missing indicia publisher or brand reads as NULL.
+     * The cached columns follow the query's, which must not select them itself.
+     */
+    public ResultSetRow newRow(final ResultSet rs) {
+        return new DimensionRow(rs);
+    }
+
+    private final class DimensionRow extends ResultSetRow {
+        private final Object[][] current = new Object[dimensions.length][];
+        private int queryColumns = -1;
+
+        private DimensionRow(final ResultSet rs) {
+            super(rs);
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            while (rs.next()) {
+                current[SERIES] = lookup(SERIES, rs.getObject(SERIES_KEY));
+                if (current[SERIES] == null) {
+                    continue;
+                }
+                current[PUBLISHER] = lookup(PUBLISHER, current[SERIES][seriesPublisherColumn]);
+                if (current[PUBLISHER] == null) {
+                    continue;
+                }
+                current[INDICIA_PUBLISHER] = lookup(INDICIA_PUBLISHER, rs.getObject(INDICIA_PUBLISHER_KEY));
+                current[BRAND] = lookup(BRAND, rs.getObject(BRAND_KEY));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String[] getColumnLabels() throws SQLException {
+            final String[] queryLabels = super.getColumnLabels();
+            final String[] labels = new String[queryLabels.length + cachedLabels.length];
+            System.arraycopy(queryLabels, 0, labels, 0, queryLabels.length);
+            System.arraycopy(cachedLabels, 0, labels, queryLabels.length, cachedLabels.length);
+            return labels;
+        }
+
+        // the route of a cached column, null for a column of the query
+        private int[] getRoute(final int column) throws SQLException {
+            if (queryColumns < 0) {
+                queryColumns = rs.getMetaData().getColumnCount();
+            }
+            return column > queryColumns ? cachedRoutes[column - queryColumns - 1] : null;
+        }
+
+        private Object[] lookup(final int dimension, final Object key) throws SQLException {
+            return key == null ? null : dimensions[dimension].records.get(GcdRow.toLong(key));
+        }
+
+        private Object getCached(final int[] route) {
+            final Object[] record = current[route[0]];
+            return record == null ? null : record[route[1]];
+        }
+
+        @Override
+        public String getString(final String column) throws SQLException {
+            final int[] route = routes.get(column);
+            return route == null ? rs.getString(column) : GcdRow.toString(getCached(route));
+        }
+
+        @Override
+        public int getInt(final String column) throws SQLException {
+            final int[] route = routes.get(column);
+            return route == null ? rs.getInt(column) : GcdRow.toInt(getCached(route));
+        }
+
+        @Override
+        public long getLong(final String column) throws SQLException {
+            final int[] route = routes.get(column);
+            return route == null ? rs.getLong(column) : GcdRow.toLong(getCached(route));
+        }
+
+        @Override
+        public Object getObject(final String column) throws SQLException {
+            final int[] route = routes.get(column);
+            return route == null ? rs.getObject(column) : getCached(route);
+        }
+
+        @Override
+        public String getString(final int column) throws SQLException {
+            final int[] route = getRoute(column);
+            return route == null ? rs.getString(column) : GcdRow.toString(getCached(route));
+        }
+
+        @Override
+        public int getInt(final int column) throws SQLException {
+            final int[] route = getRoute(column);
+            return route == null ? rs.getInt(column) : GcdRow.toInt(getCached(route));
+        }
+
+        @Override
+        public long getLong(final int column) throws SQLException {
+            final int[] route = getRoute(column);
+            return route == null ? rs.getLong(column) : GcdRow.toLong(getCached(route));
+        }
+
+        @Override
+        public Object getObject(final int column) throws SQLException {
+            final int[] route = getRoute(column);
+            return route == null ? rs.getObject(column) : getCached(route);
+        }
+    }
+
+    private static final class Dimension {
+        private final String[] labels;
+        private final Long2ObjectOpenHashMap<Object[]> records;
+
+        private Dimension(final String[] labels, final Long2ObjectOpenHashMap<Object[]> records) {
+            this.labels = labels;
+            this.records = records;
+        }
+
+        private static Dimension load(final Connection conn, final String query, final String keyColumn) throws SQLException {
+            final Statement st = conn.createStatement();
+            final ResultSet rs = st.executeQuery(query);
+            final ResultSetMetaData metaData = rs.getMetaData();
+            final String[] labels = new String[metaData.getColumnCount()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = metaData.getColumnLabel(i + 1);
+            }
+            final Long2ObjectOpenHashMap<Object[]> records = new Long2ObjectOpenHashMap<>();
+            while (rs.next()) {
+                final Object[] record = new Object[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    record[i] = rs.getObject(i + 1);
+                }
+                records.put(rs.getLong(keyColumn), record);
+            }
+            rs.close();
+            st.close();
+            records.trim();
+            return new Dimension(labels, records);
+        }
+    }
+}
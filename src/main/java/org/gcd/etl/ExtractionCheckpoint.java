@@ -0,0 +1,190 @@
+package org.gcd.etl;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * The progress of a checkpointed run. The issue ids are split into chunks of equal width, each extracted to
+ * outputs of its own (shard or part files numbered by chunk) that are committed by renaming them into place,
+ * and the checkpoint file records the last issue id up to which every chunk has been committed. A resumed run
+ * reads the chunking, the watermark and the delta back from the checkpoint rather than from the database, and
+ * extracts the chunks after that issue id again, so its output is that of an uninterrupted run. Chunks committed
+ * out of order, past a chunk that had not finished, are extracted again and overwritten. Once every chunk is
+ * committed, FLAMDEX chunk shards are merged into the shards of the run, which the checkpoint records too.
+ */
+public final class ExtractionCheckpoint {
+    private static final Logger log = Logger.getLogger(ExtractionCheckpoint.class);
+
+    private final String file;
+    private final Properties state;
+    private final IssueIdRange bounds;
+    private final long chunkSize;
+    private final TreeSet<Long> committedOutOfOrder = new TreeSet<>();
+    private long lastIssueId;
+
+    private ExtractionCheckpoint(final String file, final Properties state) {
+        this.file = file;
+        this.state = state;
+        this.bounds = new IssueIdRange(Long.parseLong(state.getProperty("minIssueId")),
+                Long.parseLong(state.getProperty("endIssueId")));
+        this.chunkSize = Long.parseLong(state.getProperty("chunkSize"));
+        this.lastIssueId = Long.parseLong(state.getProperty("lastIssueId"));
+    }
+
+    /**
+     * Starts the checkpoint of a new run over the given issue ids (or none if null), replacing any earlier one.
+     *
+     * @param watermark the database time the run extracts up to, or 0 if it is not incremental
+     * @param delta the changed issues an incremental run extracts, or null to extract all
+     */
+    public static ExtractionCheckpoint start(final GcdCheckpoint config, final String indexName, final String date,
+            final List<OutputType> outputTypes, final IssueIdRange bounds, final long watermark, final IssueDelta delta)
+            throws IOException {
+        if (Files.exists(Paths.get(config.getFile()))) {
+            log.warn("Discarding the checkpoint in " + config.getFile() + "; pass --resume to continue it");
+        }
+        final Properties state = new Properties();
+        state.setProperty("indexName", indexName);
+        state.setProperty("date", date);
+        state.setProperty("outputType", OutputType.toString(outputTypes));
+        state.setProperty("minIssueId", Long.toString(bounds != null ? bounds.getLower() : 0));
+        state.setProperty("endIssueId", Long.toString(bounds != null ? bounds.getUpper() : 0));
+        state.setProperty("chunkSize", Long.toString(Math.max(1, config.getChunkSize())));
+        state.setProperty("lastIssueId", Long.toString((bounds != null ? bounds.getLower() : 0) - 1));
+        state.setProperty("watermark", Long.toString(watermark));
+        state.setProperty("delta", Boolean.toString(delta != null));
+        if (delta != null) {
+            state.setProperty("deltaSince", Long.toString(delta.getSince()));
+            delta.writeManifest(getDeltaFile(config.getFile()));
+        }
+        final ExtractionCheckpoint checkpoint = new ExtractionCheckpoint(config.getFile(), state);
+        checkpoint.write();
+        return checkpoint;
+    }
+
+    /**
+     * Reads the checkpoint of a failed run, which must have been for the same index, date and output types.
+     */
+    public static ExtractionCheckpoint resume(final GcdCheckpoint config, final String indexName, final String date,
+            final List<OutputType> outputTypes) throws IOException {
+        final Path path = Paths.get(config.getFile());
+        if (!Files.exists(path)) {
+            throw new IOException("No checkpoint to resume in " + config.getFile());
+        }
+        final Properties state = new Properties();
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            state.load(in);
+        }
+        if (!indexName.equals(state.getProperty("indexName")) || !date.equals(state.getProperty("date"))
+                || !OutputType.toString(outputTypes).equals(state.getProperty("outputType"))) {
+            throw new IllegalArgumentException("The checkpoint in " + config.getFile() + " is for " + state.getProperty("indexName") +
+                    " " + state.getProperty("date") + " " + state.getProperty("outputType"));
+        }
+        final ExtractionCheckpoint checkpoint = new ExtractionCheckpoint(config.getFile(), state);
+        log.info("Resuming after issue id " + checkpoint.lastIssueId + " with " + checkpoint.getPendingChunks().size() +
+                " of " + checkpoint.getChunks().size() + " chunks left");
+        return checkpoint;
+    }
+
+    /**
+     * The database time the run extracts up to, to store as the next watermark of an incremental run.
+     */
+    public long getWatermark() {
+        return Long.parseLong(state.getProperty("watermark"));
+    }
+
+    /**
+     * The changed issues the run extracts, or null if it extracts all.
+     */
+    public IssueDelta getDelta() throws IOException {
+        if (!Boolean.parseBoolean(state.getProperty("delta"))) {
+            return null;
+        }
+        return IssueDelta.readManifest(getDeltaFile(file), Long.parseLong(state.getProperty("deltaSince")));
+    }
+
+    public List<IssueIdRange> getChunks() {
+        return bounds.split(chunkSize);
+    }
+
+    /**
+     * The chunks that have not been committed.
+     */
+    public synchronized List<IssueIdRange> getPendingChunks() {
+        final List<IssueIdRange> pending = new ArrayList<>();
+        for (IssueIdRange chunk : getChunks()) {
+            if (chunk.getLower() > lastIssueId) {
+                pending.add(chunk);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * The number of a chunk, which names its outputs.
+     */
+    public int getChunkNumber(final IssueIdRange chunk) {
+        return (int) ((chunk.getLower() - bounds.getLower()) / chunkSize);
+    }
+
+    /**
+     * Records that the outputs of a chunk have been renamed into place.
+     */
+    public synchronized void commit(final IssueIdRange chunk) throws IOException {
+        committedOutOfOrder.add(chunk.getLower());
+        while (!committedOutOfOrder.isEmpty() && committedOutOfOrder.first() == lastIssueId + 1) {
+            lastIssueId = Math.min(committedOutOfOrder.pollFirst() + chunkSize, bounds.getUpper()) - 1;
+        }
+        state.setProperty("lastIssueId", Long.toString(lastIssueId));
+        write();
+        log.info("Committed issue ids " + chunk.getLower() + " to " + (chunk.getUpper() - 1) + "; checkpoint at " + lastIssueId);
+    }
+
+    /**
+     * Whether the shards of the chunks have been merged into the shards of the run, which only leaves deleting them.
+     */
+    public boolean isMerged() {
+        return Boolean.parseBoolean(state.getProperty("merged"));
+    }
+
+    /**
+     * Records that the shards of the chunks have been merged into the shards of the run.
+     */
+    public synchronized void setMerged() throws IOException {
+        state.setProperty("merged", "true");
+        write();
+    }
+
+    /**
+     * Deletes the checkpoint once the run has completed.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(Paths.get(getDeltaFile(file)));
+        Files.deleteIfExists(Paths.get(file));
+    }
+
+    private void write() throws IOException {
+        final Path path = Paths.get(file);
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            state.store(out, "gcd-etl checkpoint");
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String getDeltaFile(final String file) {
+        return file + ".delta";
+    }
+}
@@ -0,0 +1,190 @@
+package org.gcd.etl;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Overlaps reading rows, building documents and writing them. A reader thread copies batches of rows and
+ * looks up their story credits, a pool of builder threads turns each batch into documents, and the calling
+ * thread writes the batches in the order they were read, so the output is the same as a serial run's.
+ * At most {@code queueSize} batches are in flight between the reader and the writer.
+ */
+public final class ExtractionPipeline {
+    private static final Logger log = Logger.getLogger(ExtractionPipeline.class);
+
+    private static final int BATCH_SIZE = 256;
+
+    public interface DocumentBuilder<D> {
+        D build(GcdRow row, GcdStoryCredit credit) throws SQLException;
+    }
+
+    public interface DocumentWriter<D> {
+        void write(D doc) throws IOException;
+    }
+
+    private final int threads;
+    private final int queueSize;
+    private final RunMetrics metrics;
+
+    public ExtractionPipeline(final int threads, final int queueSize, final RunMetrics metrics) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.metrics = metrics;
+    }
+
+    private static final class PendingRow {
+        private final BufferedRow row;
+        private final GcdStoryCredit credit;
+
+        private PendingRow(final BufferedRow row, final GcdStoryCredit credit) {
+            this.row = row;
+            this.credit = credit;
+        }
+    }
+
+    private static final class StageTime {
+        private final LongAdder busy = new LongAdder();
+        private final LongAdder idle = new LongAdder();
+
+        private String describe(final String stage, final int threads) {
+            return String.format("%s %.1fs busy, %.1fs idle%s", stage, busy.sum() / 1e9, idle.sum() / 1e9,
+                    threads > 1 ? " over " + threads + " threads" : "");
+        }
+    }
+
+    /**
+     * Extracts every row of the source and returns the number of documents written.
+     */
+    public <D> int run(final ResultSetRow source, final GcdStoryCredit.Lookup storyCredits,
+            final DocumentBuilder<D> builder, final DocumentWriter<D> writer) throws SQLException, IOException {
+        final BufferedRow.Layout layout = new BufferedRow.Layout(source.getColumnLabels());
+        final BlockingQueue<Future<List<D>>> batches = new ArrayBlockingQueue<>(queueSize);
+        final Future<List<D>> end = Futures.immediateFuture(Collections.<D>emptyList());
+        final StageTime readTime = new StageTime();
+        final StageTime buildTime = new StageTime();
+        final StageTime writeTime = new StageTime();
+
+        final ExecutorService reader = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat(Thread.currentThread().getName() + "-read").setDaemon(true).build());
+        final ExecutorService builders = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat(Thread.currentThread().getName() + "-build-%d").setDaemon(true).build());
+        final long start = System.nanoTime();
+        int count = 0;
+        try {
+            reader.submit(() -> read(source, storyCredits, layout, builder, builders, batches, end, readTime, buildTime, metrics));
+            while (true) {
+                final long waitStart = System.nanoTime();
+                final Future<List<D>> batch = batches.take();
+                if (batch == end) {
+                    writeTime.idle.add(System.nanoTime() - waitStart);
+                    break;
+                }
+                final List<D> docs = batch.get();
+                final long writeStart = System.nanoTime();
+                writeTime.idle.add(writeStart - waitStart);
+                for (D doc : docs) {
+                    writer.write(doc);
+                }
+                count += docs.size();
+                writeTime.busy.add(System.nanoTime() - writeStart);
+            }
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), SQLException.class, IOException.class);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for documents", e);
+        } finally {
+            reader.shutdownNow();
+            builders.shutdownNow();
+        }
+        final long wall = System.nanoTime() - start;
+        buildTime.idle.add(Math.max(0, threads * wall - buildTime.busy.sum()));
+        log.info("Pipeline stages: " + readTime.describe("read", 1) + "; " + buildTime.describe("build", threads) + "; " +
+                writeTime.describe("write", 1));
+        metrics.phase("read").addWallNanos(readTime.busy.sum());
+        metrics.phase("read").addRows(count);
+        metrics.phase("build").addWallNanos(buildTime.busy.sum());
+        metrics.phase("build").addRows(count);
+        metrics.phase("write").addWallNanos(writeTime.busy.sum());
+        metrics.phase("write").addRows(count);
+        return count;
+    }
+
+    private static <D> void read(final ResultSetRow source, final GcdStoryCredit.Lookup storyCredits, final BufferedRow.Layout layout,
+            final DocumentBuilder<D> builder, final ExecutorService builders, final BlockingQueue<Future<List<D>>> batches,
+            final Future<List<D>> end, final StageTime readTime, final StageTime buildTime, final RunMetrics metrics) {
+        Future<List<D>> last = end;
+        try {
+            List<PendingRow> batch = new ArrayList<>(BATCH_SIZE);
+            long readStart = System.nanoTime();
+            while (source.next()) {
+                try {
+                    batch.add(new PendingRow(layout.copy(source), storyCredits.forRow(source)));
+                } catch (SQLException e) {
+                    metrics.recordSkippedRow(e);
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    readStart = submit(batch, builder, builders, batches, readTime, buildTime, metrics, readStart);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, builder, builders, batches, readTime, buildTime, metrics, readStart);
+            }
+        } catch (InterruptedException e) {
+            // the writer has given up
+            return;
+        } catch (Throwable e) {
+            last = Futures.immediateFailedFuture(e);
+        }
+        try {
+            batches.put(last);
+        } catch (InterruptedException e) {
+            // the writer has given up
+        }
+    }
+
+    // hands a batch to the builders, returning the time the reader resumes reading
+    private static <D> long submit(final List<PendingRow> batch, final DocumentBuilder<D> builder, final ExecutorService builders,
+            final BlockingQueue<Future<List<D>>> batches, final StageTime readTime, final StageTime buildTime, final RunMetrics metrics,
+            final long readStart) throws InterruptedException {
+        final Future<List<D>> docs = builders.submit(() -> build(batch, builder, buildTime, metrics));
+        final long putStart = System.nanoTime();
+        readTime.busy.add(putStart - readStart);
+        batches.put(docs);
+        final long putEnd = System.nanoTime();
+        readTime.idle.add(putEnd - putStart);
+        return putEnd;
+    }
+
+    private static <D> List<D> build(final List<PendingRow> batch, final DocumentBuilder<D> builder, final StageTime buildTime,
+            final RunMetrics metrics) {
+        final long buildStart = System.nanoTime();
+        final List<D> docs = new ArrayList<>(batch.size());
+        for (PendingRow pending : batch) {
+            try {
+                docs.add(builder.build(pending.row, pending.credit));
+            } catch (SQLException e) {
+                metrics.recordSkippedRow(e);
+            }
+        }
+        buildTime.busy.add(System.nanoTime() - buildStart);
+        return docs;
+    }
+}
@@ -0,0 +1,868 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableMap;
+import com.indeed.flamdex.writer.FlamdexDocument;
+import org.apache.avro.Schema;
+import org.apache.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link MappingProfile} compiled for the outputs of a run. The extraction query selects the columns of the
+ * fields those outputs write and nothing else, and joins only the tables they are in; without story fields it
+ * does not join gcd_story at all, so it returns one row per issue and no story credits are needed. Documents are
+ * built, or written straight to Parquet by the DIRECT object model, by a {@link Binding} of the fields to the indexes
+ * of the columns in the rows read. Columns keep the labels of the full query, which the dimension cache and the story
+ * credit lookup read by name.
+ */
+public final class ExtractionPlan {
+    private static final Logger log = Logger.getLogger(ExtractionPlan.class);
+
+    private static final Pattern COLUMN = Pattern.compile("(\\w+)\\.(\\w+)");
+
+    private static final Schema ISSUE_DATA = GcdIssueData.getClassSchema();
+    // the run's unix time, which every document has without a mapping
+    private static final String FLAMDEX_UNIX_TIME = "unixtime";
+    private static final String ISSUE_DATA_UNIX_TIME = "unix_time";
+    private static final String CREATOR_ID_SUFFIX = "_creator_id";
+    private static final String CREDIT_SOURCE = "gcd_story_credit";
+    private static final String STORY_SOURCE = "gcd_story";
+    // the dictionary of the CREDITS fields, which share their creator names
+    private static final String CREATOR_NAMES = "creator_names";
+
+    private enum Table {
+        ISSUE("issue", "gcd_issue", "issue_", null),
+        SERIES("series", "gcd_series", "series_", "INNER JOIN gcd_series AS series ON issue.series_id=series.id"),
+        PUBLISHER("publisher", "gcd_publisher", "publisher_", "INNER JOIN gcd_publisher AS publisher ON series.publisher_id=publisher.id"),
+        INDICIA("indicia", "gcd_indicia_publisher", "indicia_publisher_",
+                "LEFT OUTER JOIN gcd_indicia_publisher AS indicia ON issue.indicia_publisher_id=indicia.id"),
+        BRAND("brand", "gcd_brand", "brand_", "LEFT OUTER JOIN gcd_brand AS brand ON issue.brand_id=brand.id"),
+        STORY("story", "gcd_story", "story_", "LEFT OUTER JOIN gcd_story AS story ON story.issue_id=issue.id");
+
+        private final String alias;
+        private final String name;
+        private final String labelPrefix;
+        private final String join;
+
+        Table(final String alias, final String name, final String labelPrefix, final String join) {
+            this.alias = alias;
+            this.name = name;
+            this.labelPrefix = labelPrefix;
+            this.join = join;
+        }
+    }
+
+    // the labels of the full query that are not the table's label prefix and the column's name
+    private static final Map<String, String> LABELS = ImmutableMap.<String, String>builder()
+            .put("issue.number", "issue_number_raw")
+            .put("issue.key_date", "pubdateraw")
+            .put("issue.price", "price")
+            .put("issue.page_count", "page_count")
+            .put("issue.indicia_frequency", "indicia_frequency")
+            .put("issue.isbn", "isbn")
+            .put("issue.variant_name", "variant_name")
+            .put("issue.variant_of_id", "variant_of_issue_id")
+            .put("issue.barcode", "barcode")
+            .put("issue.title", "title")
+            .put("issue.on_sale_date", "onsaledateraw")
+            .put("issue.rating", "rating")
+            .put("issue.volume_not_printed", "volume_not_printed")
+            .put("issue.editing", "editing")
+            .put("issue.notes", "notes")
+            .put("issue.created", "created")
+            .put("issue.modified", "modified")
+            .put("series.country_id", "scountryid")
+            .put("series.language_id", "slangid")
+            .put("series.publication_type_id", "spubtypeid")
+            .put("publisher.country_id", "pubcountryid")
+            .put("indicia.country_id", "indpubcountryid")
+            .put("story.type_id", "strtypeid")
+            .build();
+
+    private static final class Column {
+        private final Table table;
+        private final String name;
+        private final boolean timestamp;
+        private final String label;
+
+        private Column(final Table table, final String name, final boolean timestamp) {
+            this.table = table;
+            this.name = name;
+            this.timestamp = timestamp;
+            this.label = getLabel(table, name);
+        }
+
+        private String toSql() {
+            final String column = table.alias + "." + name;
+            return "  " + (timestamp ? "UNIX_TIMESTAMP(" + column + ")" : column) + " AS " + label;
+        }
+    }
+
+    private final List<FieldMapping> fields = new ArrayList<>();
+    // the column of each field, or null
+    private final List<Column> fieldColumns = new ArrayList<>();
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Set<Table> tables = EnumSet.of(Table.ISSUE);
+    private final boolean storyCredits;
+    // a dictionary of its own per field marked intern, so that a field with many distinct values cannot crowd out
+    // the values of the others
+    private final Map<String, StringDictionary> dictionaries = new LinkedHashMap<>();
+    // the column telling whether a row has a story, null without story fields
+    private Column storyIdColumn;
+
+    private ExtractionPlan(final List<FieldMapping> mappings, final GcdSchema schema, final int dictionarySize) {
+        boolean credits = false;
+        boolean stories = false;
+        for (FieldMapping mapping : mappings) {
+            final FieldCodec codec = mapping.getCodec();
+            if (mapping.getField() == null) {
+                throw new IllegalArgumentException("A field mapping has no field name: " + mapping);
+            }
+            if (mapping.isIntern() && mapping.getValueType() != FieldType.STRING) {
+                throw new IllegalArgumentException("Field " + mapping.getField() + " has " + mapping.getValueType() +
+                        " values, which cannot be interned");
+            }
+            if (codec == FieldCodec.CREDITS) {
+                getCreditType(mapping.getField());
+                credits = true;
+            }
+            if (mapping.getColumn() == null && codec != FieldCodec.CREDITS && codec != FieldCodec.CREDIT_SOURCE) {
+                throw new IllegalArgumentException("Field " + mapping.getField() + " has no column");
+            }
+            if (mapping.getColumn() != null && codec == FieldCodec.CREDIT_SOURCE) {
+                throw new IllegalArgumentException("Field " + mapping.getField() + " is a " + codec + ", which reads no column");
+            }
+            final Column column = mapping.getColumn() == null ? null : addColumn(mapping.getColumn(), codec == FieldCodec.TIMESTAMP);
+            stories |= isStoryField(mapping, column);
+            if (mapping.isIntern()) {
+                dictionaries.computeIfAbsent(getDictionaryName(mapping), name -> new StringDictionary(dictionarySize));
+            }
+            fields.add(mapping);
+            fieldColumns.add(column);
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("The field mapping has no fields");
+        }
+        if (stories) {
+            storyIdColumn = addColumn("story.id", false);
+        }
+        this.storyCredits = credits && schema.isStoryCredit();
+    }
+
+    /**
+     * Compiles the fields of the mapping that the outputs write and the database has.
+     */
+    public static ExtractionPlan compile(final MappingProfile mapping, final GcdSchema schema, final List<OutputType> outputTypes) {
+        final List<FieldMapping> written = new ArrayList<>();
+        for (FieldMapping field : mapping.resolve()) {
+            if (field.getColumn() != null && !hasColumn(schema, field.getColumn())) {
+                log.info("Not extracting " + field.getField() + ", as the database has no column " + field.getColumn());
+                continue;
+            }
+            for (OutputType outputType : outputTypes) {
+                if (isWrittenTo(field, outputType)) {
+                    written.add(field);
+                    break;
+                }
+            }
+        }
+        for (OutputType outputType : outputTypes) {
+            if (outputType != OutputType.FLAMDEX) {
+                checkIssueData(written, outputType);
+            }
+        }
+        final ExtractionPlan plan = new ExtractionPlan(written, schema, mapping.getDictionarySize());
+        log.info("Extracting " + plan.fields.size() + " fields from " + plan.columns.size() + " columns of " + plan.tables);
+        return plan;
+    }
+
+    // a column whose table is not known is left for the plan to reject
+    private static boolean hasColumn(final GcdSchema schema, final String reference) {
+        final Matcher matcher = COLUMN.matcher(reference);
+        final Table table = matcher.matches() ? getTable(matcher.group(1)) : null;
+        return table == null || schema.hasColumn(table.name, matcher.group(2));
+    }
+
+    private static Table getTable(final String alias) {
+        for (Table table : Table.values()) {
+            if (table.alias.equals(alias)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    // the PARQUET and ARROW outputs write GcdIssueData fields only
+    private static boolean isWrittenTo(final FieldMapping field, final OutputType outputType) {
+        return field.isWrittenTo(outputType) && (outputType == OutputType.FLAMDEX || ISSUE_DATA.getField(field.getField()) != null);
+    }
+
+    // GcdIssueData needs its required fields, and values of their types
+    private static void checkIssueData(final List<FieldMapping> fields, final OutputType outputType) {
+        final Map<String, FieldMapping> written = new HashMap<>();
+        for (FieldMapping field : fields) {
+            if (isWrittenTo(field, outputType)) {
+                written.put(field.getField(), field);
+            }
+        }
+        for (Schema.Field field : ISSUE_DATA.getFields()) {
+            if (field.schema().getType() != Schema.Type.UNION && !field.name().equals(ISSUE_DATA_UNIX_TIME)
+                    && !written.containsKey(field.name())) {
+                throw new IllegalArgumentException("The " + outputType + " output needs field " + field.name() + ", which GcdIssueData requires");
+            }
+        }
+        for (FieldMapping field : written.values()) {
+            checkIssueDataType(field.getField(), toAvroType(field.getValueType()), field.getCodec().isMultiValued());
+            final String creatorIds = field.getField() + CREATOR_ID_SUFFIX;
+            if (field.getCodec() == FieldCodec.CREDITS && ISSUE_DATA.getField(creatorIds) != null) {
+                checkIssueDataType(creatorIds, Schema.Type.LONG, true);
+            }
+        }
+    }
+
+    private static void checkIssueDataType(final String name, final Schema.Type type, final boolean list) {
+        Schema schema = ISSUE_DATA.getField(name).schema();
+        if (schema.getType() == Schema.Type.UNION) {
+            schema = schema.getTypes().get(1);
+        }
+        final boolean matches = list
+                ? schema.getType() == Schema.Type.ARRAY && schema.getElementType().getType() == type
+                : schema.getType() == type;
+        if (!matches) {
+            throw new IllegalArgumentException("Field " + name + " is " + schema + " in GcdIssueData, not " + (list ? "a list of " : "") + type);
+        }
+    }
+
+    private static Schema.Type toAvroType(final FieldType type) {
+        switch (type) {
+            case INT:
+                return Schema.Type.INT;
+            case LONG:
+                return Schema.Type.LONG;
+            case BOOLEAN:
+                return Schema.Type.BOOLEAN;
+            default:
+                return Schema.Type.STRING;
+        }
+    }
+
+    private static GcdStoryCredit.CreditType getCreditType(final String field) {
+        for (GcdStoryCredit.CreditType type : GcdStoryCredit.CreditType.values()) {
+            if (field.equals(type.getField())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Field " + field + " is not the field of a credit type, as CREDITS fields must be");
+    }
+
+    private static boolean isStoryField(final FieldMapping mapping, final Column column) {
+        return (column != null && column.table == Table.STORY)
+                || mapping.getCodec() == FieldCodec.CREDITS || mapping.getCodec() == FieldCodec.CREDIT_SOURCE;
+    }
+
+    private Column addColumn(final String reference, final boolean timestamp) {
+        final Matcher matcher = COLUMN.matcher(reference);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Column " + reference + " is not of the form table.column");
+        }
+        final Table table = getTable(matcher.group(1));
+        if (table == null) {
+            throw new IllegalArgumentException("Column " + reference + " is not of the issue, series, publisher, indicia, brand or story table");
+        }
+        final Column column = columns.get(reference);
+        if (column != null) {
+            if (column.timestamp != timestamp) {
+                throw new IllegalArgumentException("Column " + reference + " is read both as a TIMESTAMP and not");
+            }
+            return column;
+        }
+        final Column added = new Column(table, matcher.group(2), timestamp);
+        for (Column other : columns.values()) {
+            if (other.label.equals(added.label)) {
+                throw new IllegalArgumentException("Columns " + reference + " and " + other.table.alias + "." + other.name +
+                        " would both be selected as " + added.label);
+            }
+        }
+        columns.put(reference, added);
+        tables.add(table);
+        return added;
+    }
+
+    private static String getLabel(final Table table, final String name) {
+        final String label = LABELS.get(table.alias + "." + name);
+        return label != null ? label : table.labelPrefix + name;
+    }
+
+    /**
+     * Whether rows have stories, which the query then joins.
+     */
+    public boolean hasStories() {
+        return storyIdColumn != null;
+    }
+
+    /**
+     * Whether gcd_story_credit rows are needed, for CREDITS fields of a database that has them.
+     */
+    public boolean needsStoryCredits() {
+        return storyCredits;
+    }
+
+    /**
+     * The dictionaries the values of the fields marked intern are shared through, by field, with one for the creator
+     * names of all CREDITS fields.
+     */
+    public Map<String, StringDictionary> getDictionaries() {
+        return Collections.unmodifiableMap(dictionaries);
+    }
+
+    /**
+     * The dictionary to intern the creator names of gcd_story_credit through, which interns nothing unless a
+     * CREDITS field is marked intern.
+     */
+    public StringDictionary getCreatorNames() {
+        return dictionaries.getOrDefault(CREATOR_NAMES, StringDictionary.NONE);
+    }
+
+    /**
+     * The codec of each field the output writes, by field name.
+     */
+    public Map<String, FieldCodec> getCodecs(final OutputType outputType) {
+        final Map<String, FieldCodec> codecs = new LinkedHashMap<>();
+        for (FieldMapping mapping : fields) {
+            if (isWrittenTo(mapping, outputType)) {
+                codecs.put(mapping.getField(), mapping.getCodec());
+            }
+        }
+        return codecs;
+    }
+
+    private static String getDictionaryName(final FieldMapping mapping) {
+        return mapping.getCodec() == FieldCodec.CREDITS ? CREATOR_NAMES : mapping.getField();
+    }
+
+    /**
+     * The extraction query, without a WHERE or ORDER BY clause. Under DIMENSION_CACHE it selects the issue and
+     * story columns and the keys of the cached dimensions only.
+     */
+    public String getQuery(final ExtractionStrategy strategy) {
+        final boolean narrow = strategy == ExtractionStrategy.DIMENSION_CACHE;
+        final List<String> selected = new ArrayList<>();
+        for (Column column : columns.values()) {
+            if (!narrow || column.table == Table.ISSUE || column.table == Table.STORY) {
+                selected.add(column.toSql());
+            }
+        }
+        if (narrow) {
+            selected.add("  issue.series_id AS " + DimensionCache.SERIES_KEY);
+            selected.add("  issue.indicia_publisher_id AS " + DimensionCache.INDICIA_PUBLISHER_KEY);
+            selected.add("  issue.brand_id AS " + DimensionCache.BRAND_KEY);
+        }
+        final StringBuilder query = new StringBuilder("SELECT \n").append(String.join(", \n", selected)).append(" \nFROM gcd_issue AS issue");
+        for (Table table : Table.values()) {
+            // the series and publisher are inner joins, which drop issues without them whatever is selected
+            final boolean joined = table == Table.SERIES || table == Table.PUBLISHER ? !narrow : tables.contains(table);
+            if (table.join != null && joined && (!narrow || table == Table.STORY)) {
+                query.append(" \n  ").append(table.join);
+            }
+        }
+        return query.toString();
+    }
+
+    /**
+     * The query of the series the DIMENSION_CACHE strategy caches, selecting their id and publisher id as well.
+     */
+    public String getSeriesQuery() {
+        return getDimensionQuery(Table.SERIES, "  series.publisher_id AS " + DimensionCache.PUBLISHER_KEY);
+    }
+
+    public String getPublisherQuery() {
+        return getDimensionQuery(Table.PUBLISHER);
+    }
+
+    public String getIndiciaPublisherQuery() {
+        return getDimensionQuery(Table.INDICIA);
+    }
+
+    public String getBrandQuery() {
+        return getDimensionQuery(Table.BRAND);
+    }
+
+    private String getDimensionQuery(final Table table, final String... keys) {
+        final Map<String, String> selected = new LinkedHashMap<>();
+        final Column id = new Column(table, "id", false);
+        selected.put(id.label, id.toSql());
+        for (Column column : columns.values()) {
+            if (column.table == table) {
+                selected.put(column.label, column.toSql());
+            }
+        }
+        final List<String> select = new ArrayList<>(selected.values());
+        select.addAll(Arrays.asList(keys));
+        return "SELECT \n" + String.join(", \n", select) + " \nFROM " + table.name + " AS " + table.alias;
+    }
+
+    /**
+     * Binds the fields the output writes to the columns of rows with the given labels.
+     */
+    public Binding bind(final String[] labels, final OutputType outputType, final GcdMetadata metadata, final long unixTime,
+            final RunMetrics metrics) throws SQLException {
+        final Map<String, Integer> indexes = new HashMap<>();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            indexes.put(labels[i], i + 1);
+        }
+        final List<BoundField> bound = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            final FieldMapping mapping = fields.get(i);
+            if (!isWrittenTo(mapping, outputType)) {
+                continue;
+            }
+            final Column column = fieldColumns.get(i);
+            bound.add(new BoundField(mapping, column == null ? 0 : getIndex(indexes, column.label), isStoryField(mapping, column),
+                    getCodes(mapping.getCodec(), metadata), dictionaries.getOrDefault(getDictionaryName(mapping), StringDictionary.NONE)));
+        }
+        final int storyId = storyIdColumn == null ? 0 : getIndex(indexes, storyIdColumn.label);
+        return new Binding(bound.toArray(new BoundField[0]), storyId, unixTime, metrics);
+    }
+
+    private static int getIndex(final Map<String, Integer> indexes, final String label) throws SQLException {
+        final Integer index = indexes.get(label);
+        if (index == null) {
+            throw new SQLException("Column '" + label + "' not found.");
+        }
+        return index;
+    }
+
+    private static Map<Integer, String> getCodes(final FieldCodec codec, final GcdMetadata metadata) {
+        switch (codec) {
+            case COUNTRY:
+                return metadata.getCountryCodeMap();
+            case LANGUAGE:
+                return metadata.getLanguageCodeMap();
+            case PUBLICATION_TYPE:
+                return metadata.getPublicationTypeMap();
+            case STORY_TYPE:
+                return metadata.getStoryTypeMap();
+            default:
+                return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Receives the values of a row's {@link GcdIssueData} fields by their position in the schema, in ascending order,
+     * for writers that write them without building the record.
+     */
+    public interface IssueDataConsumer {
+        void addInt(int position, int value);
+
+        void addLong(int position, long value);
+
+        void addBoolean(int position, boolean value);
+
+        void addString(int position, String value);
+
+        /**
+         * Adds the values of a multi-valued column, unsplit (see {@link ValueCodecs#forEachMultiValue}).
+         */
+        void addMultiValue(int position, String value);
+
+        void addStrings(int position, List<CharSequence> values);
+
+        void addLongs(int position, List<Long> values);
+    }
+
+    private static final class BoundField {
+        private final String name;
+        private final FieldCodec codec;
+        private final FieldType type;
+        private final boolean required;
+        private final boolean story;
+        // the index of the column in the rows, 0 for none
+        private final int column;
+        private final Map<Integer, String> codes;
+        // the field's dictionary if it is interned, or NONE
+        private final StringDictionary dictionary;
+        private final GcdStoryCredit.CreditType creditType;
+        private final String creatorIdName;
+        // the positions of the field and of its creator ids in GcdIssueData, -1 if it does not have them
+        private final int position;
+        private final int creatorIdPosition;
+        // whether GcdIssueData may leave the field out, and otherwise its default value, if it has one
+        private final boolean nullable;
+        private final Object defaultValue;
+        // whether a row may be skipped for want of the field's value, rather than leave it out or default it
+        private final boolean skipsRow;
+
+        private BoundField(final FieldMapping mapping, final int column, final boolean story, final Map<Integer, String> codes,
+                final StringDictionary dictionary) {
+            this.name = mapping.getField();
+            this.codec = mapping.getCodec();
+            this.type = mapping.getValueType();
+            this.required = mapping.isRequired();
+            this.story = story;
+            this.column = column;
+            this.codes = codes;
+            this.dictionary = dictionary;
+            this.creditType = codec == FieldCodec.CREDITS ? getCreditType(name) : null;
+            this.creatorIdName = name + CREATOR_ID_SUFFIX;
+            this.position = getPosition(name);
+            this.creatorIdPosition = getPosition(creatorIdName);
+            final Schema.Field field = ISSUE_DATA.getField(name);
+            this.nullable = field == null || field.schema().getType() == Schema.Type.UNION;
+            this.defaultValue = field != null && field.hasDefaultValue() && !nullable ? field.defaultVal() : null;
+            // dates that cannot be read are -1
+            this.skipsRow = required || (!nullable && defaultValue == null && codec != FieldCodec.DATE && codec != FieldCodec.TIMESTAMP);
+        }
+
+        private static int getPosition(final String name) {
+            final Schema.Field field = ISSUE_DATA.getField(name);
+            return field != null ? field.pos() : -1;
+        }
+    }
+
+    /**
+     * The fields of one output bound to the columns of the rows it reads, which build that output's documents.
+     * Values that cannot be read are left out and counted as field errors, or skip the row if their field is
+     * required; dates that cannot be read are -1.
+     */
+    public static final class Binding {
+        private final BoundField[] fields;
+        // the GcdIssueData fields in the order of their positions, as IssueDataConsumers take them
+        private final BoundField[] issueDataFields;
+        private final int storyIdColumn;
+        private final long unixTime;
+        private final RunMetrics metrics;
+
+        private Binding(final BoundField[] fields, final int storyIdColumn, final long unixTime, final RunMetrics metrics) {
+            this.fields = fields;
+            this.issueDataFields = Arrays.stream(fields).filter(field -> field.position >= 0)
+                    .sorted(Comparator.comparingInt(field -> field.position)).toArray(BoundField[]::new);
+            this.storyIdColumn = storyIdColumn;
+            this.unixTime = unixTime;
+            this.metrics = metrics;
+        }
+
+        private boolean hasStory(final GcdRow row) throws SQLException {
+            return storyIdColumn > 0 && row.getObject(storyIdColumn) != null;
+        }
+
+        public FlamdexDocument buildFlamdexDocument(final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            final FlamdexDocument doc = new FlamdexDocument();
+            addFlamdexTerms(row, credit, FlamdexTerms.of(doc));
+            return doc;
+        }
+
+        /**
+         * Adds the terms of a row's document, to a {@link FlamdexDocument} or to the postings of a
+         * {@link FlamdexPostingsWriter}.
+         */
+        public void addFlamdexTerms(final GcdRow row, final GcdStoryCredit credit, final FlamdexTerms terms) throws SQLException {
+            terms.addIntTerm(FLAMDEX_UNIX_TIME, unixTime);
+            final boolean story = hasStory(row);
+            for (BoundField field : fields) {
+                if (field.story && !story) {
+                    continue;
+                }
+                try {
+                    addTerms(field, row, credit, terms);
+                } catch (SQLException e) {
+                    if (field.required) {
+                        throw e;
+                    }
+                    recordFieldError(e);
+                    if (field.codec == FieldCodec.DATE || field.codec == FieldCodec.TIMESTAMP) {
+                        terms.addIntTerm(field.name, -1);
+                    }
+                }
+            }
+        }
+
+        private static void addTerms(final BoundField field, final GcdRow row, final GcdStoryCredit credit, final FlamdexTerms terms)
+                throws SQLException {
+            switch (field.codec) {
+                case NONE:
+                    if (field.type == FieldType.STRING) {
+                        final String value = field.dictionary.intern(row.getString(field.column));
+                        if (value != null) {
+                            terms.addStringTerm(field.name, value);
+                        }
+                    } else if (field.type == FieldType.LONG) {
+                        terms.addIntTerm(field.name, row.getLong(field.column));
+                    } else {
+                        terms.addIntTerm(field.name, row.getInt(field.column));
+                    }
+                    break;
+                case NUMBER:
+                    final Integer number = parseNumber(row.getString(field.column));
+                    if (number != null) {
+                        terms.addIntTerm(field.name, number);
+                    }
+                    break;
+                case DATE:
+                    terms.addIntTerm(field.name, ValueCodecs.parseDate(row.getString(field.column)));
+                    break;
+                case TIMESTAMP:
+                    terms.addIntTerm(field.name, ValueCodecs.epochSecondsToDate(row.getInt(field.column)));
+                    break;
+                case CREDITS:
+                    if (credit != null) {
+                        final List<CharSequence> names = credit.getNames(field.creditType);
+                        if (!names.isEmpty()) {
+                            terms.addStringTerms(field.name, names);
+                            terms.addIntTerms(field.creatorIdName, credit.getIds(field.creditType));
+                        }
+                        break;
+                    }
+                    // fall through to the story's own column
+                case MULTI_VALUE:
+                    final List<CharSequence> values = getMultiValue(row, field);
+                    if (values != null) {
+                        terms.addStringTerms(field.name, values);
+                    }
+                    break;
+                case CREDIT_SOURCE:
+                    terms.addStringTerm(field.name, credit != null ? CREDIT_SOURCE : STORY_SOURCE);
+                    break;
+                default:
+                    final String code = field.codes.get(row.getInt(field.column));
+                    if (code != null) {
+                        terms.addStringTerm(field.name, code);
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Builds a row's document. Values GcdIssueData requires but the row does not have are the field's default,
+         * or skip the row if it has none.
+         */
+        public GcdIssueData buildIssueData(final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            final GcdIssueData doc = new GcdIssueData();
+            doc.setUnixTime(unixTime);
+            final boolean story = hasStory(row);
+            for (BoundField field : fields) {
+                if (field.story && !story) {
+                    continue;
+                }
+                doc.put(field.position, readValue(field, row, credit));
+                if (field.codec == FieldCodec.CREDITS && credit != null && field.creatorIdPosition >= 0) {
+                    doc.put(field.creatorIdPosition, credit.getIds(field.creditType));
+                }
+            }
+            return doc;
+        }
+
+        /**
+         * Checks that a row has the values {@link #writeIssueData} cannot write without, those of required fields and
+         * of fields GcdIssueData requires that have no default, skipping the row as {@link #buildIssueData} would.
+         */
+        public void checkIssueData(final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            final boolean story = hasStory(row);
+            for (BoundField field : fields) {
+                if (field.skipsRow && !(field.story && !story)) {
+                    readValue(field, row, credit);
+                }
+            }
+        }
+
+        // the value of a field, null to leave it out
+        private Object readValue(final BoundField field, final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            Object value;
+            try {
+                value = getValue(field, row, credit);
+            } catch (SQLException e) {
+                if (field.required) {
+                    throw e;
+                }
+                recordFieldError(e);
+                value = field.codec == FieldCodec.DATE || field.codec == FieldCodec.TIMESTAMP ? -1 : null;
+            }
+            return value != null || field.nullable ? value : getDefault(field);
+        }
+
+        private static Object getDefault(final BoundField field) throws SQLException {
+            if (field.defaultValue == null) {
+                throw new SQLException("Field " + field.name + " has no value, which GcdIssueData requires");
+            }
+            return field.defaultValue;
+        }
+
+        private static Object getValue(final BoundField field, final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            switch (field.codec) {
+                case NONE:
+                    switch (field.type) {
+                        case INT:
+                            return row.getInt(field.column);
+                        case LONG:
+                            return row.getLong(field.column);
+                        case BOOLEAN:
+                            return row.getInt(field.column) == 1;
+                        default:
+                            return field.dictionary.intern(row.getString(field.column));
+                    }
+                case NUMBER:
+                    return parseNumber(row.getString(field.column));
+                case DATE:
+                    return ValueCodecs.parseDate(row.getString(field.column));
+                case TIMESTAMP:
+                    return ValueCodecs.epochSecondsToDate(row.getInt(field.column));
+                case CREDITS:
+                    if (credit != null) {
+                        return credit.getNames(field.creditType);
+                    }
+                    // fall through to the story's own column
+                case MULTI_VALUE:
+                    return getMultiValue(row, field);
+                case CREDIT_SOURCE:
+                    return credit != null ? CREDIT_SOURCE : STORY_SOURCE;
+                default:
+                    return field.codes.get(row.getInt(field.column));
+            }
+        }
+
+        /**
+         * Writes the fields of a row's document to the consumer, which gets the same values {@link #buildIssueData}
+         * would set, in the order of their positions. The row must have passed {@link #checkIssueData}, as the
+         * consumer cannot take back the values it has been given.
+         */
+        public void writeIssueData(final GcdRow row, final GcdStoryCredit credit, final IssueDataConsumer out) {
+            out.addLong(ISSUE_DATA.getField(ISSUE_DATA_UNIX_TIME).pos(), unixTime);
+            final boolean story;
+            try {
+                story = hasStory(row);
+            } catch (SQLException e) {
+                // read by checkIssueData already
+                throw new IllegalStateException(e);
+            }
+            for (BoundField field : issueDataFields) {
+                if (field.story && !story) {
+                    continue;
+                }
+                boolean written;
+                try {
+                    written = writeValue(field, row, credit, out);
+                } catch (SQLException e) {
+                    recordFieldError(e);
+                    written = field.codec == FieldCodec.DATE || field.codec == FieldCodec.TIMESTAMP;
+                    if (written) {
+                        out.addInt(field.position, -1);
+                    }
+                }
+                if (!written && !field.nullable) {
+                    // checkIssueData made sure there is one
+                    writeDefault(field, out);
+                }
+            }
+        }
+
+        // writes a field's value without boxing it, returning whether it has one
+        private static boolean writeValue(final BoundField field, final GcdRow row, final GcdStoryCredit credit,
+                final IssueDataConsumer out) throws SQLException {
+            switch (field.codec) {
+                case NONE:
+                    switch (field.type) {
+                        case INT:
+                            out.addInt(field.position, row.getInt(field.column));
+                            return true;
+                        case LONG:
+                            out.addLong(field.position, row.getLong(field.column));
+                            return true;
+                        case BOOLEAN:
+                            out.addBoolean(field.position, row.getInt(field.column) == 1);
+                            return true;
+                        default:
+                            return addString(field, row.getString(field.column), out);
+                    }
+                case NUMBER:
+                    final String number = row.getString(field.column);
+                    try {
+                        out.addInt(field.position, Integer.parseInt(number));
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                case DATE:
+                    out.addInt(field.position, ValueCodecs.parseDate(row.getString(field.column)));
+                    return true;
+                case TIMESTAMP:
+                    out.addInt(field.position, ValueCodecs.epochSecondsToDate(row.getInt(field.column)));
+                    return true;
+                case CREDITS:
+                    if (credit != null) {
+                        out.addStrings(field.position, credit.getNames(field.creditType));
+                        if (field.creatorIdPosition >= 0) {
+                            out.addLongs(field.creatorIdPosition, credit.getIds(field.creditType));
+                        }
+                        return true;
+                    }
+                    // fall through to the story's own column
+                case MULTI_VALUE:
+                    final String values = field.column == 0 ? null : row.getString(field.column);
+                    if (values == null) {
+                        return false;
+                    }
+                    out.addMultiValue(field.position, values);
+                    return true;
+                case CREDIT_SOURCE:
+                    out.addString(field.position, credit != null ? CREDIT_SOURCE : STORY_SOURCE);
+                    return true;
+                default:
+                    return addString(field, field.codes.get(row.getInt(field.column)), out);
+            }
+        }
+
+        private static boolean addString(final BoundField field, final String value, final IssueDataConsumer out) {
+            if (value == null) {
+                return false;
+            }
+            out.addString(field.position, value);
+            return true;
+        }
+
+        private static void writeDefault(final BoundField field, final IssueDataConsumer out) {
+            final Object value = field.defaultValue;
+            if (value instanceof Integer) {
+                out.addInt(field.position, (Integer) value);
+            } else if (value instanceof Long) {
+                out.addLong(field.position, (Long) value);
+            } else if (value instanceof Boolean) {
+                out.addBoolean(field.position, (Boolean) value);
+            } else {
+                out.addString(field.position, value.toString());
+            }
+        }
+
+        // some numbers are not numeric in the data set, don't warn
+        private static Integer parseNumber(final String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        // null for a NULL column, or a CREDITS field without one
+        private static List<CharSequence> getMultiValue(final GcdRow row, final BoundField field) throws SQLException {
+            if (field.column == 0) {
+                return null;
+            }
+            final String value = row.getString(field.column);
+            return value == null ? null : Arrays.asList(field.dictionary.internAll(ValueCodecs.splitMultiValue(value)));
+        }
+
+        private void recordFieldError(final SQLException e) {
+            metrics.recordFieldError(e);
+        }
+    }
+}
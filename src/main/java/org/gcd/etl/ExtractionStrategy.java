@@ -0,0 +1,11 @@
+package org.gcd.etl;
+
+/**
+ * How the denormalized issue x story rows are assembled.
+ */
+public enum ExtractionStrategy {
+    // MySQL joins every issue and story to its series, publisher, indicia publisher and brand
+    JOIN,
+    // series, publishers, indicia publishers and brands are cached once and joined to narrow issue x story rows in the JVM
+    DIMENSION_CACHE
+}
@@ -0,0 +1,45 @@
+package org.gcd.etl;
+
+/**
+ * How the column of a {@link FieldMapping} is decoded into the value of its field.
+ */
+public enum FieldCodec {
+    // the column as read for its type
+    NONE(null),
+    // the column parsed as an int, or no value if it is not a number
+    NUMBER(FieldType.INT),
+    // a YYYY-MM-DD column as the int YYYYMMDD, or -1
+    DATE(FieldType.INT),
+    // a DATETIME column, selected as UNIX_TIMESTAMP, as the int yMMdd of its date, or -1
+    TIMESTAMP(FieldType.INT),
+    // a semicolon separated column as a list of strings
+    MULTI_VALUE(FieldType.STRING),
+    // an id column as the code of that id in GCD's lookup tables
+    COUNTRY(FieldType.STRING),
+    LANGUAGE(FieldType.STRING),
+    PUBLICATION_TYPE(FieldType.STRING),
+    STORY_TYPE(FieldType.STRING),
+    // the gcd_story_credit names of the credit type the field is named for, with their creator ids in
+    // FIELD_creator_id, or the column as a MULTI_VALUE list if the story has no credits or none are loaded
+    CREDITS(FieldType.STRING),
+    // gcd_story_credit or gcd_story, whichever the CREDITS fields come from; reads no column
+    CREDIT_SOURCE(FieldType.STRING);
+
+    // the type of the values decoded, null if it is the mapping's
+    private final FieldType type;
+
+    FieldCodec(final FieldType type) {
+        this.type = type;
+    }
+
+    public FieldType getType() {
+        return type;
+    }
+
+    /**
+     * Whether the values are lists of strings.
+     */
+    public boolean isMultiValued() {
+        return this == MULTI_VALUE || this == CREDITS;
+    }
+}
@@ -0,0 +1,104 @@
+package org.gcd.etl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One field of the extracted documents: the column of the extraction query it is read from, how, and whether a
+ * row that cannot be read is skipped. Columns are named by the table of the query they belong to, one of issue,
+ * series, publisher, indicia (the indicia publisher), brand or story, e.g. issue.key_date. Fields of story
+ * columns, credits and the credit source are only set on rows that have a story. The PARQUET and ARROW outputs
+ * write the fields their GcdIssueData schema has, and the FLAMDEX output all fields, unless outputs names others.
+ */
+public final class FieldMapping {
+    private String field;
+    private String column;
+    // null for the type of the codec, or STRING
+    private FieldType type;
+    private FieldCodec codec = FieldCodec.NONE;
+    // skip the row, rather than leave the field out, if the column cannot be read
+    private boolean required = false;
+    // share the values through the run's StringDictionary, for fields whose values repeat
+    private boolean intern = false;
+    // the outputs to write the field to, or empty for all of them
+    private List<OutputType> outputs = new ArrayList<>();
+
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    public FieldType getType() {
+        return type;
+    }
+
+    public void setType(FieldType type) {
+        this.type = type;
+    }
+
+    public FieldCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(FieldCodec codec) {
+        this.codec = codec;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public void setRequired(boolean required) {
+        this.required = required;
+    }
+
+    public boolean isIntern() {
+        return intern;
+    }
+
+    public void setIntern(boolean intern) {
+        this.intern = intern;
+    }
+
+    public List<OutputType> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(List<OutputType> outputs) {
+        this.outputs = outputs;
+    }
+
+    public boolean isWrittenTo(final OutputType outputType) {
+        return outputs.isEmpty() || outputs.contains(outputType);
+    }
+
+    /**
+     * The type of the field's values, or of their elements for a list.
+     */
+    public FieldType getValueType() {
+        if (codec.getType() != null) {
+            if (type != null && type != codec.getType()) {
+                throw new IllegalArgumentException("The " + codec + " codec of field " + field + " decodes " + codec.getType() + " values, not " + type);
+            }
+            return codec.getType();
+        }
+        return type != null ? type : FieldType.STRING;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldMapping{" + "field='" + field + '\'' + ", column='" + column + '\'' + ", type=" + type + ", codec=" + codec +
+                ", required=" + required + ", intern=" + intern + ", outputs=" + outputs + '}';
+    }
+}
@@ -0,0 +1,12 @@
+package org.gcd.etl;
+
+/**
+ * How the column of a {@link FieldMapping} without a codec is read, and the type of its field.
+ */
+public enum FieldType {
+    STRING,
+    INT,
+    LONG,
+    // an int column, true when 1; a Flamdex int term of the column's value
+    BOOLEAN
+}
@@ -0,0 +1,11 @@
+package org.gcd.etl;
+
+/**
+ * How the FLAMDEX output turns rows into an index.
+ */
+public enum FlamdexIndexing {
+    // builds a FlamdexDocument per row and writes it with SimpleFlamdexDocWriter
+    DOCUMENTS,
+    // appends the terms of each row straight to per-field postings, with FlamdexPostingsWriter
+    POSTINGS
+}
@@ -0,0 +1,343 @@
+package org.gcd.etl;
+
+import com.indeed.flamdex.simple.SimpleFlamdexReader;
+import com.indeed.flamdex.simple.SimpleFlamdexWriter;
+import com.indeed.flamdex.writer.FlamdexDocWriter;
+import com.indeed.flamdex.writer.FlamdexDocument;
+import com.indeed.flamdex.writer.FlamdexWriter;
+import com.indeed.flamdex.writer.IntFieldWriter;
+import com.indeed.flamdex.writer.StringFieldWriter;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a Flamdex index from terms added document by document, without a {@link FlamdexDocument} per document.
+ * Doc ids are assigned in order, so the postings of each field are appended to primitive arrays as (term, doc)
+ * pairs, and sorted and written through a {@link SimpleFlamdexWriter} when the buffer is full or the writer is
+ * closed. Full buffers are written as segments next to the index and merged into it on close, as
+ * SimpleFlamdexDocWriter merges its segments, so the index is the one SimpleFlamdexDocWriter builds from the
+ * same documents: a term is posted once per document, and a field is created by any document that adds terms,
+ * even none, to it. Closed with a {@link SqarArchiver}, the index is written through an
+ * {@link ArchivingFlamdexWriter}, so that each field is compressed as soon as it is written.
+ */
+public final class FlamdexPostingsWriter implements FlamdexTerms, FlamdexDocWriter {
+    private static final Logger log = Logger.getLogger(FlamdexPostingsWriter.class);
+
+    private static final byte INT_FIELD = 0;
+    private static final byte INT_TERM = 1;
+    private static final byte STRING_FIELD = 2;
+    private static final byte STRING_TERM = 3;
+
+    // per int posting, and per string posting and distinct string term, besides its chars
+    private static final int INT_POSTING_BYTES = 12;
+    private static final int STRING_POSTING_BYTES = 8;
+    private static final int STRING_TERM_BYTES = 64;
+
+    private final String directory;
+    private final long bufferBytes;
+    private final Map<String, IntPostings> intFields = new HashMap<>();
+    private final Map<String, StringPostings> stringFields = new HashMap<>();
+    private final List<String> segments = new ArrayList<>();
+
+    // the terms of the current document, posted when it ends
+    private String[] stagedFields = new String[128];
+    private byte[] stagedKinds = new byte[128];
+    private long[] stagedInts = new long[128];
+    private String[] stagedStrings = new String[128];
+    private int staged = 0;
+
+    // documents in the buffer, and in the segments written before it
+    private int docs = 0;
+    private long segmentDocs = 0;
+    private long bufferedBytes = 0;
+
+    /**
+     * @param bufferBytes the postings buffered before a segment is written
+     */
+    public FlamdexPostingsWriter(final String directory, final long bufferBytes) {
+        this.directory = directory;
+        this.bufferBytes = bufferBytes;
+    }
+
+    @Override
+    public void addIntTerm(final String field, final long term) {
+        stage(INT_TERM, field, term, null);
+    }
+
+    @Override
+    public void addIntTerms(final String field, final Iterable<Long> terms) {
+        stage(INT_FIELD, field, 0, null);
+        for (Long term : terms) {
+            stage(INT_TERM, field, term, null);
+        }
+    }
+
+    @Override
+    public void addStringTerm(final String field, final CharSequence term) {
+        stage(STRING_TERM, field, 0, term.toString());
+    }
+
+    @Override
+    public void addStringTerms(final String field, final Iterable<? extends CharSequence> terms) {
+        stage(STRING_FIELD, field, 0, null);
+        for (CharSequence term : terms) {
+            stage(STRING_TERM, field, 0, term.toString());
+        }
+    }
+
+    private void stage(final byte kind, final String field, final long intTerm, final String stringTerm) {
+        if (staged == stagedKinds.length) {
+            final int length = staged * 2;
+            stagedFields = java.util.Arrays.copyOf(stagedFields, length);
+            stagedKinds = java.util.Arrays.copyOf(stagedKinds, length);
+            stagedInts = java.util.Arrays.copyOf(stagedInts, length);
+            stagedStrings = java.util.Arrays.copyOf(stagedStrings, length);
+        }
+        stagedFields[staged] = field;
+        stagedKinds[staged] = kind;
+        stagedInts[staged] = intTerm;
+        stagedStrings[staged] = stringTerm;
+        staged++;
+    }
+
+    /**
+     * Posts the terms added since the last document as the next document.
+     */
+    public void endDocument() throws IOException {
+        for (int i = 0; i < staged; i++) {
+            final String field = stagedFields[i];
+            switch (stagedKinds[i]) {
+                case INT_FIELD:
+                    intFields.computeIfAbsent(field, f -> new IntPostings());
+                    break;
+                case INT_TERM:
+                    if (intFields.computeIfAbsent(field, f -> new IntPostings()).add(stagedInts[i], docs)) {
+                        bufferedBytes += INT_POSTING_BYTES;
+                    }
+                    break;
+                case STRING_FIELD:
+                    stringFields.computeIfAbsent(field, f -> new StringPostings());
+                    break;
+                default:
+                    bufferedBytes += stringFields.computeIfAbsent(field, f -> new StringPostings()).add(stagedStrings[i], docs);
+                    break;
+            }
+            stagedStrings[i] = null;
+        }
+        staged = 0;
+        docs++;
+        if (bufferedBytes >= bufferBytes) {
+            writeSegment();
+        }
+    }
+
+    /**
+     * Drops the terms added since the last document, for a row that is skipped.
+     */
+    public void discardDocument() {
+        java.util.Arrays.fill(stagedStrings, 0, staged, null);
+        staged = 0;
+    }
+
+    @Override
+    public void addDocument(final FlamdexDocument doc) throws IOException {
+        for (Map.Entry<String, LongList> field : doc.getIntFields().entrySet()) {
+            addIntTerms(field.getKey(), field.getValue());
+        }
+        for (Map.Entry<String, List<String>> field : doc.getStringFields().entrySet()) {
+            addStringTerms(field.getKey(), field.getValue());
+        }
+        endDocument();
+    }
+
+    private void writeSegment() throws IOException {
+        final String segment = directory + ".postings/" + String.format("%04d", segments.size());
+        log.info("Writing postings segment " + segment + " of " + docs + " documents");
+        writeIndex(segment, false, null);
+        segments.add(segment);
+        segmentDocs += docs;
+        docs = 0;
+        bufferedBytes = 0;
+        intFields.clear();
+        stringFields.clear();
+    }
+
+    private void writeIndex(final String indexDirectory, final boolean writeBTrees, final SqarArchiver archiver)
+            throws IOException {
+        final FlamdexWriter writer = newWriter(indexDirectory, docs, writeBTrees, archiver);
+        for (Map.Entry<String, IntPostings> field : intFields.entrySet()) {
+            field.getValue().write(writer.getIntFieldWriter(field.getKey()));
+        }
+        for (Map.Entry<String, StringPostings> field : stringFields.entrySet()) {
+            field.getValue().write(writer.getStringFieldWriter(field.getKey()));
+        }
+        writer.close();
+    }
+
+    private static FlamdexWriter newWriter(final String indexDirectory, final long maxDocs, final boolean writeBTrees,
+            final SqarArchiver archiver) throws IOException {
+        final FlamdexWriter writer = new SimpleFlamdexWriter(indexDirectory, maxDocs, true, writeBTrees);
+        return archiver != null ? new ArchivingFlamdexWriter(writer, archiver) : writer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(null);
+    }
+
+    /**
+     * Writes the index, handing each field to the archiver, if not null, as soon as it is written. The archiver
+     * is left to be committed.
+     */
+    public void close(final SqarArchiver archiver) throws IOException {
+        if (segments.isEmpty()) {
+            writeIndex(directory, true, archiver);
+            return;
+        }
+        if (docs > 0) {
+            writeSegment();
+        }
+        log.info("Merging " + segments.size() + " postings segments into " + directory);
+        final List<SimpleFlamdexReader> readers = new ArrayList<>();
+        try {
+            for (String segment : segments) {
+                readers.add(SimpleFlamdexReader.open(segment, new SimpleFlamdexReader.Config().setWriteBTreesIfNotExisting(false)));
+            }
+            final FlamdexWriter writer = newWriter(directory, segmentDocs, true, archiver);
+            SimpleFlamdexWriter.merge(readers, writer);
+            writer.close();
+        } finally {
+            for (SimpleFlamdexReader reader : readers) {
+                reader.close();
+            }
+        }
+        for (String segment : segments) {
+            SimpleFlamdexWriter.deleteIndex(segment);
+            new File(segment).delete();
+        }
+        new File(directory + ".postings").delete();
+    }
+
+    private static final class IntPostings {
+        private final LongArrayList terms = new LongArrayList();
+        private final IntArrayList docs = new IntArrayList();
+
+        // false if the document already has the term
+        private boolean add(final long term, final int doc) {
+            for (int i = docs.size() - 1; i >= 0 && docs.getInt(i) == doc; i--) {
+                if (terms.getLong(i) == term) {
+                    return false;
+                }
+            }
+            terms.add(term);
+            docs.add(doc);
+            return true;
+        }
+
+        private void write(final IntFieldWriter writer) throws IOException {
+            final long[] t = terms.elements();
+            final int[] d = docs.elements();
+            Arrays.quickSort(0, terms.size(), new AbstractIntComparator() {
+                @Override
+                public int compare(final int a, final int b) {
+                    final int byTerm = Long.compare(t[a], t[b]);
+                    return byTerm != 0 ? byTerm : Integer.compare(d[a], d[b]);
+                }
+            }, (a, b) -> {
+                final long term = t[a];
+                t[a] = t[b];
+                t[b] = term;
+                final int doc = d[a];
+                d[a] = d[b];
+                d[b] = doc;
+            });
+            for (int i = 0; i < terms.size(); i++) {
+                if (i == 0 || t[i] != t[i - 1]) {
+                    writer.nextTerm(t[i]);
+                }
+                writer.nextDoc(d[i]);
+            }
+            writer.close();
+        }
+    }
+
+    private static final class StringPostings {
+        private final Object2IntOpenHashMap<String> ordinals = new Object2IntOpenHashMap<>();
+        private final ObjectArrayList<String> terms = new ObjectArrayList<>();
+        private final IntArrayList ords = new IntArrayList();
+        private final IntArrayList docs = new IntArrayList();
+
+        private StringPostings() {
+            ordinals.defaultReturnValue(-1);
+        }
+
+        // returns the bytes added
+        private int add(final String term, final int doc) {
+            int bytes = 0;
+            int ord = ordinals.getInt(term);
+            if (ord < 0) {
+                ord = terms.size();
+                terms.add(term);
+                ordinals.put(term, ord);
+                bytes += STRING_TERM_BYTES + 2 * term.length();
+            }
+            for (int i = docs.size() - 1; i >= 0 && docs.getInt(i) == doc; i--) {
+                if (ords.getInt(i) == ord) {
+                    return bytes;
+                }
+            }
+            ords.add(ord);
+            docs.add(doc);
+            return bytes + STRING_POSTING_BYTES;
+        }
+
+        private void write(final StringFieldWriter writer) throws IOException {
+            // the terms in the order of a TreeMap, as MemoryFlamdex keeps them, and the rank of each ordinal
+            final String[] sorted = terms.toArray(new String[terms.size()]);
+            java.util.Arrays.sort(sorted);
+            final int[] ranks = new int[sorted.length];
+            for (int rank = 0; rank < sorted.length; rank++) {
+                ranks[ordinals.getInt(sorted[rank])] = rank;
+            }
+            final int[] o = ords.elements();
+            final int[] d = docs.elements();
+            for (int i = 0; i < ords.size(); i++) {
+                o[i] = ranks[o[i]];
+            }
+            Arrays.quickSort(0, ords.size(), new AbstractIntComparator() {
+                @Override
+                public int compare(final int a, final int b) {
+                    final int byTerm = Integer.compare(o[a], o[b]);
+                    return byTerm != 0 ? byTerm : Integer.compare(d[a], d[b]);
+                }
+            }, (a, b) -> {
+                final int rank = o[a];
+                o[a] = o[b];
+                o[b] = rank;
+                final int doc = d[a];
+                d[a] = d[b];
+                d[b] = doc;
+            });
+            for (int i = 0; i < ords.size(); i++) {
+                if (i == 0 || o[i] != o[i - 1]) {
+                    writer.nextTerm(sorted[o[i]]);
+                }
+                writer.nextDoc(d[i]);
+            }
+            writer.close();
+        }
+    }
+}
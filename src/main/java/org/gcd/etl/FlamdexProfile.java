@@ -0,0 +1,182 @@
+package org.gcd.etl;
+
+import com.indeed.imhotep.archive.compression.SquallArchiveCompressor;
+
+/**
+ * Settings of the FLAMDEX output: whether rows are indexed as documents or as postings, how much each
+ * writer buffers in memory before flushing a segment, how many sub-shards each shard is built from
+ * concurrently, and how shards are archived.
+ */
+public final class FlamdexProfile {
+    private FlamdexIndexing indexing = FlamdexIndexing.DOCUMENTS;
+    // used as is when there is no memory budget
+    private int docBufferSize = 2000;
+    // heap to spend on buffers across all concurrent writers, 0 for memoryBudgetFraction of the maximum heap
+    private int memoryBudgetMb = 0;
+    // 0 for no memory budget unless memoryBudgetMb sets one
+    private double memoryBudgetFraction = 0.25;
+    private int estimatedBytesPerDoc = 4096;
+    private int mergeFactor = 1000;
+    // postings buffered by each POSTINGS writer when there is no memory budget
+    private int postingsBufferMb = 256;
+    private int subShards = 1;
+    // merge the sub-shards into one shard rather than emitting each as its own shard
+    private boolean mergeSubShards = true;
+    private SquallArchiveCompressor archiveCompressor = SquallArchiveCompressor.GZIP;
+    // files compressed concurrently into each .sqar
+    private int archiveThreads = 4;
+    // read every archived file back and check its checksum
+    private boolean verifyArchive = true;
+
+    public FlamdexIndexing getIndexing() {
+        return indexing;
+    }
+
+    public void setIndexing(FlamdexIndexing indexing) {
+        this.indexing = indexing;
+    }
+
+    public int getDocBufferSize() {
+        return docBufferSize;
+    }
+
+    public void setDocBufferSize(int docBufferSize) {
+        this.docBufferSize = docBufferSize;
+    }
+
+    public int getMemoryBudgetMb() {
+        return memoryBudgetMb;
+    }
+
+    public void setMemoryBudgetMb(int memoryBudgetMb) {
+        this.memoryBudgetMb = memoryBudgetMb;
+    }
+
+    public double getMemoryBudgetFraction() {
+        return memoryBudgetFraction;
+    }
+
+    public void setMemoryBudgetFraction(double memoryBudgetFraction) {
+        this.memoryBudgetFraction = memoryBudgetFraction;
+    }
+
+    public int getEstimatedBytesPerDoc() {
+        return estimatedBytesPerDoc;
+    }
+
+    public void setEstimatedBytesPerDoc(int estimatedBytesPerDoc) {
+        this.estimatedBytesPerDoc = estimatedBytesPerDoc;
+    }
+
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    public void setMergeFactor(int mergeFactor) {
+        this.mergeFactor = mergeFactor;
+    }
+
+    public int getPostingsBufferMb() {
+        return postingsBufferMb;
+    }
+
+    public void setPostingsBufferMb(int postingsBufferMb) {
+        this.postingsBufferMb = postingsBufferMb;
+    }
+
+    public int getSubShards() {
+        return subShards;
+    }
+
+    public void setSubShards(int subShards) {
+        this.subShards = subShards;
+    }
+
+    public boolean isMergeSubShards() {
+        return mergeSubShards;
+    }
+
+    public void setMergeSubShards(boolean mergeSubShards) {
+        this.mergeSubShards = mergeSubShards;
+    }
+
+    public SquallArchiveCompressor getArchiveCompressor() {
+        return archiveCompressor;
+    }
+
+    public void setArchiveCompressor(SquallArchiveCompressor archiveCompressor) {
+        this.archiveCompressor = archiveCompressor;
+    }
+
+    public int getArchiveThreads() {
+        return archiveThreads;
+    }
+
+    public void setArchiveThreads(int archiveThreads) {
+        this.archiveThreads = archiveThreads;
+    }
+
+    public boolean isVerifyArchive() {
+        return verifyArchive;
+    }
+
+    public void setVerifyArchive(boolean verifyArchive) {
+        this.verifyArchive = verifyArchive;
+    }
+
+    /**
+     * The heap to spend on buffers across all concurrent writers: memoryBudgetMb if set, otherwise
+     * memoryBudgetFraction of the maximum heap, or 0 for none if neither is set or the heap is unbounded.
+     */
+    public long getMemoryBudgetBytes() {
+        if (memoryBudgetMb > 0) {
+            return memoryBudgetMb * 1024L * 1024L;
+        }
+        final long maxMemory = Runtime.getRuntime().maxMemory();
+        if (memoryBudgetFraction <= 0 || maxMemory == Long.MAX_VALUE) {
+            return 0;
+        }
+        return (long) (maxMemory * Math.min(1.0, memoryBudgetFraction));
+    }
+
+    /**
+     * The doc buffer size of each of {@code writers} concurrent writers, from the memory budget if there is one.
+     */
+    public int getDocBufferSize(final int writers) {
+        final long budget = getMemoryBudgetBytes();
+        if (budget <= 0) {
+            return docBufferSize;
+        }
+        final long bytesPerWriter = budget / Math.max(1, writers);
+        return (int) Math.max(100, Math.min(Integer.MAX_VALUE, bytesPerWriter / Math.max(1, estimatedBytesPerDoc)));
+    }
+
+    /**
+     * The postings buffer of each of {@code writers} concurrent POSTINGS writers, from the memory budget if there
+     * is one.
+     */
+    public long getPostingsBufferBytes(final int writers) {
+        final long budget = getMemoryBudgetBytes();
+        if (budget <= 0) {
+            return postingsBufferMb * 1024L * 1024L;
+        }
+        return Math.max(1024L * 1024L, budget / Math.max(1, writers));
+    }
+
+    @Override
+    public String toString() {
+        return "FlamdexProfile{" +
+                "indexing=" + indexing +
+                ", docBufferSize=" + docBufferSize +
+                ", memoryBudgetMb=" + memoryBudgetMb +
+                ", memoryBudgetFraction=" + memoryBudgetFraction +
+                ", estimatedBytesPerDoc=" + estimatedBytesPerDoc +
+                ", mergeFactor=" + mergeFactor +
+                ", postingsBufferMb=" + postingsBufferMb +
+                ", subShards=" + subShards +
+                ", mergeSubShards=" + mergeSubShards +
+                ", archiveCompressor=" + archiveCompressor +
+                ", archiveThreads=" + archiveThreads +
+                ", verifyArchive=" + verifyArchive + '}';
+    }
+}
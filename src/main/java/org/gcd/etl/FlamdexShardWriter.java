@@ -0,0 +1,367 @@
+package org.gcd.etl;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.flamdex.simple.SimpleFlamdexDocWriter;
+import com.indeed.flamdex.simple.SimpleFlamdexReader;
+import com.indeed.flamdex.simple.SimpleFlamdexWriter;
+import com.indeed.flamdex.writer.FlamdexDocWriter;
+import com.indeed.flamdex.writer.FlamdexDocument;
+import com.indeed.flamdex.writer.FlamdexWriter;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a Flamdex shard from several {@link SimpleFlamdexDocWriter}s at once. Documents are dealt to the
+ * sub-shard writers in batches, each writer buffering and flushing segments on its own thread, and on close
+ * the sub-shards either are merged into the shard directory or are left as shards of their own. With one
+ * sub-shard this is a plain SimpleFlamdexDocWriter, and with POSTINGS indexing a {@link FlamdexPostingsWriter},
+ * which builds the shard without sub-shards. Every shard is archived to {@code <shard>.sqar}; when merging
+ * sub-shards and with POSTINGS indexing, each field is compressed as soon as it has been written, while a
+ * SimpleFlamdexDocWriter merges its segments into its shard itself, which is archived once it is closed.
+ * Shards are built in a _temporary directory next to the output directory and renamed into place once
+ * archived, so a failed run never leaves a partial shard behind.
+ */
+public class FlamdexShardWriter implements FlamdexDocWriter {
+    private static final Logger log = Logger.getLogger(FlamdexShardWriter.class);
+
+    private static final int BATCH_SIZE = 1000;
+    // batches queued per sub-shard writer before addDocument waits
+    private static final int MAX_PENDING_BATCHES = 2;
+
+    private final String outputDirectory;
+    // where the shard is built before it is renamed to the output directory
+    private final String buildDirectory;
+    private final FlamdexProfile profile;
+    private final boolean merge;
+    private final List<String> subShardDirectories;
+    private final List<SimpleFlamdexDocWriter> writers;
+    private final List<ExecutorService> executors;
+    private final List<Deque<Future<?>>> pending;
+    private final FlamdexPostingsWriter postings;
+
+    private List<FlamdexDocument> batch = new ArrayList<>(BATCH_SIZE);
+    private int next = 0;
+
+    /**
+     * @param concurrentShards the number of shards being built at the same time, which share the memory budget
+     */
+    public FlamdexShardWriter(final String outputDirectory, final FlamdexProfile profile, final int concurrentShards)
+            throws IOException {
+        this.outputDirectory = outputDirectory;
+        final Path output = Paths.get(outputDirectory);
+        this.buildDirectory = output.resolveSibling("_temporary").resolve(output.getFileName()).toString();
+        // whatever a failed run left behind
+        deleteRecursively(buildDirectory);
+        deleteRecursively(buildDirectory + ".sqar");
+        deleteRecursively(buildDirectory + ".postings");
+        this.profile = profile;
+        final int subShards = Math.max(1, profile.getSubShards());
+        this.merge = profile.isMergeSubShards() && subShards > 1;
+        if (profile.getIndexing() == FlamdexIndexing.POSTINGS) {
+            if (subShards > 1) {
+                throw new IllegalArgumentException("POSTINGS indexing builds each shard without sub-shards");
+            }
+            final long bufferBytes = profile.getPostingsBufferBytes(Math.max(1, concurrentShards));
+            log.info("Building " + outputDirectory + " from postings with a buffer of " + bufferBytes / (1024 * 1024) + " MB");
+            this.postings = new FlamdexPostingsWriter(buildDirectory, bufferBytes);
+            this.writers = ImmutableList.of();
+            this.executors = ImmutableList.of();
+            this.pending = ImmutableList.of();
+            this.subShardDirectories = ImmutableList.of(buildDirectory);
+            return;
+        }
+        this.postings = null;
+        final int docBufferSize = profile.getDocBufferSize(subShards * Math.max(1, concurrentShards));
+        log.info("Building " + outputDirectory + " from " + subShards + " sub-shards with a doc buffer of " + docBufferSize);
+
+        final SimpleFlamdexDocWriter.Config config = new SimpleFlamdexDocWriter.Config();
+        config.setDocBufferSize(docBufferSize);
+        config.setMergeFactor(profile.getMergeFactor());
+        final ImmutableList.Builder<String> directories = ImmutableList.builder();
+        this.writers = new ArrayList<>(subShards);
+        this.executors = new ArrayList<>(subShards);
+        this.pending = new ArrayList<>(subShards);
+        for (int i = 0; i < subShards; i++) {
+            final String directory;
+            if (subShards == 1) {
+                directory = buildDirectory;
+            } else if (merge) {
+                directory = buildDirectory + ".sub" + i;
+            } else {
+                directory = buildDirectory + "_" + String.format("%02d", i);
+            }
+            if (subShards > 1) {
+                deleteRecursively(directory);
+                deleteRecursively(directory + ".sqar");
+            }
+            directories.add(directory);
+            writers.add(new SimpleFlamdexDocWriter(directory, config));
+            if (subShards > 1) {
+                executors.add(Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("flamdex-" + i + "-%d").setDaemon(true).build()));
+                pending.add(new ArrayDeque<>());
+            }
+        }
+        this.subShardDirectories = directories.build();
+    }
+
+    /**
+     * The shard directories written and archived on close: the output directory, or one per sub-shard when they
+     * are not merged.
+     */
+    public List<String> getShardDirectories() {
+        final ImmutableList.Builder<String> directories = ImmutableList.builder();
+        for (String directory : getBuiltDirectories()) {
+            directories.add(outputDirectory + directory.substring(buildDirectory.length()));
+        }
+        return directories.build();
+    }
+
+    /**
+     * The shard directories a writer with the profile writes for the output directory, as {@link #getShardDirectories()}
+     * lists them once it is built.
+     */
+    public static List<String> getShardDirectories(final String outputDirectory, final FlamdexProfile profile) {
+        final int subShards = Math.max(1, profile.getSubShards());
+        if (subShards == 1 || profile.isMergeSubShards() || profile.getIndexing() == FlamdexIndexing.POSTINGS) {
+            return ImmutableList.of(outputDirectory);
+        }
+        final ImmutableList.Builder<String> directories = ImmutableList.builder();
+        for (int i = 0; i < subShards; i++) {
+            directories.add(outputDirectory + "_" + String.format("%02d", i));
+        }
+        return directories.build();
+    }
+
+    /**
+     * Merges shards written earlier into one shard, their documents in the order of the list, which is archived
+     * and renamed into place as a writer's shards are. The shards merged are left for {@link #deleteShards}.
+     */
+    public static void mergeShards(final List<String> shards, final String outputDirectory, final FlamdexProfile profile)
+            throws IOException {
+        final Path output = Paths.get(outputDirectory);
+        final String buildDirectory = output.resolveSibling("_temporary").resolve(output.getFileName()).toString();
+        deleteRecursively(buildDirectory);
+        deleteRecursively(buildDirectory + ".sqar");
+        log.info("Merging " + shards.size() + " shards into " + outputDirectory);
+        merge(shards, buildDirectory, profile);
+        move(buildDirectory, outputDirectory);
+        move(buildDirectory + ".sqar", outputDirectory + ".sqar");
+        new File(buildDirectory).getParentFile().delete();
+    }
+
+    /**
+     * Deletes shards and their archives, such as those merged by {@link #mergeShards}.
+     */
+    public static void deleteShards(final List<String> shards) throws IOException {
+        for (String shard : shards) {
+            deleteRecursively(shard);
+            deleteRecursively(shard + ".sqar");
+        }
+    }
+
+    /**
+     * The writer whose terms POSTINGS indexing adds to directly, or null.
+     */
+    public FlamdexPostingsWriter getPostingsWriter() {
+        return postings;
+    }
+
+    private List<String> getBuiltDirectories() {
+        return merge || subShardDirectories.size() == 1 ? ImmutableList.of(buildDirectory) : subShardDirectories;
+    }
+
+    @Override
+    public void addDocument(final FlamdexDocument doc) throws IOException {
+        if (postings != null) {
+            postings.addDocument(doc);
+            return;
+        }
+        if (executors.isEmpty()) {
+            writers.get(0).addDocument(doc);
+            return;
+        }
+        batch.add(doc);
+        if (batch.size() == BATCH_SIZE) {
+            submitBatch();
+        }
+    }
+
+    private void submitBatch() throws IOException {
+        final int writer = next;
+        next = (next + 1) % writers.size();
+        final Deque<Future<?>> queue = pending.get(writer);
+        while (queue.size() >= MAX_PENDING_BATCHES) {
+            await(queue.removeFirst());
+        }
+        final List<FlamdexDocument> docs = batch;
+        final SimpleFlamdexDocWriter target = writers.get(writer);
+        queue.addLast(executors.get(writer).submit(() -> {
+            for (FlamdexDocument doc : docs) {
+                target.addDocument(doc);
+            }
+            return null;
+        }));
+        batch = new ArrayList<>(BATCH_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executors.isEmpty()) {
+            if (postings != null) {
+                try (SqarArchiver archiver = newArchiver(buildDirectory)) {
+                    postings.close(archiver);
+                    archiver.commit();
+                }
+            } else {
+                writers.get(0).close();
+                archive(buildDirectory);
+            }
+            commit();
+            return;
+        }
+        try {
+            if (!batch.isEmpty()) {
+                submitBatch();
+            }
+            // each writer merges its own segments on close, so the sub-shards are closed concurrently
+            final List<Future<?>> closed = new ArrayList<>();
+            for (int i = 0; i < writers.size(); i++) {
+                final SimpleFlamdexDocWriter writer = writers.get(i);
+                final String directory = subShardDirectories.get(i);
+                closed.add(executors.get(i).submit(() -> {
+                    writer.close();
+                    if (!merge) {
+                        archive(directory);
+                    }
+                    return null;
+                }));
+            }
+            for (Deque<Future<?>> queue : pending) {
+                while (!queue.isEmpty()) {
+                    await(queue.removeFirst());
+                }
+            }
+            for (Future<?> future : closed) {
+                await(future);
+            }
+        } finally {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+        if (merge) {
+            mergeSubShards();
+        }
+        commit();
+    }
+
+    // renames the archived shards into place, the archive last
+    private void commit() throws IOException {
+        final List<String> targets = getShardDirectories();
+        final List<String> built = getBuiltDirectories();
+        for (int i = 0; i < built.size(); i++) {
+            move(built.get(i), targets.get(i));
+            move(built.get(i) + ".sqar", targets.get(i) + ".sqar");
+        }
+        // only once the last concurrent shard is done
+        new File(buildDirectory).getParentFile().delete();
+    }
+
+    private static void move(final String source, final String target) throws IOException {
+        deleteRecursively(target);
+        Files.move(Paths.get(source), Paths.get(target), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteRecursively(final String directory) throws IOException {
+        final Path path = Paths.get(directory);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            final List<Path> all = new ArrayList<>();
+            paths.forEach(all::add);
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Files.delete(all.get(i));
+            }
+        }
+    }
+
+    private void mergeSubShards() throws IOException {
+        log.info("Merging " + subShardDirectories.size() + " sub-shards into " + buildDirectory);
+        merge(subShardDirectories, buildDirectory, profile);
+        for (String directory : subShardDirectories) {
+            SimpleFlamdexWriter.deleteIndex(directory);
+            new File(directory).delete();
+        }
+    }
+
+    // merges the indexes into the directory, compressing each field into its archive as soon as it is written
+    private static void merge(final List<String> directories, final String target, final FlamdexProfile profile)
+            throws IOException {
+        final List<SimpleFlamdexReader> readers = new ArrayList<>();
+        try {
+            long numDocs = 0;
+            for (String directory : directories) {
+                final SimpleFlamdexReader reader =
+                        SimpleFlamdexReader.open(directory, new SimpleFlamdexReader.Config().setWriteBTreesIfNotExisting(false));
+                readers.add(reader);
+                numDocs += reader.getNumDocs();
+            }
+            try (SqarArchiver archiver = newArchiver(target, profile)) {
+                final FlamdexWriter writer = new ArchivingFlamdexWriter(new SimpleFlamdexWriter(target, numDocs), archiver);
+                SimpleFlamdexWriter.merge(readers, writer);
+                writer.close();
+                archiver.commit();
+            }
+        } finally {
+            for (SimpleFlamdexReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private SqarArchiver newArchiver(final String directory) throws IOException {
+        return newArchiver(directory, profile);
+    }
+
+    private static SqarArchiver newArchiver(final String directory, final FlamdexProfile profile) throws IOException {
+        return new SqarArchiver(directory, directory + ".sqar", profile.getArchiveCompressor(), profile.getArchiveThreads(),
+                profile.isVerifyArchive());
+    }
+
+    private void archive(final String directory) throws IOException {
+        try (SqarArchiver archiver = newArchiver(directory)) {
+            archiver.commit();
+        }
+    }
+
+    private static void await(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted writing flamdex sub-shards", e);
+        }
+    }
+}
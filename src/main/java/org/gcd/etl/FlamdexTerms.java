@@ -0,0 +1,44 @@
+package org.gcd.etl;
+
+import com.indeed.flamdex.writer.FlamdexDocument;
+
+/**
+ * Receives the terms of one Flamdex document, either into a {@link FlamdexDocument} or straight into the
+ * postings of a {@link FlamdexPostingsWriter}. Adding terms, even none, to a field creates the field.
+ */
+public interface FlamdexTerms {
+    void addIntTerm(String field, long term);
+
+    void addIntTerms(String field, Iterable<Long> terms);
+
+    void addStringTerm(String field, CharSequence term);
+
+    void addStringTerms(String field, Iterable<? extends CharSequence> terms);
+
+    /**
+     * Adds the terms to a document.
+     */
+    static FlamdexTerms of(final FlamdexDocument doc) {
+        return new FlamdexTerms() {
+            @Override
+            public void addIntTerm(final String field, final long term) {
+                doc.addIntTerm(field, term);
+            }
+
+            @Override
+            public void addIntTerms(final String field, final Iterable<Long> terms) {
+                doc.addIntTerms(field, terms);
+            }
+
+            @Override
+            public void addStringTerm(final String field, final CharSequence term) {
+                doc.addStringTerm(field, term);
+            }
+
+            @Override
+            public void addStringTerms(final String field, final Iterable<? extends CharSequence> terms) {
+                doc.addStringTerms(field, terms);
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package org.gcd.etl;
+
+/**
+ * Settings for checkpointed runs, which extract the issues in chunks of ids that are committed one at a time,
+ * so that a failed run can be continued with --resume.
+ */
+public final class GcdCheckpoint {
+    private String file;
+    // issue ids per committed chunk
+    private long chunkSize = 100000;
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String toString() {
+        return "GcdCheckpoint{" + "file='" + file + '\'' + ", chunkSize=" + chunkSize + '}';
+    }
+}
@@ -2,6 +2,13 @@ package org.gcd.etl;
 
 public final class GcdConfiguration {
     private Gcdatabase gcdatabase;
+    private GcdIncremental incremental;
+    private GcdCheckpoint checkpoint;
+    private ParquetProfile parquet = new ParquetProfile();
+    private FlamdexProfile flamdex = new FlamdexProfile();
+    private ArrowProfile arrow = new ArrowProfile();
+    private MetricsProfile metrics = new MetricsProfile();
+    private MappingProfile mapping = new MappingProfile();
 
     public Gcdatabase getGcdatabase() {
         return gcdatabase;
@@ -11,8 +18,64 @@ public final class GcdConfiguration {
         this.gcdatabase = gcdatabase;
     }
 
+    public GcdIncremental getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(GcdIncremental incremental) {
+        this.incremental = incremental;
+    }
+
+    public GcdCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(GcdCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public ParquetProfile getParquet() {
+        return parquet;
+    }
+
+    public void setParquet(ParquetProfile parquet) {
+        this.parquet = parquet;
+    }
+
+    public FlamdexProfile getFlamdex() {
+        return flamdex;
+    }
+
+    public void setFlamdex(FlamdexProfile flamdex) {
+        this.flamdex = flamdex;
+    }
+
+    public ArrowProfile getArrow() {
+        return arrow;
+    }
+
+    public void setArrow(ArrowProfile arrow) {
+        this.arrow = arrow;
+    }
+
+    public MetricsProfile getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsProfile metrics) {
+        this.metrics = metrics;
+    }
+
+    public MappingProfile getMapping() {
+        return mapping;
+    }
+
+    public void setMapping(MappingProfile mapping) {
+        this.mapping = mapping;
+    }
+
     @Override
     public String toString() {
-        return "GcdConfiguration{" + "gcdatabase=" + gcdatabase + '}';
+        return "GcdConfiguration{" + "gcdatabase=" + gcdatabase + ", incremental=" + incremental + ", checkpoint=" + checkpoint + ", parquet=" + parquet + ", flamdex=" + flamdex + ", arrow=" + arrow + ", metrics=" + metrics + ", mapping=" + mapping + '}';
     }
 }
@@ -0,0 +1,32 @@
+package org.gcd.etl;
+
+/**
+ * Settings for incremental runs, which extract only the issues changed since the previous successful run.
+ */
+public final class GcdIncremental {
+    private String watermarkFile;
+    // seconds subtracted from the stored watermark, for rows committed with an earlier modified timestamp
+    // after the previous run read NOW(), which has whole-second precision
+    private int safetyLagSeconds = 300;
+
+    public String getWatermarkFile() {
+        return watermarkFile;
+    }
+
+    public void setWatermarkFile(String watermarkFile) {
+        this.watermarkFile = watermarkFile;
+    }
+
+    public int getSafetyLagSeconds() {
+        return safetyLagSeconds;
+    }
+
+    public void setSafetyLagSeconds(int safetyLagSeconds) {
+        this.safetyLagSeconds = safetyLagSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "GcdIncremental{" + "watermarkFile='" + watermarkFile + '\'' + ", safetyLagSeconds=" + safetyLagSeconds + '}';
+    }
+}
@@ -18,7 +18,7 @@ public class GcdMetadata {
     private final Map<Integer, String> publicationTypes;
     private final Map<Integer, String> storyTypes;
 
-    private GcdMetadata(final Map<Integer, String> countries,
+    GcdMetadata(final Map<Integer, String> countries,
             final Map<Integer, String> languages,
             final Map<Integer, String> publicationTypes,
             final Map<Integer, String> storyTypes) {
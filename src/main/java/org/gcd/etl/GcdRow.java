@@ -0,0 +1,71 @@
+package org.gcd.etl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * One row of the GCD extraction query, accessed by column label, or by column index as JDBC numbers the columns
+ * of its result set from 1, with {@link java.sql.ResultSet} semantics: SQL NULL reads as null from
+ * {@link #getString} and {@link #getObject} and as 0 from the numeric getters.
+ */
+public interface GcdRow {
+
+    String getString(String column) throws SQLException;
+
+    int getInt(String column) throws SQLException;
+
+    long getLong(String column) throws SQLException;
+
+    Object getObject(String column) throws SQLException;
+
+    String getString(int column) throws SQLException;
+
+    int getInt(int column) throws SQLException;
+
+    long getLong(int column) throws SQLException;
+
+    Object getObject(int column) throws SQLException;
+
+    /**
+     * Converts a value read with {@link java.sql.ResultSet#getObject} the way getString would have.
+     */
+    static String toString(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Converts a value read with {@link java.sql.ResultSet#getObject} the way getLong would have.
+     */
+    static long toLong(final Object value) throws SQLException {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        try {
+            return Long.parseLong(toString(value).trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Value '" + value + "' can not be represented as a number", e);
+        }
+    }
+
+    /**
+     * Converts a value read with {@link java.sql.ResultSet#getObject} the way getInt would have.
+     */
+    static int toInt(final Object value) throws SQLException {
+        return (int) toLong(value);
+    }
+}
@@ -2,7 +2,17 @@ package org.gcd.etl;/**
  * @author jack
  */
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
 /**
+ * The optional parts of the GCD schema, which older dumps lack. They are detected by {@link #introspect} at
+ * startup; the flags, which default to true, can also turn them off.
+ *
  * @author jack@indeed.com (Jack Humphrey)
  */
 public final class GcdSchema {
@@ -11,6 +21,8 @@ public final class GcdSchema {
     private boolean seriesIsSingleton = true;
     private boolean storyFirstLine = true;
     private boolean storyCredit = true;
+    // the columns of the gcd_ tables, as table.column in lower case, or null if not introspected
+    private Set<String> columns;
 
     public boolean isPublicationType() {
         return publicationType;
@@ -52,8 +64,54 @@ public final class GcdSchema {
         this.storyCredit = storyCredit;
     }
 
+    /**
+     * Reads the columns of the gcd_ tables from the database's metadata and turns off the flags of the parts it
+     * does not have, so that the extraction selects only columns that exist rather than failing on every row.
+     */
+    public void introspect(final Connection conn) throws SQLException {
+        final Set<String> found = new HashSet<>();
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, "gcd_%", "%")) {
+            while (rs.next()) {
+                found.add((rs.getString("TABLE_NAME") + "." + rs.getString("COLUMN_NAME")).toLowerCase(Locale.ROOT));
+            }
+        }
+        if (found.isEmpty()) {
+            throw new SQLException("No gcd_ tables in " + conn.getCatalog());
+        }
+        columns = found;
+        publicationType &= hasColumn("gcd_series", "publication_type_id") && hasColumn("gcd_series_publication_type", "id");
+        volumeNotPrinted &= hasColumn("gcd_issue", "volume_not_printed");
+        seriesIsSingleton &= hasColumn("gcd_series", "is_singleton");
+        storyFirstLine &= hasColumn("gcd_story", "first_line");
+        storyCredit &= hasColumn("gcd_story_credit", "story_id") && hasColumn("gcd_creator_name_detail", "creator_id")
+                && hasColumn("gcd_creator", "gcd_official_name");
+    }
+
+    /**
+     * Whether the database has a column of a gcd_ table, as far as it was introspected and the flags allow.
+     */
+    public boolean hasColumn(final String table, final String column) {
+        if (columns != null && !columns.contains((table + "." + column).toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        switch (table + "." + column) {
+            case "gcd_series.publication_type_id":
+                return publicationType;
+            case "gcd_issue.volume_not_printed":
+                return volumeNotPrinted;
+            case "gcd_series.is_singleton":
+                return seriesIsSingleton;
+            case "gcd_story.first_line":
+                return storyFirstLine;
+            default:
+                return true;
+        }
+    }
+
     @java.lang.Override
     public java.lang.String toString() {
-        return "GcdSchema{...}";
+        return "GcdSchema{" + "publicationType=" + publicationType + ", volumeNotPrinted=" + volumeNotPrinted +
+                ", seriesIsSingleton=" + seriesIsSingleton + ", storyFirstLine=" + storyFirstLine + ", storyCredit=" + storyCredit +
+                (columns != null ? ", columns=" + columns.size() : "") + '}';
     }
 }
@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -19,7 +20,7 @@ public class GcdStoryCredit {
 
     private final long storyId;
 
-    // TODO: refactor to builder pattern and lower-overhead data types as data size grows
+    // one story's credits; GcdStoryCreditStore holds those of every story in primitive arrays
     private final Map<CreditType, List<CharSequence>> creatorNamesByType;
     private final Map<CreditType, List<Long>> creatorIdsByType;
 
@@ -76,13 +77,13 @@ public class GcdStoryCredit {
             CreditType.SCRIPT_PENCILS_INKS_COLORS_LETTERS
     };
 
-    private GcdStoryCredit(final long storyId) {
+    GcdStoryCredit(final long storyId) {
         this.storyId = storyId;
         this.creatorNamesByType = new HashMap<>();
         this.creatorIdsByType = new HashMap<>();
     }
 
-    private void addCredit(final int creditTypeId, final long creatorId, final String creatorName) {
+    void addCredit(final int creditTypeId, final long creatorId, final String creatorName) {
         final CreditType type = CREDIT_TYPES[creditTypeId];
         if (type.parts.length > 0) {
             for (CreditType part : type.parts) {
@@ -110,15 +111,77 @@ public class GcdStoryCredit {
         return creatorIdsByType.getOrDefault(type, ImmutableList.of());
     }
 
+    /**
+     * Looks up the credits of a story, returning null if the story has no gcd_story_credit rows.
+     */
+    public interface Lookup extends AutoCloseable {
+        /**
+         * No credits, without reading the story ids of the rows, which may have none.
+         */
+        Lookup NONE = new Lookup() {
+            @Override
+            public GcdStoryCredit forStory(final long storyId) {
+                return null;
+            }
+
+            @Override
+            public GcdStoryCredit forRow(final GcdRow row) {
+                return null;
+            }
+        };
+
+        GcdStoryCredit forStory(long storyId) throws SQLException;
+
+        /**
+         * The credits of the story of an extracted row, or null if the row has no story.
+         */
+        default GcdStoryCredit forRow(final GcdRow row) throws SQLException {
+            return row.getObject("story_id") != null ? forStory(row.getLong("story_id")) : null;
+        }
+
+        @Override
+        default void close() throws SQLException {
+        }
+    }
+
+    private static final String CREDIT_QUERY =
+            "SELECT c.story_id AS story_id, c.credit_type_id AS credit_type_id, cr.gcd_official_name AS name, cr.id AS creator_id " +
+            "FROM gcd_story_credit c INNER JOIN gcd_creator_name_detail n ON c.creator_id = n.id " +
+            "     INNER JOIN gcd_creator cr ON n.creator_id = cr.id ";
+
+    /**
+     * Credits ordered by story id, restricted to stories of the filtered issues if the filter is not null, which
+     * must have been prepared on the connection the query runs on.
+     */
+    public static String getCreditQuery(final IssueFilter filter) {
+        if (filter == null) {
+            return CREDIT_QUERY + "ORDER BY c.story_id";
+        }
+        return CREDIT_QUERY +
+                "     INNER JOIN gcd_story s ON c.story_id = s.id " +
+                "WHERE " + filter.toSqlPredicate("s.issue_id") + " " +
+                "ORDER BY c.story_id";
+    }
+
     public static Map<Long, GcdStoryCredit> loadAllStoryCredits(Connection conn) throws SQLException {
+        return loadAllStoryCredits(conn, null);
+    }
+
+    public static Map<Long, GcdStoryCredit> loadAllStoryCredits(Connection conn, IssueFilter filter) throws SQLException {
+        return loadAllStoryCredits(conn, filter, StringDictionary.NONE);
+    }
+
+    /**
+     * Loads the credits of the filtered issues' stories, sharing the creator names through the dictionary.
+     */
+    public static Map<Long, GcdStoryCredit> loadAllStoryCredits(final Connection conn, final IssueFilter filter,
+            final StringDictionary creatorNames) throws SQLException {
+        if (filter != null) {
+            filter.prepare(conn);
+        }
         final ImmutableMap.Builder<Long, GcdStoryCredit> builder = new ImmutableMap.Builder<>();
-        final String query =
-                "SELECT c.story_id AS story_id, c.credit_type_id AS credit_type_id, cr.gcd_official_name AS name, cr.id AS creator_id " +
-                "FROM gcd_story_credit c INNER JOIN gcd_creator_name_detail n ON c.creator_id = n.id " +
-                "     INNER JOIN gcd_creator cr ON n.creator_id = cr.id " +
-                "ORDER BY c.story_id";
         final Statement st = conn.createStatement();
-        final ResultSet rs = st.executeQuery(query);
+        final ResultSet rs = st.executeQuery(getCreditQuery(filter));
         GcdStoryCredit cur = new GcdStoryCredit(0);
         while (rs.next()) {
             final long storyId = rs.getLong("story_id");
@@ -127,7 +190,7 @@ public class GcdStoryCredit {
                 builder.put(storyId, cur);
             }
             final int creditTypeId = rs.getInt("credit_type_id");
-            final String name = rs.getString("name");
+            final String name = creatorNames.intern(rs.getString("name"));
             final long creatorId = rs.getLong("creator_id");
             cur.addCredit(creditTypeId, creatorId, name);
         }
@@ -135,4 +198,63 @@ public class GcdStoryCredit {
         st.close();
         return builder.build();
     }
+
+    /**
+     * Merge-joins a credit query ordered by story id (see {@link #getCreditQuery}) against stories that
+     * are looked up in ascending story id order. Only the current story's credits are held in memory.
+     */
+    public static class MergeCursor implements Lookup {
+        private final Connection conn;
+        private final PreparedStatement st;
+        private final StringDictionary creatorNames;
+        private ResultSet rs;
+        private boolean hasRow;
+        private long lastStoryId = Long.MIN_VALUE;
+
+        /**
+         * Takes ownership of the connection and statement, which are closed with the cursor.
+         */
+        public MergeCursor(final Connection conn, final PreparedStatement st) {
+            this(conn, st, StringDictionary.NONE);
+        }
+
+        public MergeCursor(final Connection conn, final PreparedStatement st, final StringDictionary creatorNames) {
+            this.conn = conn;
+            this.st = st;
+            this.creatorNames = creatorNames;
+        }
+
+        @Override
+        public GcdStoryCredit forStory(final long storyId) throws SQLException {
+            if (rs == null) {
+                rs = st.executeQuery();
+                hasRow = rs.next();
+            }
+            if (storyId < lastStoryId) {
+                throw new IllegalStateException("Stories must be merged in ascending id order: " + storyId + " after " + lastStoryId);
+            }
+            lastStoryId = storyId;
+            while (hasRow && rs.getLong("story_id") < storyId) {
+                hasRow = rs.next();
+            }
+            if (!hasRow || rs.getLong("story_id") != storyId) {
+                return null;
+            }
+            final GcdStoryCredit credit = new GcdStoryCredit(storyId);
+            do {
+                credit.addCredit(rs.getInt("credit_type_id"), rs.getLong("creator_id"), creatorNames.intern(rs.getString("name")));
+                hasRow = rs.next();
+            } while (hasRow && rs.getLong("story_id") == storyId);
+            return credit;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (rs != null) {
+                rs.close();
+            }
+            st.close();
+            conn.close();
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package org.gcd.etl;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * All story credits held in packed primitive arrays instead of a map of {@link GcdStoryCredit}s.
+ *
+ * Each credit row is an (int creator ordinal, byte credit type id) pair; the credits of a story are a
+ * contiguous run of those pairs located through a primitive story id index. Creator ids and names live
+ * once in a shared dictionary, so a creator with thousands of credits costs one String. A
+ * {@link GcdStoryCredit} is only built, briefly, when a story is looked up.
+ */
+public class GcdStoryCreditStore implements GcdStoryCredit.Lookup {
+
+    private final Long2IntOpenHashMap storyIndex;
+    // credits of story ordinal i are at [storyOffsets[i], storyOffsets[i + 1])
+    private final int[] storyOffsets;
+    private final int[] creditCreators;
+    private final byte[] creditTypes;
+    private final long[] creatorIds;
+    private final String[] creatorNames;
+
+    private GcdStoryCreditStore(final Long2IntOpenHashMap storyIndex, final int[] storyOffsets, final int[] creditCreators,
+            final byte[] creditTypes, final long[] creatorIds, final String[] creatorNames) {
+        this.storyIndex = storyIndex;
+        this.storyOffsets = storyOffsets;
+        this.creditCreators = creditCreators;
+        this.creditTypes = creditTypes;
+        this.creatorIds = creatorIds;
+        this.creatorNames = creatorNames;
+    }
+
+    @Override
+    public GcdStoryCredit forStory(final long storyId) {
+        final int story = storyIndex.get(storyId);
+        if (story < 0) {
+            return null;
+        }
+        final GcdStoryCredit credit = new GcdStoryCredit(storyId);
+        for (int i = storyOffsets[story]; i < storyOffsets[story + 1]; i++) {
+            final int creator = creditCreators[i];
+            credit.addCredit(creditTypes[i], creatorIds[creator], creatorNames[creator]);
+        }
+        return credit;
+    }
+
+    public int getStoryCount() {
+        return storyIndex.size();
+    }
+
+    public int getCreditCount() {
+        return creditCreators.length;
+    }
+
+    public int getCreatorCount() {
+        return creatorIds.length;
+    }
+
+    /**
+     * Approximate retained heap of the store, assuming compressed oops.
+     */
+    public long estimateRetainedBytes() {
+        // open hash map: long key, int value and boolean used flag per slot at the default load factor
+        long bytes = (long) (storyIndex.size() / 0.75f) * (8 + 4 + 1);
+        bytes += 4L * storyOffsets.length + 4L * creditCreators.length + creditTypes.length;
+        bytes += 8L * creatorIds.length + 4L * creatorNames.length;
+        for (String name : creatorNames) {
+            if (name != null) {
+                // String header and hash plus its backing array
+                bytes += 24 + 16 + 2L * name.length();
+            }
+        }
+        return bytes;
+    }
+
+    public static class Builder {
+        private final Long2IntOpenHashMap storyIndex = new Long2IntOpenHashMap();
+        private final IntArrayList storyOffsets = new IntArrayList();
+        private final IntArrayList creditCreators = new IntArrayList();
+        private final ByteArrayList creditTypes = new ByteArrayList();
+        private final Long2IntOpenHashMap creatorIndex = new Long2IntOpenHashMap();
+        private final LongArrayList creatorIds = new LongArrayList();
+        private final ObjectArrayList<String> creatorNames = new ObjectArrayList<>();
+        private long lastStoryId;
+
+        public Builder() {
+            storyIndex.defaultReturnValue(-1);
+            creatorIndex.defaultReturnValue(-1);
+        }
+
+        /**
+         * Credits must be added grouped by story, as {@link GcdStoryCredit#getCreditQuery} returns them.
+         */
+        public Builder addCredit(final long storyId, final int creditTypeId, final long creatorId, final String creatorName) {
+            if (storyIndex.isEmpty() || storyId != lastStoryId) {
+                if (storyIndex.containsKey(storyId)) {
+                    throw new IllegalStateException("Credits for story " + storyId + " are not contiguous");
+                }
+                storyIndex.put(storyId, storyOffsets.size());
+                storyOffsets.add(creditCreators.size());
+                lastStoryId = storyId;
+            }
+            int creator = creatorIndex.get(creatorId);
+            if (creator < 0) {
+                creator = creatorIds.size();
+                creatorIndex.put(creatorId, creator);
+                creatorIds.add(creatorId);
+                creatorNames.add(creatorName);
+            }
+            creditCreators.add(creator);
+            creditTypes.add((byte) creditTypeId);
+            return this;
+        }
+
+        public GcdStoryCreditStore build() {
+            final int[] offsets = new int[storyOffsets.size() + 1];
+            storyOffsets.getElements(0, offsets, 0, storyOffsets.size());
+            offsets[storyOffsets.size()] = creditCreators.size();
+            storyIndex.trim();
+            return new GcdStoryCreditStore(storyIndex, offsets, creditCreators.toIntArray(), creditTypes.toByteArray(),
+                    creatorIds.toLongArray(), creatorNames.toArray(new String[creatorNames.size()]));
+        }
+    }
+
+    /**
+     * Loads the results of {@link GcdStoryCredit#getCreditQuery} from the given statement, then closes it.
+     */
+    public static GcdStoryCreditStore load(final PreparedStatement st) throws SQLException {
+        final Builder builder = new Builder();
+        final ResultSet rs = st.executeQuery();
+        while (rs.next()) {
+            builder.addCredit(rs.getLong("story_id"), rs.getInt("credit_type_id"), rs.getLong("creator_id"), rs.getString("name"));
+        }
+        rs.close();
+        st.close();
+        return builder.build();
+    }
+}
@@ -5,7 +5,18 @@ public final class Gcdatabase {
     private String url;
     private String user;
     private String password;
-    private GcdSchema gcdSchema;
+    // optional parts of the schema to leave out; those the database lacks are detected
+    private GcdSchema gcdSchema = new GcdSchema();
+    // stream the extraction query instead of buffering the full result set in the driver
+    private boolean streamResults = false;
+    // rows per server-side cursor fetch when streaming; <= 0 streams row by row
+    private int fetchSize = 0;
+    // number of issue id ranges to extract concurrently, each on its own connection
+    private int partitions = 1;
+    private StoryCreditMode storyCreditMode = StoryCreditMode.PRELOAD;
+    private ExtractionStrategy extractionStrategy = ExtractionStrategy.JOIN;
+    private int pipelineThreads = 0;
+    private int pipelineQueueSize = 64;
 
     public String getUrl() {
         return url;
@@ -39,9 +50,68 @@ public final class Gcdatabase {
         this.gcdSchema = gcdSchema;
     }
 
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+
+    public void setStreamResults(boolean streamResults) {
+        this.streamResults = streamResults;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public StoryCreditMode getStoryCreditMode() {
+        return storyCreditMode;
+    }
+
+    public void setStoryCreditMode(StoryCreditMode storyCreditMode) {
+        this.storyCreditMode = storyCreditMode;
+    }
+
+    public ExtractionStrategy getExtractionStrategy() {
+        return extractionStrategy;
+    }
+
+    public void setExtractionStrategy(ExtractionStrategy extractionStrategy) {
+        this.extractionStrategy = extractionStrategy;
+    }
+
+    public int getPipelineThreads() {
+        return pipelineThreads;
+    }
+
+    public void setPipelineThreads(int pipelineThreads) {
+        this.pipelineThreads = pipelineThreads;
+    }
+
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
     @Override
     public String toString() {
         return "Gcdatabase{" + "url='" + url + '\'' + ", user='" + user + '\'' + ", password='" + password + '\'' + ", schema=" +
-                gcdSchema + '}';
+                gcdSchema + ", streamResults=" + streamResults + ", fetchSize=" + fetchSize + ", partitions=" + partitions + ", storyCreditMode=" + storyCreditMode +
+                ", extractionStrategy=" + extractionStrategy +
+                ", pipelineThreads=" + pipelineThreads +
+                ", pipelineQueueSize=" + pipelineQueueSize + '}';
     }
 }
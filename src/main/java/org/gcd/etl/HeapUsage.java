@@ -0,0 +1,40 @@
+package org.gcd.etl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Heap high-water mark reporting, used to size the containers the ETL runs in.
+ */
+public final class HeapUsage {
+
+    private HeapUsage() {
+    }
+
+    /**
+     * Sum of the peak usage of every heap memory pool since JVM start. Pools peak at different times,
+     * so this is an upper bound on the real high-water mark.
+     */
+    public static long getPeakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static long getMaxHeapBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+    }
+
+    public static String describe() {
+        return "Peak heap usage: " + toMegabytes(getPeakHeapBytes()) + " MB (max heap " + toMegabytes(getMaxHeapBytes()) + " MB)";
+    }
+
+    private static long toMegabytes(final long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
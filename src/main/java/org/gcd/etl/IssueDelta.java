@@ -0,0 +1,212 @@
+package org.gcd.etl;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The issues whose extracted documents changed since a watermark, i.e. the issues for which the issue
+ * itself or any row joined into its documents has a newer {@code modified} timestamp.
+ */
+public final class IssueDelta implements IssueFilter {
+    private static final Logger log = Logger.getLogger(IssueDelta.class);
+
+    /**
+     * Larger deltas are loaded into a temporary table rather than inlined into every query, which could then
+     * exceed max_allowed_packet.
+     */
+    private static final int MAX_INLINE_IDS = 1000;
+    private static final String ID_TABLE = "gcd_etl_delta_issue";
+
+    private final long since;
+    private final long[] issueIds;
+
+    private IssueDelta(final long since, final long[] issueIds) {
+        this.since = since;
+        this.issueIds = issueIds;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Sorted ids of the changed issues.
+     */
+    public long[] getIssueIds() {
+        return issueIds;
+    }
+
+    @Override
+    public String toSqlPredicate(final String issueIdColumn) {
+        if (issueIds.length == 0) {
+            return "1 = 0";
+        }
+        if (issueIds.length > MAX_INLINE_IDS) {
+            return issueIdColumn + " IN (SELECT issue_id FROM " + ID_TABLE + ")";
+        }
+        final StringBuilder predicate = new StringBuilder(issueIdColumn).append(" IN (");
+        for (int i = 0; i < issueIds.length; i++) {
+            if (i > 0) {
+                predicate.append(',');
+            }
+            predicate.append(issueIds[i]);
+        }
+        return predicate.append(')').toString();
+    }
+
+    /**
+     * Loads the issue ids into a temporary table of the connection if there are too many to inline, replacing
+     * any loaded before.
+     */
+    @Override
+    public void prepare(final Connection conn) throws SQLException {
+        if (issueIds.length <= MAX_INLINE_IDS) {
+            return;
+        }
+        final Statement st = conn.createStatement();
+        st.execute("DROP TEMPORARY TABLE IF EXISTS " + ID_TABLE);
+        st.execute("CREATE TEMPORARY TABLE " + ID_TABLE + " (issue_id INT NOT NULL PRIMARY KEY)");
+        for (int start = 0; start < issueIds.length; start += MAX_INLINE_IDS) {
+            final StringBuilder insert = new StringBuilder("INSERT INTO ").append(ID_TABLE).append(" (issue_id) VALUES ");
+            for (int i = start; i < Math.min(issueIds.length, start + MAX_INLINE_IDS); i++) {
+                if (i > start) {
+                    insert.append(',');
+                }
+                insert.append('(').append(issueIds[i]).append(')');
+            }
+            st.executeUpdate(insert.toString());
+        }
+        st.close();
+    }
+
+    /**
+     * Finds the issues affected by changes at or after {@code since} (unix seconds). Each joined table is checked
+     * with its own query so that MySQL can use the index on its modified column. Callers pass a watermark
+     * lowered by a safety lag: re-extracting an unchanged issue is harmless, missing a changed one is not.
+     */
+    public static IssueDelta findChangedIssues(final Connection conn, final GcdSchema schema, final long since) throws SQLException {
+        final String atOrAfter = ">= FROM_UNIXTIME(" + since + ")";
+        final List<String> queries = new ArrayList<>();
+        queries.add("SELECT id AS issue_id FROM gcd_issue WHERE modified " + atOrAfter);
+        queries.add("SELECT issue.id AS issue_id FROM gcd_issue AS issue " +
+                "INNER JOIN gcd_series AS series ON issue.series_id = series.id WHERE series.modified " + atOrAfter);
+        queries.add("SELECT issue.id AS issue_id FROM gcd_issue AS issue " +
+                "INNER JOIN gcd_series AS series ON issue.series_id = series.id " +
+                "INNER JOIN gcd_publisher AS publisher ON series.publisher_id = publisher.id WHERE publisher.modified " + atOrAfter);
+        queries.add("SELECT issue.id AS issue_id FROM gcd_issue AS issue " +
+                "INNER JOIN gcd_indicia_publisher AS indicia ON issue.indicia_publisher_id = indicia.id WHERE indicia.modified " + atOrAfter);
+        queries.add("SELECT issue.id AS issue_id FROM gcd_issue AS issue " +
+                "INNER JOIN gcd_brand AS brand ON issue.brand_id = brand.id WHERE brand.modified " + atOrAfter);
+        queries.add("SELECT issue_id FROM gcd_story WHERE modified " + atOrAfter);
+        if (schema.isStoryCredit()) {
+            queries.add("SELECT story.issue_id AS issue_id FROM gcd_story AS story " +
+                    "INNER JOIN gcd_story_credit AS c ON c.story_id = story.id WHERE c.modified " + atOrAfter);
+            queries.add("SELECT story.issue_id AS issue_id FROM gcd_story AS story " +
+                    "INNER JOIN gcd_story_credit AS c ON c.story_id = story.id " +
+                    "INNER JOIN gcd_creator_name_detail AS n ON c.creator_id = n.id " +
+                    "INNER JOIN gcd_creator AS cr ON n.creator_id = cr.id WHERE cr.modified " + atOrAfter);
+        }
+        final LongOpenHashSet changed = new LongOpenHashSet();
+        final Statement st = conn.createStatement();
+        for (String query : queries) {
+            final ResultSet rs = st.executeQuery(query);
+            while (rs.next()) {
+                changed.add(rs.getLong("issue_id"));
+            }
+            rs.close();
+        }
+        st.close();
+        final long[] issueIds = changed.toLongArray();
+        Arrays.sort(issueIds);
+        return new IssueDelta(since, issueIds);
+    }
+
+    /**
+     * The database's current time in unix seconds, used as the next watermark so that clock skew between
+     * the ETL host and MySQL cannot drop changes.
+     */
+    public static long getDatabaseTime(final Connection conn) throws SQLException {
+        final Statement st = conn.createStatement();
+        final ResultSet rs = st.executeQuery("SELECT UNIX_TIMESTAMP(NOW()) AS now");
+        rs.next();
+        final long now = rs.getLong("now");
+        rs.close();
+        st.close();
+        return now;
+    }
+
+    /**
+     * The watermark of the last successful run, or null if there has not been one.
+     */
+    public static Long readWatermark(final String file) throws IOException {
+        final Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim());
+    }
+
+    public static void writeWatermark(final String file, final long watermark) throws IOException {
+        writeAtomically(Paths.get(file), Long.toString(watermark) + "\n");
+        log.info("Wrote watermark " + watermark + " to " + file);
+    }
+
+    /**
+     * Writes the ids of the issues replaced by the delta, one per line. Consumers drop every document of
+     * these issues from the previous snapshot and add the delta's documents in their place.
+     */
+    public void writeManifest(final String file) throws IOException {
+        final Path path = Paths.get(file).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (long issueId : issueIds) {
+                out.write(Long.toString(issueId));
+                out.newLine();
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote " + issueIds.length + " replaced issue ids to " + file);
+    }
+
+    /**
+     * Reads back a delta written by {@link #writeManifest}.
+     */
+    public static IssueDelta readManifest(final String file, final long since) throws IOException {
+        final LongOpenHashSet issueIds = new LongOpenHashSet();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                issueIds.add(Long.parseLong(line.trim()));
+            }
+        }
+        final long[] sorted = issueIds.toLongArray();
+        Arrays.sort(sorted);
+        return new IssueDelta(since, sorted);
+    }
+
+    private static void writeAtomically(final Path path, final String content) throws IOException {
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return "IssueDelta{" + "since=" + since + ", issues=" + issueIds.length + '}';
+    }
+}
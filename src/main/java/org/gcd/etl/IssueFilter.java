@@ -0,0 +1,45 @@
+package org.gcd.etl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Restricts an extraction to a subset of gcd_issue ids.
+ */
+public interface IssueFilter {
+
+    /**
+     * A SQL predicate on the given issue id column.
+     */
+    String toSqlPredicate(String issueIdColumn);
+
+    /**
+     * Sets up whatever the predicate refers to on a connection, before any query using it runs there.
+     */
+    default void prepare(Connection conn) throws SQLException {
+    }
+
+    /**
+     * Both filters, either of which may be null; null if both are.
+     */
+    static IssueFilter and(final IssueFilter first, final IssueFilter second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return new IssueFilter() {
+            @Override
+            public String toSqlPredicate(final String column) {
+                return "(" + first.toSqlPredicate(column) + ") AND (" + second.toSqlPredicate(column) + ")";
+            }
+
+            @Override
+            public void prepare(final Connection conn) throws SQLException {
+                first.prepare(conn);
+                second.prepare(conn);
+            }
+        };
+    }
+}
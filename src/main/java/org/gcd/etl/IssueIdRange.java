@@ -0,0 +1,79 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableList;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * A half-open range [lower, upper) of gcd_issue ids, used to partition the extraction across connections.
+ */
+public final class IssueIdRange implements IssueFilter {
+
+    private final long lower;
+    private final long upper;
+
+    public IssueIdRange(final long lower, final long upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public long getLower() {
+        return lower;
+    }
+
+    public long getUpper() {
+        return upper;
+    }
+
+    @Override
+    public String toSqlPredicate(final String idColumn) {
+        return idColumn + " >= " + lower + " AND " + idColumn + " < " + upper;
+    }
+
+    /**
+     * Splits the ids present in gcd_issue into at most {@code count} ranges of equal width. Ids are
+     * dense enough in the GCD that equal widths give roughly equal row counts.
+     */
+    public static List<IssueIdRange> split(final Connection conn, final int count) throws SQLException {
+        final IssueIdRange bounds = getBounds(conn);
+        if (bounds == null) {
+            return ImmutableList.of();
+        }
+        return bounds.split(Math.max(1, (bounds.upper - bounds.lower + count - 1) / count));
+    }
+
+    /**
+     * The range from the lowest to the highest id in gcd_issue, or null if the table is empty.
+     */
+    public static IssueIdRange getBounds(final Connection conn) throws SQLException {
+        final Statement st = conn.createStatement();
+        final ResultSet rs = st.executeQuery("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM gcd_issue");
+        IssueIdRange bounds = null;
+        if (rs.next() && rs.getObject("min_id") != null) {
+            bounds = new IssueIdRange(rs.getLong("min_id"), rs.getLong("max_id") + 1);
+        }
+        rs.close();
+        st.close();
+        return bounds;
+    }
+
+    /**
+     * Splits this range into consecutive ranges of the given width; the last may be narrower.
+     */
+    public List<IssueIdRange> split(final long width) {
+        final ImmutableList.Builder<IssueIdRange> builder = new ImmutableList.Builder<>();
+        for (long start = lower; start < upper; start += width) {
+            builder.add(new IssueIdRange(start, Math.min(upper, start + width)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "IssueIdRange{" + "lower=" + lower + ", upper=" + upper + '}';
+    }
+}
@@ -0,0 +1,234 @@
+package org.gcd.etl;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes extracted rows straight to the Parquet record consumer, in the columns AvroParquetWriter writes the
+ * {@link GcdIssueData} of the same row to, without building the record, boxing its numbers or walking it again to
+ * shred it. The fields and their values are those of the row's {@link ExtractionPlan.Binding}, which hands them
+ * over as an {@link ExtractionPlan.IssueDataConsumer}. Apart from the values the row source returns, nothing is
+ * allocated per row: strings are encoded into a reused buffer. The footer holds the Avro schema of GcdIssueData,
+ * so the files read back as GcdIssueData.
+ */
+public final class IssueRowWriteSupport extends WriteSupport<IssueRowWriteSupport.IssueRow> {
+    // the key AvroReadSupport reads the Avro schema from
+    private static final String AVRO_SCHEMA = "parquet.avro.schema";
+    // the repeated field of a list, as the old list structure AvroParquetWriter writes by default names it
+    private static final String ELEMENT = "array";
+
+    /**
+     * A row to write with the binding of its fields, which is checked for the values without which
+     * buildIssueData skips it before the row is handed to the writer.
+     */
+    public static final class IssueRow {
+        private final ExtractionPlan.Binding binding;
+        private GcdRow row;
+        private GcdStoryCredit credit;
+
+        public IssueRow(final ExtractionPlan.Binding binding) {
+            this.binding = binding;
+        }
+
+        public IssueRow set(final GcdRow row, final GcdStoryCredit credit) throws SQLException {
+            binding.checkIssueData(row, credit);
+            this.row = row;
+            this.credit = credit;
+            return this;
+        }
+    }
+
+    /**
+     * Builds a writer of {@link IssueRow}s.
+     */
+    public static final class Builder extends ParquetWriter.Builder<IssueRow, Builder> {
+        public Builder(final Path file) {
+            super(file);
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<IssueRow> getWriteSupport(final Configuration conf) {
+            return new IssueRowWriteSupport();
+        }
+    }
+
+    private final MessageType type = new AvroSchemaConverter().convert(GcdIssueData.getClassSchema());
+    private final String[] names = new String[type.getFieldCount()];
+    private final ValueCodecs.MultiValueConsumer element = this::addElement;
+    private final ExtractionPlan.IssueDataConsumer fieldWriter = new FieldWriter();
+
+    private RecordConsumer consumer;
+    // the field being written, or the last one written
+    private int field;
+    private int elements;
+    private byte[] buffer = new byte[256];
+
+    public IssueRowWriteSupport() {
+        for (int i = 0; i < names.length; i++) {
+            names[i] = type.getFieldName(i);
+        }
+    }
+
+    @Override
+    public WriteContext init(final Configuration configuration) {
+        return new WriteContext(type, Collections.singletonMap(AVRO_SCHEMA, GcdIssueData.getClassSchema().toString()));
+    }
+
+    @Override
+    public void prepareForWrite(final RecordConsumer recordConsumer) {
+        this.consumer = recordConsumer;
+    }
+
+    @Override
+    public void write(final IssueRow issue) {
+        field = -1;
+        consumer.startMessage();
+        issue.binding.writeIssueData(issue.row, issue.credit, fieldWriter);
+        consumer.endMessage();
+    }
+
+    private final class FieldWriter implements ExtractionPlan.IssueDataConsumer {
+        @Override
+        public void addInt(final int position, final int value) {
+            startField(position);
+            consumer.addInteger(value);
+            endField();
+        }
+
+        @Override
+        public void addLong(final int position, final long value) {
+            startField(position);
+            consumer.addLong(value);
+            endField();
+        }
+
+        @Override
+        public void addBoolean(final int position, final boolean value) {
+            startField(position);
+            consumer.addBoolean(value);
+            endField();
+        }
+
+        @Override
+        public void addString(final int position, final String value) {
+            startField(position);
+            consumer.addBinary(encode(value, 0, value.length()));
+            endField();
+        }
+
+        @Override
+        public void addMultiValue(final int position, final String value) {
+            startField(position);
+            consumer.startGroup();
+            elements = 0;
+            ValueCodecs.forEachMultiValue(value, element);
+            if (elements > 0) {
+                consumer.endField(ELEMENT, 0);
+            }
+            consumer.endGroup();
+            endField();
+        }
+
+        @Override
+        public void addStrings(final int position, final List<CharSequence> values) {
+            startField(position);
+            consumer.startGroup();
+            if (!values.isEmpty()) {
+                consumer.startField(ELEMENT, 0);
+                for (int i = 0; i < values.size(); i++) {
+                    final CharSequence value = values.get(i);
+                    consumer.addBinary(encode(value, 0, value.length()));
+                }
+                consumer.endField(ELEMENT, 0);
+            }
+            consumer.endGroup();
+            endField();
+        }
+
+        @Override
+        public void addLongs(final int position, final List<Long> values) {
+            startField(position);
+            consumer.startGroup();
+            if (!values.isEmpty()) {
+                consumer.startField(ELEMENT, 0);
+                for (int i = 0; i < values.size(); i++) {
+                    consumer.addLong(values.get(i));
+                }
+                consumer.endField(ELEMENT, 0);
+            }
+            consumer.endGroup();
+            endField();
+        }
+    }
+
+    // starts a field, which must come after those already written, as in the schema
+    private void startField(final int position) {
+        if (position <= field) {
+            throw new IllegalStateException("Field " + names[position] + " is out of order");
+        }
+        field = position;
+        consumer.startField(names[position], position);
+    }
+
+    private void endField() {
+        consumer.endField(names[field], field);
+    }
+
+    private void addElement(final String value, final int start, final int end) {
+        if (elements++ == 0) {
+            consumer.startField(ELEMENT, 0);
+        }
+        consumer.addBinary(encode(value, start, end));
+    }
+
+    /**
+     * Encodes the chars as String.getBytes(UTF_8) does into the reused buffer, which the column writers copy
+     * from where they keep a value.
+     */
+    private Binary encode(final CharSequence value, final int start, final int end) {
+        if (buffer.length < (end - start) * 3) {
+            buffer = new byte[Math.max((end - start) * 3, buffer.length * 2)];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    // unpaired surrogates are replaced, as String.getBytes does
+                    buffer[length++] = '?';
+                }
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Binary.fromReusedByteArray(buffer, 0, length);
+    }
+}
@@ -1,60 +1,60 @@
 package org.gcd.etl;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
-import java.util.function.IntConsumer;
-import java.util.function.LongConsumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.avro.Schema;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.avro.generic.IndexedRecord;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
-import org.apache.parquet.avro.AvroParquetWriter;
-import org.apache.parquet.avro.AvroSchemaConverter;
-import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
-import org.apache.parquet.schema.MessageType;
 import org.yaml.snakeyaml.Yaml;
 
 import com.indeed.flamdex.simple.*;
 import com.indeed.flamdex.writer.*;
-import com.indeed.imhotep.archive.SquallArchiveWriter;
-import com.indeed.imhotep.archive.compression.SquallArchiveCompressor;
 
 public class Main {
     private static final Logger log = Logger.getLogger(Main.class);
 
-    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d\\d\\d\\d)-(\\d\\d)-(\\d\\d)");
-
-    private static final SimpleDateFormat COMPARABLE_DATE_FORMAT = new SimpleDateFormat("yMMdd");
+    private static final RunMetrics metrics = new RunMetrics();
 
     public static void main(String[] args) throws ClassNotFoundException, IOException, SQLException, ParseException {
         BasicConfigurator.configure();
         Logger.getRootLogger().setLevel(Level.INFO);
 
-        final String configFile = args[0];
-        final String date = args[1];
-        final String indexName = args[2];
-        final OutputType outputType = OutputType.valueOf(args[3]);
+        boolean resume = false;
+        final List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if ("--resume".equals(arg)) {
+                resume = true;
+            } else {
+                arguments.add(arg);
+            }
+        }
+        final String configFile = arguments.get(0);
+        final String date = arguments.get(1);
+        final String indexName = arguments.get(2);
+        final List<OutputType> outputTypes = OutputType.parseList(arguments.get(3));
 
         final long timestampMillis = new SimpleDateFormat("y-M-d z").parse(date +" GMT-06:00").getTime();
         final long timestamp = timestampMillis/1000;
@@ -62,590 +62,764 @@ public class Main {
         final Yaml yaml = new Yaml();
         InputStream in = Files.newInputStream(Paths.get(configFile));
         final GcdConfiguration config = yaml.loadAs(in, GcdConfiguration.class);
+        metrics.setProperty("indexName", indexName);
+        metrics.setProperty("outputType", OutputType.toString(outputTypes));
+        metrics.setProperty("date", date);
+        if (config.getMetrics().isJmx()) {
+            metrics.registerMBean();
+        }
+        final GcdCheckpoint checkpointConfig = config.getCheckpoint();
+        if (resume && checkpointConfig == null) {
+            throw new IllegalArgumentException("--resume needs a checkpoint file in the configuration");
+        }
+        if (outputTypes.contains(OutputType.PARQUET) && config.getParquet().getObjectModel() == ParquetObjectModel.DIRECT
+                && (isNested(config) || !config.getParquet().getPartitionBy().isEmpty() || !config.getParquet().getSortBy().isEmpty())) {
+            throw new IllegalArgumentException("The DIRECT object model writes the FLAT layout only, without partitionBy or sortBy");
+        }
+        if (outputTypes.contains(OutputType.FLAMDEX) && config.getFlamdex().getIndexing() == FlamdexIndexing.POSTINGS
+                && config.getFlamdex().getSubShards() > 1) {
+            throw new IllegalArgumentException("POSTINGS indexing builds each shard without sub-shards");
+        }
+        if (outputTypes.contains(OutputType.PARQUET) && outputTypes.contains(OutputType.ARROW)) {
+            throw new IllegalArgumentException("PARQUET and ARROW would write to the same snapshot directory");
+        }
 
         log.info("Loading documents from GCD...");
-        final Connection conn = getConnection(config.getGcdatabase());
-        final GcdSchema schema = config.getGcdatabase().getGcdSchema();
-        final GcdMetadata metadata = GcdMetadata.Builder.build(conn, schema);
-        final Map<Long, GcdStoryCredit> storyCredits;
-        if (schema.isStoryCredit()) {
-            storyCredits = GcdStoryCredit.loadAllStoryCredits(conn);
-            log.info("Loaded credit details for " + storyCredits.size() + " stories");
+        final Gcdatabase database = config.getGcdatabase();
+        final Connection conn = getConnection(database);
+        final GcdSchema schema = database.getGcdSchema();
+        metrics.phase("schema").run(() -> schema.introspect(conn));
+        log.info("Detected " + schema);
+        final ExtractionPlan plan = ExtractionPlan.compile(config.getMapping(), schema, outputTypes);
+        if (outputTypes.contains(OutputType.PARQUET) && isNested(config) && plan.needsStoryCredits()
+                && database.getStoryCreditMode() == StoryCreditMode.MERGE) {
+            throw new IllegalArgumentException("The NESTED layout needs rows ordered by issue, which MERGE story credits cannot be");
+        }
+        final GcdMetadata metadata = metrics.phase("metadata").time(() -> GcdMetadata.Builder.build(conn, schema));
+        final GcdIncremental incremental = config.getIncremental();
+        final ExtractionCheckpoint resumed = resume ? ExtractionCheckpoint.resume(checkpointConfig, indexName, date, outputTypes) : null;
+        final long watermark;
+        final IssueDelta delta;
+        if (resumed != null) {
+            // the watermark and delta of the run being resumed, whatever has changed since
+            watermark = resumed.getWatermark();
+            delta = resumed.getDelta();
+        } else if (incremental != null) {
+            final RunMetrics.Phase deltaPhase = metrics.phase("delta");
+            watermark = deltaPhase.time(() -> IssueDelta.getDatabaseTime(conn));
+            final Long previous = IssueDelta.readWatermark(incremental.getWatermarkFile());
+            if (previous != null) {
+                final long since = Math.max(0, previous - incremental.getSafetyLagSeconds());
+                delta = deltaPhase.time(() -> IssueDelta.findChangedIssues(conn, schema, since));
+                log.info("Extracting " + delta.getIssueIds().length + " issues changed since " + since + " (watermark " +
+                        previous + " less " + incremental.getSafetyLagSeconds() + "s)");
+            } else {
+                delta = null;
+                log.info("No watermark in " + incremental.getWatermarkFile() + "; extracting a full snapshot");
+            }
         } else {
-            storyCredits = new ImmutableMap.Builder<Long, GcdStoryCredit>().build();
+            watermark = 0;
+            delta = null;
         }
-        switch (outputType) {
-            case FLAMDEX:
-                final SimpleFlamdexDocWriter flamdexWriter = getFlamdexWriter(indexName);
-                final int fcount = extractDataToFlamdex(conn, metadata, schema, storyCredits, flamdexWriter, timestamp);
-                conn.close();
-                flamdexWriter.close();
-                log.info("Wrote " + fcount + " documents from GCD database; building sqar...");
-                writeSqar(indexName, indexName + ".sqar");
-                break;
-
-            case PARQUET:
-                final int pcount = extractDataToParquet(conn, metadata, schema, storyCredits, date, indexName, timestamp);
-                conn.close();
-                log.info("Wrote " + pcount + " documents from GCD database");
-                break;
+        final ExtractionCheckpoint checkpoint;
+        if (resumed != null) {
+            checkpoint = resumed;
+        } else if (checkpointConfig != null) {
+            checkpoint = ExtractionCheckpoint.start(checkpointConfig, indexName, date, outputTypes, IssueIdRange.getBounds(conn),
+                    watermark, delta);
+        } else {
+            checkpoint = null;
+        }
+        final GcdStoryCredit.Lookup storyCredits =
+                metrics.phase("story_credits").time(() -> loadStoryCredits(conn, database, plan, delta));
+        final DimensionCache dimensions = metrics.phase("dimension_cache").time(() -> loadDimensionCache(conn, database, plan));
+        final int snapshot = Integer.parseInt(date.replaceAll("-", ""));
+        final String snapshotDir = "./" + indexName + (delta != null ? "/delta=" : "/snapshot=") + snapshot;
+        // a delta gets FLAMDEX shards of its own, as writing a shard replaces the directory of the same name
+        final String shardName = delta != null ? indexName + "_delta" + snapshot : indexName;
+        final boolean orderByIssue = outputTypes.contains(OutputType.PARQUET) && isNested(config);
+        final OutputExtractor outputs = (outputType, source, partition, concurrentShards) -> {
+            switch (outputType) {
+                case FLAMDEX:
+                    final String shardDir = partition < 0 ? shardName : getShardName(shardName, partition);
+                    final FlamdexShardWriter flamdexWriter = new FlamdexShardWriter(shardDir, config.getFlamdex(), concurrentShards);
+                    final int count = extractDataToFlamdex(source, database, plan, metadata, flamdexWriter, timestamp);
+                    // the shards of checkpointed chunks are merged into the run's shards at the end
+                    closeShards(flamdexWriter, checkpoint == null);
+                    return count;
+
+                case PARQUET:
+                    return extractDataToParquet(source, database, plan, metadata, snapshotDir, partition, config.getParquet(), timestamp);
+
+                case ARROW:
+                    return extractDataToArrow(source, database, plan, metadata, snapshotDir, partition, config.getArrow(), timestamp);
+
+                default:
+                    throw new IllegalArgumentException("Unknown output type " + outputType);
+            }
+        };
+        if (checkpoint != null || database.getPartitions() > 1) {
+            final List<IssueIdRange> ranges;
+            final int threads;
+            if (checkpoint != null) {
+                ranges = checkpoint.getPendingChunks();
+                threads = Math.max(1, Math.min(database.getPartitions(), ranges.size()));
+                log.info("Extracting " + ranges.size() + " chunks of issue ids on " + threads + " connections");
+            } else {
+                ranges = IssueIdRange.split(conn, database.getPartitions());
+                threads = ranges.size();
+                log.info("Extracting " + ranges.size() + " issue id partitions in parallel");
+            }
+            conn.close();
+            final int count = extractPartitions(database, ranges, threads, checkpoint, (partConn, range, partition) -> {
+                final IssueFilter filter = IssueFilter.and(range, delta);
+                filter.prepare(partConn);
+                final int partCount;
+                try (GcdStoryCredit.Lookup credits = openCreditLookup(database, plan, storyCredits, filter)) {
+                    partCount = extractOutputs(outputTypes,
+                            queryRows(partConn, database, dimensions, credits, getGcdQuery(database, plan, filter, orderByIssue)),
+                            partition, threads, database.getPipelineQueueSize(), outputs);
+                }
+                log.info("Wrote " + partCount + " documents for " + range);
+                return partCount;
+            });
+            log.info("Wrote " + count + " documents from GCD database");
+        } else {
+            final int count;
+            if (delta != null) {
+                delta.prepare(conn);
+            }
+            try (GcdStoryCredit.Lookup credits = openCreditLookup(database, plan, storyCredits, delta)) {
+                count = extractOutputs(outputTypes,
+                        queryRows(conn, database, dimensions, credits, getGcdQuery(database, plan, delta, orderByIssue)),
+                        -1, 1, database.getPipelineQueueSize(), outputs);
+            }
+            log.info("Wrote " + count + " documents from GCD database");
+        }
+        // the PARQUET and ARROW outputs write to the snapshot directory, the FLAMDEX output next to its shards
+        final boolean snapshotOutput = outputTypes.contains(OutputType.PARQUET) || outputTypes.contains(OutputType.ARROW);
+        if (incremental != null) {
+            if (delta != null) {
+                if (snapshotOutput) {
+                    delta.writeManifest(snapshotDir + "/_replaced_issue_ids.txt");
+                }
+                if (outputTypes.contains(OutputType.FLAMDEX)) {
+                    delta.writeManifest(shardName + ".replaced_issue_ids.txt");
+                }
+            }
+            IssueDelta.writeWatermark(incremental.getWatermarkFile(), watermark);
+        }
+        if (checkpoint != null) {
+            if (outputTypes.contains(OutputType.FLAMDEX)) {
+                mergeChunkShards(checkpoint, shardName, config.getFlamdex());
+            }
+            checkpoint.delete();
+        }
+        log.info("Interned field values: " + plan.getDictionaries());
+        log.info(HeapUsage.describe());
+        if (snapshotOutput) {
+            deleteTemporaryDirectories(snapshotDir);
+            metrics.addOutputBytes(RunMetrics.sizeOf(snapshotDir));
+        }
+        final String reportFile = config.getMetrics().getReportFile();
+        if (reportFile != null) {
+            metrics.writeReport(reportFile);
+        } else {
+            metrics.writeReport(snapshotOutput ? snapshotDir + "/_report.json" : shardName + ".report.json");
         }
         System.exit(0);
     }
 
-    private static ParquetWriter getParquetWriter(String indexName, int snapshot, int part) throws IOException {
-        final Schema avroSchema = GcdIssueData.getClassSchema();
-        final MessageType parquetSchema = new AvroSchemaConverter().convert(avroSchema);
-        final String fmtPart = String.format("%04d", part);
-        final Path filePath = new Path("./" + indexName + "/snapshot=" + snapshot + "/part-" + fmtPart + ".parquet");
-        return AvroParquetWriter.builder(filePath)
-                .withSchema(avroSchema)
-                .withCompressionCodec(CompressionCodecName.SNAPPY)
-                .build();
+    private interface PartitionExtractor {
+        int extract(Connection conn, IssueIdRange range, int partition) throws ClassNotFoundException, SQLException, IOException;
+    }
+
+    /**
+     * Runs one extraction per issue id range on the given number of threads, each on its own connection, and
+     * returns the total number of documents written. With a checkpoint the ranges are its chunks, whose outputs
+     * are numbered by chunk and which are committed to the checkpoint as their extractions finish.
+     */
+    private static int extractPartitions(final Gcdatabase database, final List<IssueIdRange> ranges, final int threads,
+            final ExtractionCheckpoint checkpoint, final PartitionExtractor extractor)
+            throws ClassNotFoundException, SQLException, IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                new ThreadFactoryBuilder().setNameFormat("extract-%d").build());
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                final IssueIdRange range = ranges.get(i);
+                final int partition = checkpoint != null ? checkpoint.getChunkNumber(range) : i;
+                results.add(executor.submit(() -> {
+                    final int count;
+                    try (Connection partConn = getConnection(database)) {
+                        count = extractor.extract(partConn, range, partition);
+                    }
+                    if (checkpoint != null) {
+                        checkpoint.commit(range);
+                    }
+                    return count;
+                }));
+            }
+            int count = 0;
+            for (Future<Integer> result : results) {
+                try {
+                    count += result.get();
+                } catch (ExecutionException e) {
+                    Throwables.throwIfInstanceOf(e.getCause(), ClassNotFoundException.class);
+                    Throwables.propagateIfPossible(e.getCause(), SQLException.class, IOException.class);
+                    throw new RuntimeException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for partitions", e);
+                }
+            }
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Credits shared by every extraction of the run, or none if they are merged in per extraction or the plan needs none.
+     */
+    private static GcdStoryCredit.Lookup loadStoryCredits(final Connection conn, final Gcdatabase database, final ExtractionPlan plan,
+            final IssueFilter filter) throws SQLException {
+        if (!plan.needsStoryCredits()) {
+            return GcdStoryCredit.Lookup.NONE;
+        }
+        switch (database.getStoryCreditMode()) {
+            case PRELOAD:
+                final Map<Long, GcdStoryCredit> storyCredits = GcdStoryCredit.loadAllStoryCredits(conn, filter, plan.getCreatorNames());
+                log.info("Loaded credit details for " + storyCredits.size() + " stories");
+                return storyCredits::get;
+
+            case COMPACT:
+                if (filter != null) {
+                    filter.prepare(conn);
+                }
+                final GcdStoryCreditStore store =
+                        GcdStoryCreditStore.load(prepareExtractionStatement(conn, database, GcdStoryCredit.getCreditQuery(filter)));
+                log.info("Loaded " + store.getCreditCount() + " credits by " + store.getCreatorCount() + " creators for " +
+                        store.getStoryCount() + " stories, ~" + store.estimateRetainedBytes() / (1024 * 1024) + " MB");
+                return store;
+
+            default:
+                return GcdStoryCredit.Lookup.NONE;
+        }
+    }
+
+    /**
+     * Credits for the stories of the filtered issues (or all issues if null). In MERGE mode this opens a
+     * second connection that streams credits alongside the main query, which must then be ordered by story id.
+     * The credits are streamed whether or not streamResults is set, so that they are never buffered whole.
+     */
+    private static GcdStoryCredit.Lookup openCreditLookup(final Gcdatabase database, final ExtractionPlan plan,
+            final GcdStoryCredit.Lookup preloaded, final IssueFilter filter) throws ClassNotFoundException, SQLException {
+        if (plan.needsStoryCredits() && database.getStoryCreditMode() == StoryCreditMode.MERGE) {
+            final Connection creditConn = getConnection(database);
+            if (filter != null) {
+                filter.prepare(creditConn);
+            }
+            final PreparedStatement st = prepareStreamingStatement(creditConn, database, GcdStoryCredit.getCreditQuery(filter));
+            return new GcdStoryCredit.MergeCursor(creditConn, st, plan.getCreatorNames());
+        }
+        return preloaded;
     }
 
-    private static SimpleFlamdexDocWriter getFlamdexWriter(final String outDir) throws IOException {
-        final SimpleFlamdexDocWriter.Config config = new SimpleFlamdexDocWriter.Config();
-        config.setDocBufferSize(2000);
-        config.setMergeFactor(1000);
-        return new SimpleFlamdexDocWriter(outDir, config);
+    /**
+     * Deletes the staging directories of the part files, which are empty once every writer has committed.
+     */
+    private static void deleteTemporaryDirectories(final String directory) throws IOException {
+        if (!Files.exists(Paths.get(directory))) {
+            return;
+        }
+        final List<Path> temporary;
+        try (Stream<Path> paths = Files.walk(Paths.get(directory))) {
+            temporary = paths.filter(path -> path.getFileName().toString().equals("_temporary")).collect(Collectors.toList());
+        }
+        for (Path path : temporary) {
+            Files.deleteIfExists(path);
+        }
     }
 
-    private static void writeSqar(String indexDir, String outFile) throws IOException {
-        Configuration hdfsConf = new Configuration();
-        final FileSystem fs = new RawLocalFileSystem();
-        fs.setConf(hdfsConf);
-        final File shardDir = new File(indexDir);
-        final Path outPath = new Path(outFile);
-        final SquallArchiveWriter writer =
-              new SquallArchiveWriter(fs, outPath, true,
-                                      SquallArchiveCompressor.GZIP);
-        writer.batchAppendDirectory(shardDir);
-        writer.commit();
-        log.info("Wrote " + outPath);
+    /**
+     * Closes a shard writer, which merges and archives its shards, and counts the archives as output unless they
+     * are merged into others later.
+     */
+    private static void closeShards(final FlamdexShardWriter writer, final boolean output) throws IOException {
+        final RunMetrics.Phase close = metrics.phase("close");
+        close.run(writer::close);
+        for (String shardDir : writer.getShardDirectories()) {
+            final long bytes = RunMetrics.sizeOf(shardDir + ".sqar");
+            close.addBytes(bytes);
+            if (output) {
+                metrics.addOutputBytes(bytes);
+            }
+        }
+    }
+
+    /**
+     * Merges the shards of a checkpointed run's chunks, in the order of their issue ids, into the shards an
+     * unpartitioned run without a checkpoint writes, then deletes them. A run resumed after the merge only
+     * deletes them.
+     */
+    private static void mergeChunkShards(final ExtractionCheckpoint checkpoint, final String shardName,
+            final FlamdexProfile profile) throws IOException {
+        final List<String> targets = FlamdexShardWriter.getShardDirectories(shardName, profile);
+        final List<List<String>> chunkShards = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            chunkShards.add(new ArrayList<>());
+        }
+        for (IssueIdRange chunk : checkpoint.getChunks()) {
+            final String chunkShard = getShardName(shardName, checkpoint.getChunkNumber(chunk));
+            final List<String> directories = FlamdexShardWriter.getShardDirectories(chunkShard, profile);
+            for (int i = 0; i < targets.size(); i++) {
+                chunkShards.get(i).add(directories.get(i));
+            }
+        }
+        final RunMetrics.Phase merge = metrics.phase("merge");
+        if (!checkpoint.isMerged()) {
+            for (int i = 0; i < targets.size(); i++) {
+                final List<String> shards = chunkShards.get(i);
+                final String target = targets.get(i);
+                merge.run(() -> FlamdexShardWriter.mergeShards(shards, target, profile));
+            }
+            checkpoint.setMerged();
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            FlamdexShardWriter.deleteShards(chunkShards.get(i));
+            final long bytes = RunMetrics.sizeOf(targets.get(i) + ".sqar");
+            merge.addBytes(bytes);
+            metrics.addOutputBytes(bytes);
+        }
+        log.info("Merged the shards of " + checkpoint.getChunks().size() + " checkpoint chunks into " + targets);
+    }
+
+    private static String getShardName(final String indexName, final int partition) {
+        return indexName + "_" + String.format("%04d", partition);
     }
 
     private static Connection getConnection(Gcdatabase config) throws ClassNotFoundException, SQLException {
         final String myDriver = "com.mysql.cj.jdbc.Driver";
         Class.forName(myDriver);
-        return DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        final Properties props = new Properties();
+        if (config.getUser() != null) {
+            props.setProperty("user", config.getUser());
+        }
+        if (config.getPassword() != null) {
+            props.setProperty("password", config.getPassword());
+        }
+        if (config.isStreamResults() && config.getFetchSize() > 0) {
+            // fetch in batches of fetchSize through a server-side cursor
+            props.setProperty("useCursorFetch", "true");
+        }
+        return DriverManager.getConnection(config.getUrl(), props);
     }
 
-    private static final String GCD_QUERY =
-        "SELECT \n" +
-        "  issue.id AS issue_id,\n" +
-        "  issue.number AS issue_number_raw,\n" +
-        "  issue.key_date AS pubdateraw, \n" +
-        "  issue.price, \n" +
-        "  issue.page_count, \n" +
-        "  issue.indicia_frequency, \n" +
-        "  issue.isbn, \n" +
-        "  issue.variant_name, \n" +
-        "  issue.variant_of_id AS variant_of_issue_id, \n" +
-        "  issue.barcode, \n" +
-        "  issue.title, \n" +
-        "  issue.on_sale_date AS onsaledateraw, \n" +
-        "  issue.rating, \n" +
-        "  issue.volume_not_printed, \n" +
-        "  issue.editing AS editing, \n" +
-        "  issue.notes AS notes, \n" +
-        "  UNIX_TIMESTAMP(issue.created) AS created, \n" +
-        "  UNIX_TIMESTAMP(issue.modified) AS modified, \n" +
-        "  series.id AS series_id, \n" +
-        "  series.name AS series_name, \n" +
-        "  series.year_began AS series_year_began, \n" +
-        "  series.year_ended AS series_year_ended, \n" +
-        "  series.is_current AS series_is_current, \n" +
-        "  series.country_id AS scountryid, \n" +
-        "  series.language_id AS slangid, \n" +
-        "  series.has_gallery AS series_has_gallery, \n" +
-        "  series.is_comics_publication AS series_is_comics_publication, \n" +
-        "  series.color AS series_color, \n" +
-        "  series.dimensions AS series_dimensions, \n" +
-        "  series.paper_stock AS series_paper_stock, \n" +
-        "  series.binding AS series_binding, \n" +
-        "  series.publishing_format AS series_publishing_format, \n" +
-        "  series.publication_type_id AS spubtypeid, \n" +
-        "  series.is_singleton AS series_is_singleton, \n" +
-        "  UNIX_TIMESTAMP(series.created) AS series_created, \n" +
-        "  UNIX_TIMESTAMP(series.modified) AS series_modified, \n" +
-        "  publisher.id AS publisher_id, \n" +
-        "  publisher.name AS publisher_name, \n" +
-        "  publisher.country_id AS pubcountryid, \n" +
-        "  publisher.url AS publisher_url, \n" +
-        "  UNIX_TIMESTAMP(publisher.created) AS publisher_created, \n" +
-        "  UNIX_TIMESTAMP(publisher.modified) AS publisher_modified, \n" +
-        "  indicia.id AS indicia_publisher_id, \n" +
-        "  indicia.name AS indicia_publisher_name, \n" +
-        "  indicia.country_id AS indpubcountryid, \n" +
-        "  indicia.parent_id AS indicia_publisher_parent_id, \n" +
-        "  indicia.year_began AS indicia_publisher_year_began, \n" +
-        "  indicia.year_ended AS indicia_publisher_year_ended, \n" +
-        "  indicia.is_surrogate AS indicia_publisher_is_surrogate, \n" +
-        "  indicia.url AS indicia_publisher_url, \n" +
-        "  UNIX_TIMESTAMP(indicia.created) AS indicia_publisher_created, \n" +
-        "  UNIX_TIMESTAMP(indicia.modified) AS indicia_publisher_modified, \n" +
-        "  brand.id AS brand_id, \n" +
-        "  brand.name AS brand_name, \n" +
-        "  brand.url AS brand_url, \n" +
-        "  UNIX_TIMESTAMP(brand.created) AS brand_created, \n" +
-        "  UNIX_TIMESTAMP(brand.modified) AS brand_modified, \n" +
-        "  story.id AS story_id, \n" +
-        "  story.title AS story_title, \n" +
-        "  story.feature AS story_feature, \n" +
-        "  story.sequence_number AS story_sequence_number, \n" +
-        "  story.page_count AS story_page_count, \n" +
-        "  story.script AS story_script, \n" +
-        "  story.pencils AS story_pencils, \n" +
-        "  story.inks AS story_inks, \n" +
-        "  story.colors AS story_colors, \n" +
-        "  story.letters AS story_letters, \n" +
-        "  story.editing AS story_editing, \n" +
-        "  story.genre AS story_genre, \n" +
-        "  story.characters AS story_characters, \n" +
-        "  story.type_id AS strtypeid, \n" +
-        "  story.job_number AS story_job_number, \n" +
-        "  story.first_line AS story_first_line, \n" +
-        "  UNIX_TIMESTAMP(story.created) AS story_created, \n" +
-        "  UNIX_TIMESTAMP(story.modified) AS story_modified \n" +
-        "FROM gcd_issue AS issue \n" +
-        "  INNER JOIN gcd_series AS series ON issue.series_id=series.id \n" +
-        "  INNER JOIN gcd_publisher AS publisher ON series.publisher_id=publisher.id\n" +
-        "  LEFT OUTER JOIN gcd_indicia_publisher AS indicia ON issue.indicia_publisher_id=indicia.id\n" +
-        "  LEFT OUTER JOIN gcd_brand AS brand ON issue.brand_id=brand.id\n" +
-        "  LEFT OUTER JOIN gcd_story AS story ON story.issue_id=issue.id";
-
-    private static String getGcdQuery(final GcdSchema schema) {
-        String query = GCD_QUERY;
-        if (!schema.isPublicationType()) {
-            query = query.replace("series.publication_type_id AS spubtypeid,", "");
-        }
-        if (!schema.isVolumeNotPrinted()) {
-            query = query.replace("issue.volume_not_printed,", "");
-        }
-        if (!schema.isSeriesIsSingleton()) {
-            query = query.replace("series.is_singleton AS series_is_singleton,", "");
-        }
-        if (!schema.isStoryFirstLine()) {
-            query = query.replace("story.first_line AS story_first_line,", "");
+    /**
+     * By default Connector/J reads the entire result set into memory before returning it. When streaming
+     * is configured, the statement is forward-only and read-only and either fetches fetchSize rows at a
+     * time through a server-side cursor or, with no fetch size, streams row by row, so heap use depends
+     * on the batch size rather than the size of the database.
+     */
+    private static PreparedStatement prepareExtractionStatement(final Connection conn, final Gcdatabase config, final String query)
+            throws SQLException {
+        final PreparedStatement st = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (config.isStreamResults()) {
+            st.setFetchSize(config.getFetchSize() > 0 ? config.getFetchSize() : Integer.MIN_VALUE);
+            log.info("Streaming query results" + (config.getFetchSize() > 0 ? " with fetch size " + config.getFetchSize() : ""));
         }
-        return query;
+        return st;
     }
 
-    private static int extractDataToFlamdex(
-            final Connection conn,
-            final GcdMetadata metadata,
-            final GcdSchema schema,
-            final Map<Long, GcdStoryCredit> storyCredits,
-            final SimpleFlamdexDocWriter writer,
-            final long unixTime
-    )
-            throws SQLException, IOException {
-        int count = 0;
-        final Statement st = conn.createStatement();
-        final ResultSet rs = st.executeQuery(getGcdQuery(schema));
-        while (rs.next()) {
-            try {
-                final FlamdexDocument doc = new FlamdexDocument();
-                doc.addIntTerm("unixtime", unixTime);
-                addLong(rs, "issue_id", id -> doc.addIntTerm("issue_id", id));
-                addOptionalString(rs, "issue_number_raw", num -> doc.addStringTerm("issue_number_raw", num));
-                final String number = rs.getString("issue_number_raw");
-                try {
-                    doc.addIntTerm("issue_number", Integer.parseInt(number));
-                } catch (NumberFormatException e) {
-                    // some numbers are not numeric in the data set, don't warn
-                }
-                addOptionalDate(rs, "pubdateraw", date -> doc.addIntTerm("publication_date", date));
-                addOptionalString(rs, "price", price -> doc.addStringTerm("price_raw", price));
-                addOptionalMultiString(rs, "price", prices -> doc.addStringTerms("price", prices));
-                addIntWithDefault(rs, "page_count", -1, pageCount -> doc.addIntTerm("page_count", pageCount));
-                addOptionalString(rs, "indicia_frequency", freq -> doc.addStringTerm("indicia_frequency", freq));
-                addOptionalString(rs, "isbn", isbn -> doc.addStringTerm("isbn", isbn));
-                addOptionalString(rs, "variant_name", name -> doc.addStringTerm("variant_name", name));
-                addOptionalLong(rs, "variant_of_issue_id", variant_id -> doc.addIntTerm("variant_of_issue_id", variant_id));
-                addOptionalString(rs, "barcode", barcode -> doc.addStringTerm("barcode", barcode));
-                addOptionalString(rs, "title", title -> doc.addStringTerm("title", title));
-                addOptionalDate(rs, "onsaledateraw", date -> doc.addIntTerm("on_sale_date", date));
-                addOptionalString(rs, "rating", rating -> doc.addStringTerm("rating", rating));
-                if (schema.isVolumeNotPrinted()) {
-                    addOptionalInt(rs, "volume_not_printed", notprinted -> doc.addIntTerm("volume_not_printed", notprinted));
-                }
-                addOptionalMultiString(rs, "editing", editors -> doc.addStringTerms("editing", editors));
-                addOptionalString(rs, "notes", notes -> doc.addStringTerm("notes", notes));
-                addOptionalDateFromTimestamp(rs, "created", created -> doc.addIntTerm("created", created));
-                addOptionalDateFromTimestamp(rs, "modified", modified -> doc.addIntTerm("modified", modified));
-                addLong(rs, "series_id", id -> doc.addIntTerm("series_id", id));
-                addOptionalString(rs, "series_name", name -> doc.addStringTerm("series_name", name));
-                addIntWithDefault(rs, "series_year_began", -1, began -> doc.addIntTerm("series_year_began", began));
-                addIntWithDefault(rs, "series_year_ended", -1, ended -> doc.addIntTerm("series_year_ended", ended));
-                addOptionalInt(rs, "series_is_current", iscur -> doc.addIntTerm("series_is_current", iscur));
-                addOptionalStringFromId(rs, "scountryid", metadata.getCountryCodeMap(), code -> doc.addStringTerm("series_country_code", code));
-                addOptionalStringFromId(rs, "slangid", metadata.getLanguageCodeMap(), code -> doc.addStringTerm("series_language_code", code));
-                addOptionalInt(rs, "series_has_gallery", hasgal -> doc.addIntTerm("series_has_gallery", hasgal));
-                addOptionalInt(rs, "series_is_comics_publication", iscomics -> doc.addIntTerm("series_is_comics_publication", iscomics));
-                addOptionalString(rs, "series_color", color -> doc.addStringTerm("series_color", color));
-                addOptionalString(rs, "series_dimensions", dim -> doc.addStringTerm("series_dimensions", dim));
-                addOptionalString(rs, "series_paper_stock", stock -> doc.addStringTerm("series_paper_stock", stock));
-                addOptionalMultiString(rs, "series_binding", bindings -> doc.addStringTerms("series_binding", bindings));
-                addOptionalString(rs, "series_publishing_format", fmt -> doc.addStringTerm("series_publishing_format", fmt));
-                if (schema.isPublicationType()) {
-                    addOptionalStringFromId(rs, "spubtypeid", metadata.getPublicationTypeMap(), type -> doc.addStringTerm("series_publication_type", type));
-                }
-                if (schema.isSeriesIsSingleton()) {
-                    addOptionalInt(rs, "series_is_singleton", sing -> doc.addIntTerm("series_is_singleton", sing));
-                }
-                addOptionalDateFromTimestamp(rs, "series_created", created -> doc.addIntTerm("series_created", created));
-                addOptionalDateFromTimestamp(rs, "series_modified", modified -> doc.addIntTerm("series_modified", modified));
-                addOptionalLong(rs, "publisher_id", id -> doc.addIntTerm("publisher_id", id));
-                addOptionalString(rs, "publisher_name", name -> doc.addStringTerm("publisher_name", name));
-                addOptionalStringFromId(rs, "pubcountryid", metadata.getCountryCodeMap(), code -> doc.addStringTerm("publisher_country_code", code));
-                addOptionalDateFromTimestamp(rs, "publisher_created", created -> doc.addIntTerm("publisher_created", created));
-                addOptionalDateFromTimestamp(rs, "publisher_modified", modified -> doc.addIntTerm("publisher_modified", modified));
-                addOptionalString(rs, "publisher_url", url -> doc.addStringTerm("publisher_url", url));
-                addOptionalLong(rs, "indicia_publisher_id", id -> doc.addIntTerm("indicia_publisher_id", id));
-                addOptionalString(rs, "indicia_publisher_name", name -> doc.addStringTerm("indicia_publisher_name", name));
-                addOptionalStringFromId(rs, "indpubcountryid", metadata.getCountryCodeMap(), code -> doc.addStringTerm("indicia_publisher_country_code", code));
-                addOptionalLong(rs, "indicia_publisher_parent_id", id -> doc.addIntTerm("indicia_publisher_parent_id", id));
-                addIntWithDefault(rs, "indicia_publisher_year_began", -1, began -> doc.addIntTerm("indicia_publisher_year_began", began));
-                addIntWithDefault(rs, "indicia_publisher_year_ended", -1, ended -> doc.addIntTerm("indicia_publisher_year_ended", ended));
-                addOptionalInt(rs, "indicia_publisher_is_surrogate", sur -> doc.addIntTerm("indicia_publisher_is_surrogate", sur));
-                addOptionalString(rs, "indicia_publisher_url", url -> doc.addStringTerm("indicia_publisher_url", url));
-                addOptionalDateFromTimestamp(rs, "indicia_publisher_created", created -> doc.addIntTerm("indicia_publisher_created", created));
-                addOptionalDateFromTimestamp(rs, "indicia_publisher_modified", modified -> doc.addIntTerm("indicia_publisher_modified", modified));
-                addOptionalLong(rs, "brand_id", id -> doc.addIntTerm("brand_id", id));
-                addOptionalString(rs, "brand_name", name -> doc.addStringTerm("brand_name", name));
-                addOptionalString(rs, "brand_url", url -> doc.addStringTerm("brand_url", url));
-                addOptionalDateFromTimestamp(rs, "brand_created", created -> doc.addIntTerm("brand_created", created));
-                addOptionalDateFromTimestamp(rs, "brand_modified", modified -> doc.addIntTerm("brand_modified", modified));
-                if (rs.getObject("story_id") != null) {
-                    addOptionalLong(rs, "story_id", id -> doc.addIntTerm("story_id", id));
-                    addOptionalString(rs, "story_title", title -> doc.addStringTerm("story_title", title));
-                    addOptionalString(rs, "story_feature", feature -> doc.addStringTerm("story_feature", feature));
-                    addIntWithDefault(rs, "story_sequence_number", -1, num -> doc.addIntTerm("story_sequence_number", num));
-                    addIntWithDefault(rs, "story_page_count", -1, pageCount -> doc.addIntTerm("story_page_count", pageCount));
-                    final long storyId = rs.getLong("story_id");
-                    final GcdStoryCredit credit = storyCredits.get(storyId);
-                    if (credit != null) {
-                        addOptionalCredit(credit,
-                                (field, terms) -> doc.addStringTerms(field, terms), (field, terms) -> doc.addIntTerms(field, terms));
-
-                        doc.addStringTerm("story_credit_source", "gcd_story_credit");
-                    } else {
-                        addOptionalMultiString(rs, "story_script", scriptors -> doc.addStringTerms("story_script", scriptors));
-                        addOptionalMultiString(rs, "story_pencils", artists -> doc.addStringTerms("story_pencils", artists));
-                        addOptionalMultiString(rs, "story_inks", inkers -> doc.addStringTerms("story_inks", inkers));
-                        addOptionalMultiString(rs, "story_colors", colorists -> doc.addStringTerms("story_colors", colorists));
-                        addOptionalMultiString(rs, "story_letters", letterers -> doc.addStringTerms("story_letters", letterers));
-                        addOptionalMultiString(rs, "story_editing", editors -> doc.addStringTerms("story_editing", editors));
-
-                        doc.addStringTerm("story_credit_source", "gcd_story");
-                    }
-                    addOptionalMultiString(rs, "story_genre", genres -> doc.addStringTerms("story_genre", genres));
-                    addOptionalMultiString(rs, "story_characters", characters -> doc.addStringTerms("story_characters", characters));
-                    addOptionalStringFromId(rs, "strtypeid", metadata.getStoryTypeMap(), type -> doc.addStringTerm("story_type", type));
-                    addOptionalString(rs, "story_job_number", num -> doc.addStringTerm("story_job_number", num));
-                    if (schema.isStoryFirstLine()) {
-                        addOptionalString(rs, "story_first_line", line -> doc.addStringTerm("story_first_line", line));
-                    }
-                    addOptionalDateFromTimestamp(rs, "story_created", created -> doc.addIntTerm("story_created", created));
-                    addOptionalDateFromTimestamp(rs, "story_modified", modified -> doc.addIntTerm("story_modified", modified));
-                }
+    /**
+     * A statement that always streams, through a server-side cursor if streamResults sets a fetch size and row by
+     * row otherwise. Row-by-row streaming holds the connection until the results are closed.
+     */
+    private static PreparedStatement prepareStreamingStatement(final Connection conn, final Gcdatabase config, final String query)
+            throws SQLException {
+        final PreparedStatement st = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        st.setFetchSize(config.isStreamResults() && config.getFetchSize() > 0 ? config.getFetchSize() : Integer.MIN_VALUE);
+        return st;
+    }
 
-                if (++count % 10000 == 0) {
-                    log.info("Processing document #" + count);
-                }
-                writer.addDocument(doc);
-            } catch (SQLException e) {
-                log.warn("Skipping document due to: " + e.getMessage());
-            }
+    /**
+     * The extraction query, ordered by issue id when the rows of each issue must be adjacent. The filter must
+     * have been prepared on the connection the query runs on.
+     */
+    private static String getGcdQuery(final Gcdatabase database, final ExtractionPlan plan, final IssueFilter filter,
+            final boolean orderByIssue) {
+        String query = plan.getQuery(database.getExtractionStrategy());
+        if (filter != null) {
+            query += "\nWHERE " + filter.toSqlPredicate("issue.id");
         }
-        rs.close();
-        st.close();
-        conn.close();
-        return count;
+        if (plan.needsStoryCredits() && database.getStoryCreditMode() == StoryCreditMode.MERGE) {
+            query += "\nORDER BY story.id";
+        } else if (orderByIssue) {
+            query += "\nORDER BY issue.id";
+        }
+        return query;
     }
 
-    private static int extractDataToParquet(
-            final Connection conn,
-            final GcdMetadata metadata,
-            final GcdSchema schema,
-            Map<Long, GcdStoryCredit> storyCredits,
-            final String date,
-            final String indexName,
-            final long unixTime
-    )
-            throws SQLException, IOException {
-        int count = 0;
-        final Statement st = conn.createStatement();
-        final ResultSet rs = st.executeQuery(getGcdQuery(schema));
-        int part = 0;
-        final int snapshot = Integer.parseInt(date.replaceAll("-", ""));
-        ParquetWriter writer = getParquetWriter(indexName, snapshot, part);
-        while (rs.next()) {
-            try {
-                final GcdIssueData doc = new GcdIssueData();
-                doc.setUnixTime(unixTime);
-                addLong(rs, "issue_id", id -> doc.setIssueId(id));
-                addOptionalString(rs, "issue_number_raw", num -> doc.setIssueNumberRaw(num));
-                final String number = rs.getString("issue_number_raw");
-                try {
-                    doc.setIssueNumber(Integer.parseInt(number));
-                } catch (NumberFormatException e) {
-                    // some numbers are not numeric in the data set, don't warn
-                }
-                addOptionalDate(rs, "pubdateraw", pubdate -> doc.setPublicationDate(pubdate));
-                addOptionalString(rs, "price", price -> doc.setPriceRaw(price));
-                addOptionalMultiString(rs, "price", prices -> doc.setPrice(prices));
-                addOptionalInt(rs, "page_count", pageCount -> doc.setPageCount(pageCount));
-                addOptionalString(rs, "indicia_frequency", freq -> doc.setIndiciaFrequency(freq));
-                addOptionalString(rs, "isbn", isbn -> doc.setIsbn(isbn));
-                addOptionalString(rs, "variant_name", name -> doc.setVariantName(name));
-                addOptionalLong(rs, "variant_of_issue_id", vid -> doc.setVariantOfIssueId(vid));
-                addOptionalString(rs, "barcode", barcode -> doc.setBarcode(barcode));
-                addOptionalString(rs, "title", title -> doc.setTitle(title));
-                addOptionalDate(rs, "onsaledateraw", osdate -> doc.setOnSaleDate(osdate));
-                addOptionalString(rs, "rating", rating -> doc.setRating(rating));
-                if (schema.isVolumeNotPrinted()) {
-                    addOptionalInt(rs, "volume_not_printed", vnp -> doc.setVolumeNotPrinted(vnp == 1));
-                }
-                addOptionalMultiString(rs, "editing", editors -> doc.setEditing(editors));
-                addOptionalString(rs, "notes", notes -> doc.setNotes(notes));
-                addOptionalDateFromTimestamp(rs, "created", created -> doc.setCreated(created));
-                addOptionalDateFromTimestamp(rs, "modified", modified -> doc.setModified(modified));
-                addLong(rs, "series_id", id -> doc.setSeriesId(id));
-                addOptionalString(rs, "series_name", name -> doc.setSeriesName(name));
-                addOptionalInt(rs, "series_year_began", began -> doc.setSeriesYearBegan(began));
-                addOptionalInt(rs, "series_year_ended", ended -> doc.setSeriesYearEnded(ended));
-                addOptionalInt(rs, "series_is_current", cur -> doc.setSeriesIsCurrent(cur == 1));
-                addOptionalStringFromId(rs, "scountryid", metadata.getCountryCodeMap(), code -> doc.setSeriesCountryCode(code));
-                addOptionalStringFromId(rs, "slangid", metadata.getLanguageCodeMap(), code -> doc.setSeriesLanguageCode(code));
-                addOptionalInt(rs, "series_has_gallery", hasgal -> doc.setSeriesHasGallery(hasgal == 1));
-                addOptionalInt(rs, "series_is_comics_publication", ispub -> doc.setSeriesIsComicsPublication(ispub == 1));
-                addOptionalString(rs, "series_color", color -> doc.setSeriesColor(color));
-                addOptionalString(rs, "series_dimensions", dim -> doc.setSeriesDimensions(dim));
-                addOptionalString(rs, "series_paper_stock", stock -> doc.setSeriesPaperStock(stock));
-                addOptionalMultiString(rs, "series_binding", bindings -> doc.setSeriesBinding(bindings));
-                addOptionalString(rs, "series_publishing_format", fmt -> doc.setSeriesPublishingFormat(fmt));
-                if (schema.isPublicationType()) {
-                    addOptionalStringFromId(rs, "spubtypeid", metadata.getPublicationTypeMap(), type -> doc.setSeriesPublishingType(type));
-                }
-                if (schema.isSeriesIsSingleton()) {
-                    addOptionalInt(rs, "series_is_singleton", sing -> doc.setSeriesIsSingleton(sing == 1));
-                }
-                addOptionalDateFromTimestamp(rs, "series_created", created -> doc.setSeriesCreated(created));
-                addOptionalDateFromTimestamp(rs, "series_modified", modified -> doc.setSeriesModified(modified));
-                addOptionalLong(rs, "publisher_id", id -> doc.setPublisherId(id));
-                addOptionalString(rs, "publisher_name", name -> doc.setPublisherName(name));
-                addOptionalStringFromId(rs, "pubcountryid", metadata.getCountryCodeMap(), code -> doc.setPublisherCountryCode(code));
-                addOptionalDateFromTimestamp(rs, "publisher_created", created -> doc.setPublisherCreated(created));
-                addOptionalDateFromTimestamp(rs, "publisher_modified", modified -> doc.setPublisherModified(modified));
-                addOptionalString(rs, "publisher_url", url -> doc.setPublisherUrl(url));
-                addOptionalLong(rs, "indicia_publisher_id", id -> doc.setIndiciaPublisherId(id));
-                addOptionalString(rs, "indicia_publisher_name", name -> doc.setIndiciaPublisherName(name));
-                addOptionalStringFromId(rs, "indpubcountryid", metadata.getCountryCodeMap(), code -> doc.setIndiciaPublisherCountryCode(code));
-                addOptionalLong(rs, "indicia_publisher_parent_id", id -> doc.setIndiciaPublisherParentId(id));
-                addOptionalInt(rs, "indicia_publisher_year_began", began -> doc.setIndiciaPublisherYearBegan(began));
-                addOptionalInt(rs, "indicia_publisher_year_ended", ended -> doc.setIndiciaPublisherYearEnded(ended));
-                addOptionalInt(rs, "indicia_publisher_is_surrogate", sur -> doc.setIndiciaPublisherIsSurrogate(sur == 1));
-                addOptionalString(rs, "indicia_publisher_url", url -> doc.setIndiciaPublisherUrl(url));
-                addOptionalDateFromTimestamp(rs, "indicia_publisher_created", created -> doc.setIndiciaPublisherCreated(created));
-                addOptionalDateFromTimestamp(rs, "indicia_publisher_modified", modified -> doc.setIndiciaPublisherModified(modified));
-                addOptionalLong(rs, "brand_id", id -> doc.setBrandId(id));
-                addOptionalString(rs, "brand_name", name -> doc.setBrandName(name));
-                addOptionalString(rs, "brand_url", url -> doc.setBrandUrl(url));
-                addOptionalDateFromTimestamp(rs, "brand_created", created -> doc.setBrandCreated(created));
-                addOptionalDateFromTimestamp(rs, "brand_modified", modified -> doc.setBrandModified(modified));
-                if (rs.getObject("story_id") != null) {
-                    addOptionalLong(rs, "story_id", id -> doc.setStoryId(id));
-                    addOptionalString(rs, "story_title", title -> doc.setStoryTitle(title));
-                    addOptionalString(rs, "story_feature", feature -> doc.setStoryFeature(feature));
-                    addOptionalInt(rs, "story_sequence_number", num -> doc.setStorySequenceNumber(num));
-                    addOptionalInt(rs, "story_page_count", pageCount -> doc.setStoryPageCount(pageCount));
-                    final long storyId = rs.getLong("story_id");
-                    final GcdStoryCredit credit = storyCredits.get(storyId);
-                    if (credit != null) {
-                        doc.setStoryScript(credit.getNames(GcdStoryCredit.CreditType.SCRIPT));
-                        doc.setStoryScriptCreatorId(credit.getIds(GcdStoryCredit.CreditType.SCRIPT));
-                        doc.setStoryPencils(credit.getNames(GcdStoryCredit.CreditType.PENCILS));
-                        doc.setStoryPencilsCreatorId(credit.getIds(GcdStoryCredit.CreditType.PENCILS));
-                        doc.setStoryInks(credit.getNames(GcdStoryCredit.CreditType.INKS));
-                        doc.setStoryInksCreatorId(credit.getIds(GcdStoryCredit.CreditType.INKS));
-                        doc.setStoryColors(credit.getNames(GcdStoryCredit.CreditType.COLORS));
-                        doc.setStoryColorsCreatorId(credit.getIds(GcdStoryCredit.CreditType.COLORS));
-                        doc.setStoryLetters(credit.getNames(GcdStoryCredit.CreditType.LETTERS));
-                        doc.setStoryLettersCreatorId(credit.getIds(GcdStoryCredit.CreditType.LETTERS));
-                        doc.setStoryEditing(credit.getNames(GcdStoryCredit.CreditType.STORY_EDITING));
-                        doc.setStoryEditingCreatorId(credit.getIds(GcdStoryCredit.CreditType.STORY_EDITING));
-                        doc.setStoryPainting(credit.getNames(GcdStoryCredit.CreditType.PAINTING));
-                        doc.setStoryPaintingCreatorId(credit.getIds(GcdStoryCredit.CreditType.PAINTING));
-
-                        doc.setStoryCreditSource("gcd_story_credit");
-                    } else {
-                        addOptionalMultiString(rs, "story_script", scriptors -> doc.setStoryScript(scriptors));
-                        addOptionalMultiString(rs, "story_pencils", artists -> doc.setStoryPencils(artists));
-                        addOptionalMultiString(rs, "story_inks", inkers -> doc.setStoryInks(inkers));
-                        addOptionalMultiString(rs, "story_colors", colorists -> doc.setStoryColors(colorists));
-                        addOptionalMultiString(rs, "story_letters", letterers -> doc.setStoryLetters(letterers));
-                        addOptionalMultiString(rs, "story_editing", editors -> doc.setStoryEditing(editors));
-
-                        doc.setStoryCreditSource("gcd_story");
-                    }
-                    addOptionalMultiString(rs, "story_genre", genres -> doc.setStoryGenre(genres));
-                    addOptionalMultiString(rs, "story_characters", characters -> doc.setStoryCharacters(characters));
-                    addOptionalStringFromId(rs, "strtypeid", metadata.getStoryTypeMap(), type -> doc.setStoryType(type));
-                    addOptionalString(rs, "story_job_number", num -> doc.setStoryJobNumber(num));
-                    if (schema.isStoryFirstLine()) {
-                        addOptionalString(rs, "story_first_line", line -> doc.setStoryFirstLine(line));
-                    }
-                    addOptionalDateFromTimestamp(rs, "story_created", created -> doc.setStoryCreated(created));
-                    addOptionalDateFromTimestamp(rs, "story_modified", modified -> doc.setStoryModified(modified));
-                }
-                writer.write(doc);
-                if (++count % 2000000 == 0) {
-                    log.info("Processed document #" + count);
-                    writer.close();
-                    writer = getParquetWriter(indexName, snapshot, ++part);
-                }
-            } catch (SQLException e) {
-                log.warn("Skipping document due to: " + e.getMessage());
-            }
+    /**
+     * The dimension tables cached for the DIMENSION_CACHE extraction strategy, or null.
+     */
+    private static DimensionCache loadDimensionCache(final Connection conn, final Gcdatabase database, final ExtractionPlan plan)
+            throws SQLException {
+        if (database.getExtractionStrategy() != ExtractionStrategy.DIMENSION_CACHE) {
+            return null;
         }
-        writer.close();
-        rs.close();
-        st.close();
-        conn.close();
-        return count;
+        return DimensionCache.load(conn, plan.getSeriesQuery(), plan.getPublisherQuery(), plan.getIndiciaPublisherQuery(),
+                plan.getBrandQuery());
     }
 
-    private static void addOptionalCredit(GcdStoryCredit credit,
-            BiConsumer<String, List<CharSequence>> nameConsumer, BiConsumer<String, List<Long>> idConsumer) {
-        for (GcdStoryCredit.CreditType type : GcdStoryCredit.CreditType.values()) {
-            if (type.getField() != null) {
-                final List<CharSequence> creditNames = credit.getNames(type);
-                if (!creditNames.isEmpty()) {
-                    nameConsumer.accept(type.getField(), creditNames);
-                    final List<Long> creditIds = credit.getIds(type);
-                    idConsumer.accept(type.getField() + "_creator_id", creditIds);
-                }
-            }
-        }
+    private static ResultSetRow newRow(final ResultSet rs, final DimensionCache dimensions) {
+        return dimensions == null ? new ResultSetRow(rs) : dimensions.newRow(rs);
     }
 
-    private static String[] addOptionalMultiString(ResultSet rs, String field, Consumer<List<CharSequence>> consumer) throws SQLException {
-        try {
-            final String value = rs.getString(field);
-            if (value != null) {
-                String[] values = value.split("\\s*;\\s*");
-                consumer.accept(Arrays.asList(values));
-                return values;
-            }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
+    /**
+     * The rows an output is extracted from, with their story credits: a query of its own, or its feed of a query
+     * shared with other outputs.
+     */
+    private interface RowSource {
+        ResultSetRow open() throws SQLException;
+
+        GcdStoryCredit.Lookup getStoryCredits();
+
+        void close() throws SQLException;
+
+        /**
+         * Whether the documents written from these rows count towards the run's documents, which with several
+         * outputs only those of the first do.
+         */
+        default boolean countsDocuments() {
+            return true;
         }
-        return new String[0];
     }
 
-    private static void addOptionalStringFromId(ResultSet rs, String rawField, Map<Integer, String> lookupMap, Consumer<String> consumer) {
-        try {
-            final int id = rs.getInt(rawField);
-            if (lookupMap.containsKey(id)) {
-                consumer.accept(lookupMap.get(id));
+    /**
+     * The rows of the query, run on the connection, which is closed with them.
+     */
+    private static RowSource queryRows(final Connection conn, final Gcdatabase database, final DimensionCache dimensions,
+            final GcdStoryCredit.Lookup storyCredits, final String query) {
+        return new RowSource() {
+            private PreparedStatement st;
+            private ResultSet rs;
+
+            @Override
+            public ResultSetRow open() throws SQLException {
+                st = prepareExtractionStatement(conn, database, query);
+                rs = st.executeQuery();
+                return newRow(rs, dimensions);
             }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-        }
+
+            @Override
+            public GcdStoryCredit.Lookup getStoryCredits() {
+                return storyCredits;
+            }
+
+            @Override
+            public void close() throws SQLException {
+                rs.close();
+                st.close();
+                conn.close();
+            }
+        };
     }
 
-    private static void addOptionalString(final ResultSet rs, final String field, final Consumer<String> consumer) throws SQLException {
-        try {
-            final String value = rs.getString(field);
-            if (value != null) {
-                consumer.accept(value);
+    private static RowSource feedRows(final RowFanOut.Feed feed, final boolean countsDocuments) {
+        return new RowSource() {
+            @Override
+            public ResultSetRow open() {
+                return feed;
             }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-        }
+
+            @Override
+            public GcdStoryCredit.Lookup getStoryCredits() {
+                return feed.getStoryCredits();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean countsDocuments() {
+                return countsDocuments;
+            }
+        };
     }
 
-    private static void addLong(final ResultSet rs, final String field, final LongConsumer consumer) throws SQLException {
-        consumer.accept(rs.getLong(field));
+    private interface OutputExtractor {
+        int extract(OutputType outputType, RowSource source, int partition, int concurrentShards) throws SQLException, IOException;
     }
 
-    private static void addLongWithDefault(final ResultSet rs, final String field, final long defaultValue, final LongConsumer consumer) {
+    /**
+     * Extracts the rows of the source into every output type and returns the number of documents written to the
+     * first. With several output types the rows are read once, in this thread, and fanned out through a
+     * {@link RowFanOut} to an extraction per output type on a thread of its own; the first output that fails stops
+     * the read, and its failure is the one thrown.
+     *
+     * @param partition the extraction partition whose rows these are, or -1
+     * @param concurrentShards the number of partitions being extracted at the same time
+     */
+    private static int extractOutputs(final List<OutputType> outputTypes, final RowSource source, final int partition,
+            final int concurrentShards, final int queueSize, final OutputExtractor extractor) throws SQLException, IOException {
+        if (outputTypes.size() == 1) {
+            return extractor.extract(outputTypes.get(0), source, partition, concurrentShards);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(outputTypes.size(),
+                new ThreadFactoryBuilder().setNameFormat(Thread.currentThread().getName() + "-output-%d").build());
         try {
-            final Long value = rs.getLong(field);
-            if (value == null) {
-                consumer.accept(defaultValue);
-            } else {
-                consumer.accept(value);
+            final RowFanOut fanOut;
+            try {
+                fanOut = new RowFanOut(source.open(), source.getStoryCredits(), outputTypes.size(), queueSize);
+            } catch (SQLException e) {
+                source.close();
+                throw e;
+            }
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < outputTypes.size(); i++) {
+                final OutputType outputType = outputTypes.get(i);
+                final RowFanOut.Feed feed = fanOut.getFeed(i);
+                final boolean countsDocuments = i == 0;
+                results.add(executor.submit(() -> {
+                    try {
+                        final int count = extractor.extract(outputType, feedRows(feed, countsDocuments), partition, concurrentShards);
+                        log.info("Wrote " + count + " " + outputType + " documents");
+                        return count;
+                    } finally {
+                        feed.close();
+                    }
+                }));
+            }
+            try {
+                fanOut.read(metrics);
+            } finally {
+                source.close();
+            }
+            // the outputs that stopped the read failed for reasons of their own, the others because it stopped
+            for (int i = 0; i < results.size(); i++) {
+                if (fanOut.getFeed(i).isAbandoned()) {
+                    results.get(i).get();
+                }
+            }
+            final List<Integer> counts = new ArrayList<>();
+            for (Future<Integer> result : results) {
+                counts.add(result.get());
             }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-            consumer.accept(defaultValue);
+            return counts.get(0);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), SQLException.class, IOException.class);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted extracting " + outputTypes, e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private static void addIntWithDefault(final ResultSet rs, final String field, final int defaultValue, final LongConsumer consumer) {
-        try {
-            final Integer value = rs.getInt(field);
-            if (value == null) {
-                consumer.accept(defaultValue);
-            } else {
-                consumer.accept(value);
-            }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-            consumer.accept(defaultValue);
+    private static int extractDataToFlamdex(
+            final RowSource source,
+            final Gcdatabase database,
+            final ExtractionPlan plan,
+            final GcdMetadata metadata,
+            final FlamdexShardWriter writer,
+            final long unixTime
+    )
+            throws SQLException, IOException {
+        final AtomicInteger count = new AtomicInteger();
+        final FlamdexPostingsWriter postings = writer.getPostingsWriter();
+        if (postings != null && database.getPipelineThreads() <= 0) {
+            // a serial run adds each row's terms straight to the postings, as the document the writer then ends
+            extractDocuments(source, database,
+                    labels -> {
+                        final ExtractionPlan.Binding binding = plan.bind(labels, OutputType.FLAMDEX, metadata, unixTime, metrics);
+                        return (row, credit) -> {
+                            try {
+                                binding.addFlamdexTerms(row, credit, postings);
+                            } catch (SQLException e) {
+                                postings.discardDocument();
+                                throw e;
+                            }
+                            return postings;
+                        };
+                    },
+                    terms -> {
+                        logProgress(count);
+                        terms.endDocument();
+                    });
+            return count.get();
         }
+        extractDocuments(source, database,
+                labels -> plan.bind(labels, OutputType.FLAMDEX, metadata, unixTime, metrics)::buildFlamdexDocument,
+                doc -> {
+                    logProgress(count);
+                    writer.addDocument(doc);
+                });
+        return count.get();
     }
 
-    private static void addOptionalInt(final ResultSet rs, final String field, final IntConsumer consumer) {
-        try {
-            consumer.accept(rs.getInt(field));
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
+    private static void logProgress(final AtomicInteger count) {
+        if (count.incrementAndGet() % 10000 == 0) {
+            log.info("Processing document #" + count.get());
         }
     }
 
-    private static void addOptionalLong(final ResultSet rs, final String field, final LongConsumer consumer) {
-        try {
-            consumer.accept(rs.getLong(field));
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
+    private static int extractDataToParquet(
+            final RowSource source,
+            final Gcdatabase database,
+            final ExtractionPlan plan,
+            final GcdMetadata metadata,
+            final String directory,
+            final int partition,
+            final ParquetProfile profile,
+            final long unixTime
+    )
+            throws SQLException, IOException {
+        final BuilderFactory<GcdIssueData> builder =
+                labels -> plan.bind(labels, OutputType.PARQUET, metadata, unixTime, metrics)::buildIssueData;
+        if (profile.getLayout() == ParquetLayout.NESTED) {
+            final NestedIssueWriter writer = new NestedIssueWriter(
+                    newParquetWriter(directory, partition, profile, GcdIssueWithStories.getClassSchema()));
+            extractDocuments(source, database, builder, writer::write);
+            metrics.phase("close").run(writer::close);
+            return writer.getCount();
+        }
+        if (profile.getObjectModel() == ParquetObjectModel.DIRECT) {
+            final ParquetPartWriter<IssueRowWriteSupport.IssueRow> writer =
+                    new ParquetPartWriter<>(directory, partition, 0, profile, IssueRowWriteSupport.Builder::new);
+            final BuilderFactory<IssueRowWriteSupport.IssueRow> rows = labels -> {
+                final ExtractionPlan.Binding binding = plan.bind(labels, OutputType.PARQUET, metadata, unixTime, metrics);
+                if (database.getPipelineThreads() > 0) {
+                    return (row, credit) -> new IssueRowWriteSupport.IssueRow(binding).set(row, credit);
+                }
+                // a serial run writes each row before it reads the next, so one IssueRow serves them all
+                return new IssueRowWriteSupport.IssueRow(binding)::set;
+            };
+            extractDocuments(source, database, rows, writer::write);
+            metrics.phase("close").run(writer::close);
+            return writer.getCount();
         }
+        final ParquetRecordWriter<GcdIssueData> writer = newParquetWriter(directory, partition, profile, GcdIssueData.getClassSchema());
+        extractDocuments(source, database, builder, writer::write);
+        metrics.phase("close").run(writer::close);
+        return writer.getCount();
     }
 
-    private static void addOptionalDate(final ResultSet rs, final String rawField, final IntConsumer consumer) {
-        try {
-            final String dateString = rs.getString(rawField);
-            final Matcher m = DATE_PATTERN.matcher(dateString);
-            if (m.matches()) {
-                consumer.accept(Integer.parseInt(String.format("%s%s%s", m.group(1), m.group(2), m.group(3))));
-            } else {
-                consumer.accept(-1);
-            }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-            consumer.accept(-1);
-        } catch (NumberFormatException e) {
-            log.warn(e.getMessage());
-            consumer.accept(-1);
+    private static int extractDataToArrow(
+            final RowSource source,
+            final Gcdatabase database,
+            final ExtractionPlan plan,
+            final GcdMetadata metadata,
+            final String directory,
+            final int partition,
+            final ArrowProfile profile,
+            final long unixTime
+    )
+            throws SQLException, IOException {
+        final ArrowPartWriter writer = new ArrowPartWriter(directory, partition, profile, metadata,
+                plan.getCodecs(OutputType.ARROW));
+        extractDocuments(source, database,
+                labels -> plan.bind(labels, OutputType.ARROW, metadata, unixTime, metrics)::buildIssueData, writer::write);
+        metrics.phase("close").run(writer::close);
+        return writer.getCount();
+    }
+
+    private static <T extends IndexedRecord> ParquetRecordWriter<T> newParquetWriter(final String directory, final int partition,
+            final ParquetProfile profile, final Schema schema) {
+        final ParquetRecordWriter<T> writer = profile.getPartitionBy().isEmpty()
+                ? new ParquetPartWriter<>(directory, partition, profile, schema)
+                : new PartitionedParquetWriter<>(directory, partition, profile, schema);
+        if (profile.getSortBy().isEmpty() && profile.getPartitionBy().isEmpty()) {
+            return writer;
         }
+        // partitioned records are clustered by partition as well
+        return new SortingParquetWriter<>(writer, directory, partition, profile, schema);
     }
 
-    private static void addOptionalDateFromTimestamp(final ResultSet rs, final String field, final IntConsumer consumer) {
-        try {
-            final long unixTime = rs.getInt(field);
-            if (unixTime > 0) {
-                final Date time = new Date(unixTime * 1000L);
-                consumer.accept(Integer.parseInt(COMPARABLE_DATE_FORMAT.format(time)));
-            } else {
-                consumer.accept(-1);
+    private static boolean isNested(final GcdConfiguration config) {
+        return config.getParquet().getLayout() == ParquetLayout.NESTED;
+    }
+
+    /**
+     * The builder of the documents of rows with the given column labels, which is bound once the query has run.
+     */
+    private interface BuilderFactory<D> {
+        ExtractionPipeline.DocumentBuilder<D> bind(String[] columnLabels) throws SQLException;
+    }
+
+    /**
+     * Reads the rows of the source and writes a document for each, either in this thread or, when pipelineThreads is
+     * set, through an {@link ExtractionPipeline}. Rows that cannot be read are skipped with a warning.
+     * Counts as the "extract" phase, and the time reading, building and writing as the "read", "build" and
+     * "write" phases.
+     */
+    private static <D> int extractDocuments(
+            final RowSource source,
+            final Gcdatabase database,
+            final BuilderFactory<D> builderFactory,
+            final ExtractionPipeline.DocumentWriter<D> writer
+    )
+            throws SQLException, IOException {
+        final RunMetrics.Phase extract = metrics.phase("extract");
+        final int count = extract.<Integer, SQLException, IOException>time(
+                () -> writeDocuments(source, database, builderFactory, writer));
+        extract.addRows(count);
+        return count;
+    }
+
+    private static <D> int writeDocuments(
+            final RowSource source,
+            final Gcdatabase database,
+            final BuilderFactory<D> builderFactory,
+            final ExtractionPipeline.DocumentWriter<D> writer
+    )
+            throws SQLException, IOException {
+        final ResultSetRow row = source.open();
+        final ExtractionPipeline.DocumentBuilder<D> builder = builderFactory.bind(row.getColumnLabels());
+        final GcdStoryCredit.Lookup storyCredits = source.getStoryCredits();
+        final ExtractionPipeline.DocumentWriter<D> countingWriter;
+        if (source.countsDocuments()) {
+            countingWriter = doc -> {
+                writer.write(doc);
+                metrics.recordDocument();
+            };
+        } else {
+            countingWriter = writer;
+        }
+        int count = 0;
+        if (database.getPipelineThreads() > 0) {
+            count = new ExtractionPipeline(database.getPipelineThreads(), database.getPipelineQueueSize(), metrics)
+                    .run(row, storyCredits, builder, countingWriter);
+        } else {
+            final RunMetrics.Phase read = metrics.phase("read");
+            final RunMetrics.Phase build = metrics.phase("build");
+            final RunMetrics.Phase write = metrics.phase("write");
+            long readStart = System.nanoTime();
+            while (row.next()) {
+                try {
+                    final GcdStoryCredit credit = storyCredits.forRow(row);
+                    final long buildStart = System.nanoTime();
+                    read.addWallNanos(buildStart - readStart);
+                    final D doc = builder.build(row, credit);
+                    final long writeStart = System.nanoTime();
+                    build.addWallNanos(writeStart - buildStart);
+                    countingWriter.write(doc);
+                    readStart = System.nanoTime();
+                    write.addWallNanos(readStart - writeStart);
+                    count++;
+                } catch (SQLException e) {
+                    metrics.recordSkippedRow(e);
+                    readStart = System.nanoTime();
+                }
             }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-            consumer.accept(-1);
+            read.addRows(count);
+            build.addRows(count);
+            write.addRows(count);
         }
+        source.close();
+        return count;
     }
 }
@@ -0,0 +1,87 @@
+package org.gcd.etl;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields to extract: those of the default mapping in fields.yml next to this class, limited to the fields
+ * named in include if it is not empty, plus the fields declared here, which replace default fields of the same name.
+ */
+public final class MappingProfile {
+    private static final String DEFAULTS = "fields.yml";
+
+    // the names of the default fields to extract, or empty for all of them
+    private List<String> include = new ArrayList<>();
+    private List<FieldMapping> fields = new ArrayList<>();
+    // the most values each field marked intern shares, for the run
+    private int dictionarySize = 1 << 16;
+
+    public List<String> getInclude() {
+        return include;
+    }
+
+    public void setInclude(List<String> include) {
+        this.include = include;
+    }
+
+    public List<FieldMapping> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<FieldMapping> fields) {
+        this.fields = fields;
+    }
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    public void setDictionarySize(int dictionarySize) {
+        this.dictionarySize = dictionarySize;
+    }
+
+    /**
+     * The fields to extract, in the order of the default mapping and then of the fields declared here.
+     */
+    public List<FieldMapping> resolve() {
+        final Map<String, FieldMapping> resolved = new LinkedHashMap<>();
+        for (FieldMapping field : loadDefaults().getFields()) {
+            resolved.put(field.getField(), field);
+        }
+        if (!include.isEmpty()) {
+            for (String name : include) {
+                if (!resolved.containsKey(name)) {
+                    throw new IllegalArgumentException("Cannot include " + name + ", which is not a default field");
+                }
+            }
+            resolved.keySet().retainAll(include);
+        }
+        for (FieldMapping field : fields) {
+            resolved.put(field.getField(), field);
+        }
+        return new ArrayList<>(resolved.values());
+    }
+
+    private static MappingProfile loadDefaults() {
+        try (InputStream in = MappingProfile.class.getResourceAsStream(DEFAULTS)) {
+            if (in == null) {
+                throw new IllegalStateException("No " + DEFAULTS + " on the classpath");
+            }
+            return new Yaml().loadAs(in, MappingProfile.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappingProfile{" + "include=" + include + ", fields=" + fields + ", dictionarySize=" + dictionarySize + '}';
+    }
+}
@@ -0,0 +1,33 @@
+package org.gcd.etl;
+
+/**
+ * Settings of the run report: where to write it, and whether to also publish the metrics over JMX while
+ * the job runs.
+ */
+public final class MetricsProfile {
+    // null to write it next to the output: INDEX.report.json, or _report.json in the Parquet directory
+    private String reportFile;
+    // register an org.gcd.etl:type=RunMetrics MBean
+    private boolean jmx = false;
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsProfile{" + "reportFile='" + reportFile + '\'' + ", jmx=" + jmx + '}';
+    }
+}
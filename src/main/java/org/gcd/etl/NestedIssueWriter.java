@@ -0,0 +1,93 @@
+package org.gcd.etl;
+
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups the issue x story rows of one issue, as built for the FLAT layout, into a single
+ * {@link GcdIssueWithStories} with a {@link GcdStoryData} per story, ordered by sequence number. The rows of
+ * an issue must be adjacent, as they are when the query is ordered by issue id.
+ */
+public final class NestedIssueWriter implements AutoCloseable {
+    private static final String STORY_PREFIX = "story_";
+    private static final Comparator<GcdStoryData> BY_SEQUENCE_NUMBER =
+            Comparator.comparing(GcdStoryData::getSequenceNumber, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final ParquetRecordWriter<GcdIssueWithStories> writer;
+    // for each GcdIssueData field, its position in GcdIssueWithStories, or -1
+    private final int[] issueFields;
+    // for each GcdIssueData field, its position in GcdStoryData, or -1
+    private final int[] storyFields;
+
+    private GcdIssueWithStories issue;
+    private List<GcdStoryData> stories;
+
+    public NestedIssueWriter(final ParquetRecordWriter<GcdIssueWithStories> writer) {
+        this.writer = writer;
+        final List<Schema.Field> rowFields = GcdIssueData.getClassSchema().getFields();
+        this.issueFields = new int[rowFields.size()];
+        this.storyFields = new int[rowFields.size()];
+        for (Schema.Field field : rowFields) {
+            issueFields[field.pos()] = getPosition(GcdIssueWithStories.getClassSchema(), field.name());
+            storyFields[field.pos()] = field.name().startsWith(STORY_PREFIX)
+                    ? getPosition(GcdStoryData.getClassSchema(), field.name().substring(STORY_PREFIX.length()))
+                    : -1;
+        }
+    }
+
+    private static int getPosition(final Schema schema, final String name) {
+        final Schema.Field field = schema.getField(name);
+        return field != null ? field.pos() : -1;
+    }
+
+    public void write(final GcdIssueData row) throws IOException {
+        if (issue == null || issue.getIssueId() != row.getIssueId()) {
+            if (issue != null && row.getIssueId() < issue.getIssueId()) {
+                throw new IOException("Rows are not ordered by issue id: " + row.getIssueId() + " after " + issue.getIssueId());
+            }
+            flush();
+            issue = new GcdIssueWithStories();
+            stories = new ArrayList<>();
+            for (int i = 0; i < issueFields.length; i++) {
+                if (issueFields[i] >= 0) {
+                    issue.put(issueFields[i], row.get(i));
+                }
+            }
+        }
+        if (row.getStoryId() != null) {
+            final GcdStoryData story = new GcdStoryData();
+            for (int i = 0; i < storyFields.length; i++) {
+                if (storyFields[i] >= 0) {
+                    story.put(storyFields[i], row.get(i));
+                }
+            }
+            stories.add(story);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (issue != null) {
+            stories.sort(BY_SEQUENCE_NUMBER);
+            issue.setStories(stories);
+            writer.write(issue);
+            issue = null;
+        }
+    }
+
+    /**
+     * The number of issues written.
+     */
+    public int getCount() {
+        return writer.getCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        writer.close();
+    }
+}
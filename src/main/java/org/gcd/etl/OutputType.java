@@ -1,9 +1,33 @@
 package org.gcd.etl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * @author jack@indeed.com (Jack Humphrey)
  */
 public enum OutputType {
     FLAMDEX,
-    PARQUET
+    PARQUET,
+    ARROW;
+
+    /**
+     * Parses a comma-separated list of output types, such as FLAMDEX,PARQUET, written in one pass.
+     */
+    public static List<OutputType> parseList(final String outputTypes) {
+        final List<OutputType> parsed = new ArrayList<>();
+        for (String name : outputTypes.split(",")) {
+            final OutputType outputType = valueOf(name.trim());
+            if (!parsed.contains(outputType)) {
+                parsed.add(outputType);
+            }
+        }
+        return parsed;
+    }
+
+    public static String toString(final Collection<OutputType> outputTypes) {
+        return outputTypes.stream().map(OutputType::name).collect(Collectors.joining(","));
+    }
 }
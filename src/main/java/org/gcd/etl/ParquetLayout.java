@@ -0,0 +1,11 @@
+package org.gcd.etl;
+
+/**
+ * The record layout of the PARQUET output.
+ */
+public enum ParquetLayout {
+    // a GcdIssueData record per issue x story row
+    FLAT,
+    // a GcdIssueWithStories record per issue, holding its stories and their credits
+    NESTED
+}
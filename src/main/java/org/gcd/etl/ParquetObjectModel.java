@@ -0,0 +1,11 @@
+package org.gcd.etl;
+
+/**
+ * How the PARQUET output shreds records into columns.
+ */
+public enum ParquetObjectModel {
+    // builds an Avro record per row and writes it with AvroParquetWriter
+    AVRO,
+    // writes the columns of a FLAT record straight from the row, with IssueRowWriteSupport
+    DIRECT
+}
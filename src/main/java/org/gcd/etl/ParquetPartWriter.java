@@ -0,0 +1,157 @@
+package org.gcd.etl;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes records of a schema, {@link GcdIssueData} or {@link GcdIssueWithStories}, or rows through a write
+ * support of their own, to a sequence of part files in a snapshot directory such as
+ * ./index/snapshot=yyyymmdd, rolling over to a new part after the profile's number of records or once
+ * a part reaches its target size. Parts are written under the directory's _temporary directory, which readers
+ * skip, and renamed into place on close, so a failed run never leaves a partial part behind.
+ */
+public class ParquetPartWriter<T> implements ParquetRecordWriter<T> {
+    private static final Logger log = Logger.getLogger(ParquetPartWriter.class);
+
+    // records between checks of the target file size, as getDataSize() walks the buffered row group's columns
+    private static final int SIZE_CHECK_INTERVAL = 1000;
+
+    private final String directory;
+    // -1 when not writing one of several partitions
+    private final int partition;
+    private final ParquetProfile profile;
+    // makes the builder of the writer of a part file
+    private final Function<Path, ParquetWriter.Builder<T, ?>> builders;
+
+    private final List<Path> parts = new ArrayList<>();
+
+    private ParquetWriter<T> writer;
+    private int part = 0;
+    private int count = 0;
+    private int partCount = 0;
+
+    public ParquetPartWriter(final String directory, final ParquetProfile profile, final Schema schema) {
+        this(directory, -1, profile, schema);
+    }
+
+    public ParquetPartWriter(final String directory, final int partition, final ParquetProfile profile, final Schema schema) {
+        this(directory, partition, 0, profile, schema);
+    }
+
+    /**
+     * @param firstPart the number of the first part, to add parts to a directory after those written before
+     */
+    public ParquetPartWriter(final String directory, final int partition, final int firstPart, final ParquetProfile profile,
+            final Schema schema) {
+        this(directory, partition, firstPart, profile, file -> AvroParquetWriter.<T>builder(file).withSchema(schema));
+    }
+
+    /**
+     * @param builders makes the builder of the writer of a part file, for records other than Avro ones
+     */
+    public ParquetPartWriter(final String directory, final int partition, final int firstPart, final ParquetProfile profile,
+            final Function<Path, ParquetWriter.Builder<T, ?>> builders) {
+        this.directory = directory;
+        this.partition = partition;
+        this.part = firstPart;
+        this.profile = profile;
+        this.builders = builders;
+    }
+
+    @Override
+    public void write(final T doc) throws IOException {
+        if (writer == null) {
+            writer = openWriter(part);
+        }
+        writer.write(doc);
+        count++;
+        partCount++;
+        // the data size includes the buffered row group, so parts end up close to the target
+        if ((profile.getRecordsPerPart() > 0 && partCount >= profile.getRecordsPerPart())
+                || (profile.getTargetFileSize() > 0 && partCount % SIZE_CHECK_INTERVAL == 0
+                        && writer.getDataSize() >= profile.getTargetFileSize())) {
+            log.info("Processed document #" + count);
+            writer.close();
+            writer = null;
+            partCount = 0;
+            part++;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The number of the next part to be written.
+     */
+    public int getNextPart() {
+        return part;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer == null && count == 0) {
+            // always leave at least one (empty) part behind, as a serial run does
+            writer = openWriter(part);
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            part++;
+        }
+        commit();
+    }
+
+    // renames the parts written so far into place
+    private void commit() throws IOException {
+        if (parts.isEmpty()) {
+            return;
+        }
+        final FileSystem fs = parts.get(0).getFileSystem(new Configuration());
+        for (Path path : parts) {
+            final Path target = new Path(directory, path.getName());
+            fs.delete(target, false);
+            if (!fs.rename(path, target)) {
+                throw new IOException("Could not rename " + path + " to " + target);
+            }
+        }
+        parts.clear();
+    }
+
+    private String getName(final int part) {
+        final String fmtPart;
+        if (partition < 0) {
+            fmtPart = String.format("%04d", part);
+        } else {
+            fmtPart = String.format("%04d-%04d", partition, part);
+        }
+        return "part-" + fmtPart + ".parquet";
+    }
+
+    private ParquetWriter<T> openWriter(final int part) throws IOException {
+        final Path filePath = new Path(directory + "/_temporary/" + getName(part));
+        parts.add(filePath);
+        return builders.apply(filePath)
+                // replaces what a failed run left behind
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .withCompressionCodec(profile.getCompression())
+                .withRowGroupSize(profile.getRowGroupSize())
+                .withPageSize(profile.getPageSize())
+                .withDictionaryPageSize(profile.getDictionaryPageSize())
+                .withDictionaryEncoding(profile.isEnableDictionary())
+                .build();
+    }
+}
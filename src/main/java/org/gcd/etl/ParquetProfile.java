@@ -0,0 +1,154 @@
+package org.gcd.etl;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the PARQUET output: record layout and object model, codec, row group, page and dictionary sizes, when to start a
+ * new part file, the columns to partition the output directory by, and the columns to cluster records by.
+ */
+public final class ParquetProfile {
+    private ParquetLayout layout = ParquetLayout.FLAT;
+    private ParquetObjectModel objectModel = ParquetObjectModel.AVRO;
+    private CompressionCodecName compression = CompressionCodecName.SNAPPY;
+    private int rowGroupSize = ParquetWriter.DEFAULT_BLOCK_SIZE;
+    private int pageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+    private int dictionaryPageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+    private boolean enableDictionary = ParquetWriter.DEFAULT_IS_DICTIONARY_ENABLED;
+    // 0 for no limit
+    private int recordsPerPart = 2000000;
+    private long targetFileSize = 0;
+    // Hive-style partition columns below the snapshot directory, such as publication_year or series_country_code
+    private List<String> partitionBy = new ArrayList<>();
+    // partition writers open at a time; the least recently used is closed to open another
+    private int maxOpenPartitions = 64;
+    // columns to sort the records by, so that row group statistics on them are tight
+    private List<String> sortBy = new ArrayList<>();
+    // records sorted in memory; more are spilled to sorted runs on disk and merged
+    private int sortBufferRecords = 200000;
+
+    public ParquetLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(ParquetLayout layout) {
+        this.layout = layout;
+    }
+
+    public ParquetObjectModel getObjectModel() {
+        return objectModel;
+    }
+
+    public void setObjectModel(ParquetObjectModel objectModel) {
+        this.objectModel = objectModel;
+    }
+
+    public CompressionCodecName getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionCodecName compression) {
+        this.compression = compression;
+    }
+
+    public int getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    public void setRowGroupSize(int rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getDictionaryPageSize() {
+        return dictionaryPageSize;
+    }
+
+    public void setDictionaryPageSize(int dictionaryPageSize) {
+        this.dictionaryPageSize = dictionaryPageSize;
+    }
+
+    public boolean isEnableDictionary() {
+        return enableDictionary;
+    }
+
+    public void setEnableDictionary(boolean enableDictionary) {
+        this.enableDictionary = enableDictionary;
+    }
+
+    public int getRecordsPerPart() {
+        return recordsPerPart;
+    }
+
+    public void setRecordsPerPart(int recordsPerPart) {
+        this.recordsPerPart = recordsPerPart;
+    }
+
+    public long getTargetFileSize() {
+        return targetFileSize;
+    }
+
+    public void setTargetFileSize(long targetFileSize) {
+        this.targetFileSize = targetFileSize;
+    }
+
+    public List<String> getPartitionBy() {
+        return partitionBy;
+    }
+
+    public void setPartitionBy(List<String> partitionBy) {
+        this.partitionBy = partitionBy != null ? partitionBy : new ArrayList<>();
+    }
+
+    public int getMaxOpenPartitions() {
+        return maxOpenPartitions;
+    }
+
+    public void setMaxOpenPartitions(int maxOpenPartitions) {
+        this.maxOpenPartitions = maxOpenPartitions;
+    }
+
+    public List<String> getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(List<String> sortBy) {
+        this.sortBy = sortBy != null ? sortBy : new ArrayList<>();
+    }
+
+    public int getSortBufferRecords() {
+        return sortBufferRecords;
+    }
+
+    public void setSortBufferRecords(int sortBufferRecords) {
+        this.sortBufferRecords = sortBufferRecords;
+    }
+
+    @Override
+    public String toString() {
+        return "ParquetProfile{" +
+                "layout=" + layout +
+                ", objectModel=" + objectModel +
+                ", compression=" + compression +
+                ", rowGroupSize=" + rowGroupSize +
+                ", pageSize=" + pageSize +
+                ", dictionaryPageSize=" + dictionaryPageSize +
+                ", enableDictionary=" + enableDictionary +
+                ", recordsPerPart=" + recordsPerPart +
+                ", targetFileSize=" + targetFileSize +
+                ", partitionBy=" + partitionBy +
+                ", maxOpenPartitions=" + maxOpenPartitions +
+                ", sortBy=" + sortBy +
+                ", sortBufferRecords=" + sortBufferRecords + '}';
+    }
+}
@@ -0,0 +1,18 @@
+package org.gcd.etl;
+
+import java.io.IOException;
+
+/**
+ * Writes records to the part files of the PARQUET output, committing them on close.
+ */
+public interface ParquetRecordWriter<T> extends AutoCloseable {
+    void write(T record) throws IOException;
+
+    /**
+     * The number of records written.
+     */
+    int getCount();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,172 @@
+package org.gcd.etl;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records to Hive-style partition directories such as {@code publication_year=1962/series_country_code=us}
+ * below the output directory, one {@link ParquetPartWriter} per partition. Main feeds it through a
+ * {@link SortingParquetWriter} that orders records by {@link #getPartitionOrder} first, so each partition is written
+ * in one pass. At most maxOpenPartitions writers are open at a time; when another is needed the least recently used
+ * one is closed, committing its parts, and a partition written again later continues with its next part number.
+ * <p>
+ * A partition column is either a field of the record, or NAME_year for a YYYYMMDD date field NAME_date, such
+ * as publication_year. Records keep every field, so a column's values are also in the part files. Missing values
+ * go to the __HIVE_DEFAULT_PARTITION__ directory.
+ */
+public final class PartitionedParquetWriter<T extends IndexedRecord> implements ParquetRecordWriter<T> {
+    private static final Logger log = Logger.getLogger(PartitionedParquetWriter.class);
+
+    private static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+    private static final String YEAR_SUFFIX = "_year";
+
+    private final String directory;
+    private final int partition;
+    private final ParquetProfile profile;
+    private final Schema schema;
+    private final String[] columns;
+    // the field each column is read from, and whether the column is the year of that date field
+    private final int[] fields;
+    private final boolean[] years;
+    // open writers, least recently used first
+    private final LinkedHashMap<String, ParquetPartWriter<T>> writers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> nextParts = new HashMap<>();
+    private int count = 0;
+    private int closedForSpace = 0;
+
+    /**
+     * @param partition the extraction partition whose parts these are, or -1
+     */
+    public PartitionedParquetWriter(final String directory, final int partition, final ParquetProfile profile, final Schema schema) {
+        this.directory = directory;
+        this.partition = partition;
+        this.profile = profile;
+        this.schema = schema;
+        final List<String> partitionBy = profile.getPartitionBy();
+        this.columns = partitionBy.toArray(new String[0]);
+        this.fields = new int[columns.length];
+        this.years = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Schema.Field field = schema.getField(columns[i]);
+            if (field == null && columns[i].endsWith(YEAR_SUFFIX)) {
+                field = schema.getField(columns[i].substring(0, columns[i].length() - YEAR_SUFFIX.length()) + "_date");
+                years[i] = field != null;
+            }
+            if (field == null) {
+                throw new IllegalArgumentException("Cannot partition " + schema.getName() + " by " + columns[i]);
+            }
+            fields[i] = field.pos();
+        }
+    }
+
+    @Override
+    public void write(final T record) throws IOException {
+        final String path = getPartitionPath(record);
+        ParquetPartWriter<T> writer = writers.get(path);
+        if (writer == null) {
+            if (writers.size() >= Math.max(1, profile.getMaxOpenPartitions())) {
+                closeEldest();
+            }
+            writer = new ParquetPartWriter<>(directory + "/" + path, partition, nextParts.getOrDefault(path, 0), profile, schema);
+            writers.put(path, writer);
+        }
+        writer.write(record);
+        count++;
+    }
+
+    /**
+     * Orders records by partition, so that all records of a partition are adjacent. The partitions themselves are
+     * in no particular order.
+     */
+    public Comparator<T> getPartitionOrder() {
+        return (a, b) -> {
+            for (int i = 0; i < columns.length; i++) {
+                final int cmp = years[i]
+                        ? Integer.compare(getYear(a.get(fields[i])), getYear(b.get(fields[i])))
+                        : getValue(a.get(fields[i])).compareTo(getValue(b.get(fields[i])));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        };
+    }
+
+    // the year of a YYYYMMDD date, or -1 for the default partition
+    private static int getYear(final Object value) {
+        final int date = value != null ? (Integer) value : -1;
+        return date > 0 ? date / 10000 : -1;
+    }
+
+    // the value of a column, or "" for the default partition
+    private static String getValue(final Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private void closeEldest() throws IOException {
+        final Iterator<Map.Entry<String, ParquetPartWriter<T>>> eldest = writers.entrySet().iterator();
+        final Map.Entry<String, ParquetPartWriter<T>> entry = eldest.next();
+        eldest.remove();
+        entry.getValue().close();
+        nextParts.put(entry.getKey(), entry.getValue().getNextPart());
+        closedForSpace++;
+    }
+
+    private String getPartitionPath(final T record) {
+        final StringBuilder path = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                path.append('/');
+            }
+            path.append(columns[i]).append('=');
+            final Object value = record.get(fields[i]);
+            if (years[i]) {
+                final int year = getYear(value);
+                path.append(year >= 0 ? Integer.toString(year) : DEFAULT_PARTITION);
+            } else if (getValue(value).isEmpty()) {
+                path.append(DEFAULT_PARTITION);
+            } else {
+                escape(value.toString(), path);
+            }
+        }
+        return path.toString();
+    }
+
+    // escapes the characters Hive escapes in partition values
+    private static void escape(final String value, final StringBuilder path) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7F || "\"#%'*/:=?\\{[]^".indexOf(c) >= 0) {
+                path.append('%').append(String.format("%02X", (int) c));
+            } else {
+                path.append(c);
+            }
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ParquetPartWriter<T> writer : writers.values()) {
+            writer.close();
+        }
+        writers.clear();
+        if (closedForSpace > 0) {
+            log.info("Closed " + closedForSpace + " partition writers to stay within " + profile.getMaxOpenPartitions() +
+                    " open partitions");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.gcd.etl;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * The current row of a live {@link ResultSet}.
+ */
+public class ResultSetRow implements GcdRow {
+
+    protected final ResultSet rs;
+
+    public ResultSetRow(final ResultSet rs) {
+        this.rs = rs;
+    }
+
+    /**
+     * Advances to the next row, returning false when there are no more.
+     */
+    public boolean next() throws SQLException {
+        return rs.next();
+    }
+
+    /**
+     * The labels of the columns readable from this row, in the order of their indexes.
+     */
+    public String[] getColumnLabels() throws SQLException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final String[] labels = new String[metaData.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+        return labels;
+    }
+
+    @Override
+    public String getString(final String column) throws SQLException {
+        return rs.getString(column);
+    }
+
+    @Override
+    public int getInt(final String column) throws SQLException {
+        return rs.getInt(column);
+    }
+
+    @Override
+    public long getLong(final String column) throws SQLException {
+        return rs.getLong(column);
+    }
+
+    @Override
+    public Object getObject(final String column) throws SQLException {
+        return rs.getObject(column);
+    }
+
+    @Override
+    public String getString(final int column) throws SQLException {
+        return rs.getString(column);
+    }
+
+    @Override
+    public int getInt(final int column) throws SQLException {
+        return rs.getInt(column);
+    }
+
+    @Override
+    public long getLong(final int column) throws SQLException {
+        return rs.getLong(column);
+    }
+
+    @Override
+    public Object getObject(final int column) throws SQLException {
+        return rs.getObject(column);
+    }
+}
@@ -0,0 +1,239 @@
+package org.gcd.etl;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the rows of one extraction query to several outputs, so that all of them are written in a single pass
+ * over the database. The calling thread copies rows and looks up their story credits in batches, and puts each
+ * batch on the queue of every output's {@link Feed}, which that output reads on a thread of its own. The queues
+ * hold {@code queueSize} batches, so an output that falls that far behind holds up the reader, and with it the
+ * other outputs. An output that fails stops the read, which fails the others too.
+ */
+public final class RowFanOut {
+    private static final int BATCH_SIZE = 256;
+
+    private final ResultSetRow source;
+    private final GcdStoryCredit.Lookup storyCredits;
+    private final BufferedRow.Layout layout;
+    private final List<Feed> feeds = new ArrayList<>();
+    // set when an output stops reading before the end of the rows
+    private volatile boolean abandoned = false;
+
+    public RowFanOut(final ResultSetRow source, final GcdStoryCredit.Lookup storyCredits, final int outputs, final int queueSize)
+            throws SQLException {
+        this.source = source;
+        this.storyCredits = storyCredits;
+        final String[] labels = source.getColumnLabels();
+        this.layout = new BufferedRow.Layout(labels);
+        for (int i = 0; i < outputs; i++) {
+            feeds.add(new Feed(this, labels, Math.max(1, queueSize)));
+        }
+    }
+
+    /**
+     * The rows of the given output.
+     */
+    public Feed getFeed(final int output) {
+        return feeds.get(output);
+    }
+
+    private static final class PendingRow {
+        private final BufferedRow row;
+        private final GcdStoryCredit credit;
+
+        private PendingRow(final BufferedRow row, final GcdStoryCredit credit) {
+            this.row = row;
+            this.credit = credit;
+        }
+    }
+
+    /**
+     * Reads every row of the source into the feeds, then ends them. If reading fails, or an output stops reading
+     * before the end of the rows, the read stops and the feeds fail, so that no output commits a partial extraction.
+     */
+    public void read(final RunMetrics metrics) throws SQLException, InterruptedException {
+        boolean complete = false;
+        try {
+            List<PendingRow> batch = new ArrayList<>(BATCH_SIZE);
+            while (!abandoned && source.next()) {
+                try {
+                    batch.add(new PendingRow(layout.copy(source), storyCredits.forRow(source)));
+                } catch (SQLException e) {
+                    metrics.recordSkippedRow(e);
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty() && !abandoned) {
+                put(batch);
+            }
+            complete = !abandoned;
+        } finally {
+            for (Feed feed : feeds) {
+                feed.end(complete);
+            }
+        }
+    }
+
+    private void put(final List<PendingRow> batch) throws InterruptedException {
+        for (Feed feed : feeds) {
+            feed.put(batch);
+        }
+    }
+
+    /**
+     * Whether an output stopped reading before the end of the rows, which stopped the read.
+     */
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * The rows one output reads, with the story credits looked up for them, as the current row of a result set.
+     */
+    public static final class Feed extends ResultSetRow {
+        private static final List<PendingRow> END = Collections.emptyList();
+
+        private final RowFanOut fanOut;
+        private final String[] labels;
+        private final BlockingQueue<List<PendingRow>> queue;
+        private volatile boolean closed = false;
+        private volatile boolean failed = false;
+        private volatile boolean ended = false;
+        private List<PendingRow> batch = Collections.emptyList();
+        private int index = 0;
+        private PendingRow current;
+
+        private Feed(final RowFanOut fanOut, final String[] labels, final int queueSize) {
+            super(null);
+            this.fanOut = fanOut;
+            this.labels = labels;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        // waits for room on the queue unless the output has stopped reading, or another has and the read stops
+        private void put(final List<PendingRow> batch) throws InterruptedException {
+            while (!closed) {
+                if (queue.offer(batch, 100, TimeUnit.MILLISECONDS) || (batch != END && fanOut.abandoned)) {
+                    return;
+                }
+            }
+        }
+
+        private void end(final boolean complete) {
+            failed = !complete;
+            if (failed) {
+                // the output fails at the end anyway, so the rows still queued need not hold up the end
+                queue.clear();
+            }
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            index++;
+            while (index >= batch.size()) {
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for rows", e);
+                }
+                index = 0;
+                if (batch == END) {
+                    current = null;
+                    ended = true;
+                    if (failed) {
+                        throw new SQLException("Reading the extraction query failed, or another output did");
+                    }
+                    return false;
+                }
+            }
+            current = batch.get(index);
+            return true;
+        }
+
+        /**
+         * Stops feeding this output, which is done reading. If it has not read to the end of the rows, it has
+         * failed, and the read stops.
+         */
+        public void close() {
+            if (!ended) {
+                fanOut.abandoned = true;
+            }
+            closed = true;
+            queue.clear();
+        }
+
+        /**
+         * Whether this output stopped reading before the end of the rows.
+         */
+        public boolean isAbandoned() {
+            return closed && !ended;
+        }
+
+        /**
+         * The credits of the current row, as looked up by the reader.
+         */
+        public GcdStoryCredit.Lookup getStoryCredits() {
+            return storyId -> current.credit;
+        }
+
+        @Override
+        public String[] getColumnLabels() {
+            return labels;
+        }
+
+        @Override
+        public String getString(final String column) throws SQLException {
+            return current.row.getString(column);
+        }
+
+        @Override
+        public int getInt(final String column) throws SQLException {
+            return current.row.getInt(column);
+        }
+
+        @Override
+        public long getLong(final String column) throws SQLException {
+            return current.row.getLong(column);
+        }
+
+        @Override
+        public Object getObject(final String column) throws SQLException {
+            return current.row.getObject(column);
+        }
+
+        @Override
+        public String getString(final int column) throws SQLException {
+            return current.row.getString(column);
+        }
+
+        @Override
+        public int getInt(final int column) throws SQLException {
+            return current.row.getInt(column);
+        }
+
+        @Override
+        public long getLong(final int column) throws SQLException {
+            return current.row.getLong(column);
+        }
+
+        @Override
+        public Object getObject(final int column) throws SQLException {
+            return current.row.getObject(column);
+        }
+    }
+}
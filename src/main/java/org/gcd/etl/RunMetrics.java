@@ -0,0 +1,312 @@
+package org.gcd.etl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Wall and CPU time, rows and bytes of each phase of a run, plus skipped rows, field errors and GC time,
+ * reported as JSON at the end of the run and, optionally, over JMX while it runs. Phases may be timed any
+ * number of times from any number of threads, as when partitions are extracted concurrently, so their wall
+ * and CPU times are sums over threads.
+ */
+public final class RunMetrics implements RunMetricsMBean {
+    private static final Logger log = Logger.getLogger(RunMetrics.class);
+
+    private static final String OBJECT_NAME = "org.gcd.etl:type=RunMetrics";
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final ObjectWriter REPORT_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+    // the first skipped rows and field errors are logged, and then one in LOG_INTERVAL of each
+    private static final long LOGGED = 10;
+    private static final long LOG_INTERVAL = 10000;
+
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long startCpuNanos = getProcessCpuNanos();
+    private final long startGcMillis = getGcMillis();
+    private final long startGcCount = getGcCount();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final LongAdder documents = new LongAdder();
+    private final AtomicLong skippedRows = new AtomicLong();
+    private final AtomicLong fieldErrors = new AtomicLong();
+    private final LongAdder outputBytes = new LongAdder();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    /**
+     * Time, rows and bytes spent in one phase of the run.
+     */
+    public static final class Phase {
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private volatile boolean cpuTimed = false;
+
+        /**
+         * Calls the given code and adds the wall and CPU time it took in this thread, whether it returns or throws.
+         */
+        public <T, E1 extends Exception, E2 extends Exception> T time(final Timed<T, E1, E2> timed) throws E1, E2 {
+            final long startNanos = System.nanoTime();
+            final long startCpuNanos = getThreadCpuNanos();
+            try {
+                return timed.call();
+            } finally {
+                wallNanos.add(System.nanoTime() - startNanos);
+                if (startCpuNanos >= 0) {
+                    cpuNanos.add(getThreadCpuNanos() - startCpuNanos);
+                    cpuTimed = true;
+                }
+            }
+        }
+
+        /**
+         * {@link #time} for code without a result.
+         */
+        public <E1 extends Exception, E2 extends Exception> void run(final TimedAction<E1, E2> action) throws E1, E2 {
+            this.<Void, E1, E2>time(() -> {
+                action.run();
+                return null;
+            });
+        }
+
+        /**
+         * Adds wall time measured by the caller, for stages too fine-grained to read the CPU clock for.
+         */
+        public void addWallNanos(final long nanos) {
+            wallNanos.add(nanos);
+        }
+
+        public void addRows(final long count) {
+            rows.add(count);
+        }
+
+        public void addBytes(final long count) {
+            bytes.add(count);
+        }
+    }
+
+    /**
+     * Code timed by {@link Phase#time}. Code throwing two checked exception types needs them as explicit type
+     * arguments, as javac would otherwise infer Exception.
+     */
+    @FunctionalInterface
+    public interface Timed<T, E1 extends Exception, E2 extends Exception> {
+        T call() throws E1, E2;
+    }
+
+    @FunctionalInterface
+    public interface TimedAction<E1 extends Exception, E2 extends Exception> {
+        void run() throws E1, E2;
+    }
+
+    public synchronized Phase phase(final String name) {
+        return phases.computeIfAbsent(name, k -> new Phase());
+    }
+
+    /**
+     * Adds a value, such as the output type, to the report.
+     */
+    public synchronized void setProperty(final String name, final String value) {
+        properties.put(name, value);
+    }
+
+    public void recordDocument() {
+        documents.increment();
+    }
+
+    /**
+     * Counts a row that was skipped because it could not be read or converted, logging a sample of them.
+     */
+    public void recordSkippedRow(final Exception e) {
+        logSample(skippedRows.incrementAndGet(), "Skipping document due to: ", e);
+    }
+
+    /**
+     * Counts a field that could not be read, which leaves the field out of its document, logging a sample of them.
+     */
+    public void recordFieldError(final Exception e) {
+        logSample(fieldErrors.incrementAndGet(), "Leaving out a field due to: ", e);
+    }
+
+    private static void logSample(final long count, final String message, final Exception e) {
+        if (count < LOGGED) {
+            log.warn(message + e.getMessage());
+        } else if (count == LOGGED) {
+            log.warn(message + e.getMessage() + " (logging one in " + LOG_INTERVAL + " from now on)");
+        } else if (count % LOG_INTERVAL == 0) {
+            log.warn(message + e.getMessage() + " (" + count + " so far)");
+        }
+    }
+
+    public void addOutputBytes(final long bytes) {
+        outputBytes.add(bytes);
+    }
+
+    /**
+     * The total size of the regular files under a path, such as a .sqar archive or a Parquet directory.
+     */
+    public static long sizeOf(final String path) throws IOException {
+        final Path root = Paths.get(path);
+        if (!Files.exists(root)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getSkippedRows() {
+        return skippedRows.get();
+    }
+
+    @Override
+    public long getFieldErrors() {
+        return fieldErrors.get();
+    }
+
+    @Override
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    @Override
+    public double getDocumentsPerSecond() {
+        return getDocuments() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getGcSeconds() {
+        return (getGcMillis() - startGcMillis) / 1e3;
+    }
+
+    @Override
+    public long getOutputBytes() {
+        return outputBytes.sum();
+    }
+
+    /**
+     * Publishes the metrics as the org.gcd.etl:type=RunMetrics MBean of the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            log.info("Publishing run metrics over JMX as " + OBJECT_NAME);
+        } catch (JMException e) {
+            log.warn("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized String getReport() {
+        final double elapsed = getElapsedSeconds();
+        final SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final Map<String, Object> report = new LinkedHashMap<>(properties);
+        report.put("start", iso.format(new Date(startMillis)));
+        report.put("wallSeconds", seconds(elapsed));
+        final long cpuNanos = getProcessCpuNanos();
+        if (cpuNanos >= 0) {
+            report.put("cpuSeconds", seconds((cpuNanos - startCpuNanos) / 1e9));
+        }
+        report.put("documents", getDocuments());
+        report.put("documentsPerSecond", seconds(getDocumentsPerSecond()));
+        report.put("skippedRows", getSkippedRows());
+        report.put("fieldErrors", getFieldErrors());
+        report.put("outputBytes", getOutputBytes());
+        report.put("gcCount", getGcCount() - startGcCount);
+        report.put("gcSeconds", seconds(getGcSeconds()));
+        report.put("peakHeapBytes", HeapUsage.getPeakHeapBytes());
+        final Map<String, Object> phaseReports = new LinkedHashMap<>();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            final Phase phase = entry.getValue();
+            final double wall = phase.wallNanos.sum() / 1e9;
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("wallSeconds", seconds(wall));
+            if (phase.cpuTimed) {
+                values.put("cpuSeconds", seconds(phase.cpuNanos.sum() / 1e9));
+            }
+            if (phase.rows.sum() > 0) {
+                values.put("rows", phase.rows.sum());
+                values.put("rowsPerSecond", seconds(wall > 0 ? phase.rows.sum() / wall : 0));
+            }
+            if (phase.bytes.sum() > 0) {
+                values.put("bytes", phase.bytes.sum());
+            }
+            phaseReports.put(entry.getKey(), values);
+        }
+        report.put("phases", phaseReports);
+        try {
+            return REPORT_WRITER.writeValueAsString(report) + "\n";
+        } catch (JsonProcessingException e) {
+            // strings and numbers always serialize
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void writeReport(final String file) throws IOException {
+        Files.write(Paths.get(file), getReport().getBytes(StandardCharsets.UTF_8));
+        log.info("Wrote run report " + file);
+    }
+
+    // seconds, or a rate, to the millisecond
+    private static Object seconds(final double value) {
+        return Double.isFinite(value) ? BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP) : value;
+    }
+
+    private static long getThreadCpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getProcessCpuNanos() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
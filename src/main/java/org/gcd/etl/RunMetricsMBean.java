@@ -0,0 +1,25 @@
+package org.gcd.etl;
+
+/**
+ * The JMX view of {@link RunMetrics}.
+ */
+public interface RunMetricsMBean {
+    long getDocuments();
+
+    long getSkippedRows();
+
+    long getFieldErrors();
+
+    double getElapsedSeconds();
+
+    double getDocumentsPerSecond();
+
+    double getGcSeconds();
+
+    long getOutputBytes();
+
+    /**
+     * The run report so far, as JSON.
+     */
+    String getReport();
+}
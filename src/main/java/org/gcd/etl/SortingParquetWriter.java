@@ -0,0 +1,158 @@
+package org.gcd.etl;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Clusters the records of the PARQUET output by the profile's sort key before passing them on to another
+ * writer, so that each row group covers a narrow range of the key columns and its min/max statistics let
+ * readers skip it. Records for a {@link PartitionedParquetWriter} are ordered by partition ahead of the sort key,
+ * which may then be empty, so that each partition is written in one pass rather than reopened with a new part
+ * file whenever it was evicted from the open writers. Up to sortBufferRecords records are sorted in memory; past
+ * that, sorted runs are spilled to Avro files in the output directory's _temporary directory and merged on close.
+ */
+public final class SortingParquetWriter<T extends IndexedRecord> implements ParquetRecordWriter<T> {
+    private static final Logger log = Logger.getLogger(SortingParquetWriter.class);
+
+    private final ParquetRecordWriter<T> writer;
+    private final String directory;
+    private final int partition;
+    private final int bufferRecords;
+    private final Schema schema;
+    private final Comparator<T> comparator;
+    private final List<T> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * @param writer the writer the sorted records are passed to, and closed with this one
+     * @param partition the extraction partition whose records these are, or -1
+     */
+    public SortingParquetWriter(final ParquetRecordWriter<T> writer, final String directory, final int partition,
+            final ParquetProfile profile, final Schema schema) {
+        this.writer = writer;
+        this.directory = directory;
+        this.partition = partition;
+        this.bufferRecords = Math.max(1, profile.getSortBufferRecords());
+        this.schema = schema;
+        Comparator<T> comparator = writer instanceof PartitionedParquetWriter
+                ? ((PartitionedParquetWriter<T>) writer).getPartitionOrder()
+                : null;
+        for (String column : profile.getSortBy()) {
+            final Schema.Field field = schema.getField(column);
+            if (field == null) {
+                throw new IllegalArgumentException("Cannot sort " + schema.getName() + " by " + column);
+            }
+            final Comparator<T> byField = (a, b) ->
+                    SpecificData.get().compare(a.get(field.pos()), b.get(field.pos()), field.schema());
+            comparator = comparator == null ? byField : comparator.thenComparing(byField);
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("No sort key for " + schema.getName());
+        }
+        this.comparator = comparator;
+    }
+
+    @Override
+    public void write(final T record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() >= bufferRecords) {
+            spill();
+        }
+    }
+
+    // writes the buffer, sorted, to a run file of its own
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        final File run = new File(directory + "/_temporary",
+                String.format("sort-%s%04d.avro", partition < 0 ? "" : String.format("%04d-", partition), runs.size()));
+        Files.createDirectories(run.toPath().getParent());
+        runs.add(run);
+        try (DataFileWriter<T> out = new DataFileWriter<>(new SpecificDatumWriter<T>(schema))) {
+            out.create(schema, run);
+            for (T record : buffer) {
+                out.append(record);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public int getCount() {
+        return writer.getCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (runs.isEmpty()) {
+                buffer.sort(comparator);
+                for (T record : buffer) {
+                    writer.write(record);
+                }
+                buffer.clear();
+            } else {
+                if (!buffer.isEmpty()) {
+                    spill();
+                }
+                log.info("Merging " + runs.size() + " sorted runs");
+                merge();
+            }
+            writer.close();
+        } finally {
+            for (File run : runs) {
+                Files.deleteIfExists(run.toPath());
+            }
+            runs.clear();
+        }
+    }
+
+    private void merge() throws IOException {
+        final List<DataFileReader<T>> readers = new ArrayList<>();
+        try {
+            // the next record of each run, ordered by the run's head
+            final PriorityQueue<Head<T>> heads = new PriorityQueue<>(runs.size(), (a, b) -> comparator.compare(a.record, b.record));
+            for (File run : runs) {
+                final DataFileReader<T> reader = new DataFileReader<>(run, new SpecificDatumReader<T>(schema));
+                readers.add(reader);
+                if (reader.hasNext()) {
+                    heads.add(new Head<>(reader, reader.next()));
+                }
+            }
+            while (!heads.isEmpty()) {
+                final Head<T> head = heads.poll();
+                writer.write(head.record);
+                if (head.reader.hasNext()) {
+                    heads.add(new Head<>(head.reader, head.reader.next()));
+                }
+            }
+        } finally {
+            for (DataFileReader<T> reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static final class Head<T> {
+        private final DataFileReader<T> reader;
+        private final T record;
+
+        private Head(final DataFileReader<T> reader, final T record) {
+            this.reader = reader;
+            this.record = record;
+        }
+    }
+}
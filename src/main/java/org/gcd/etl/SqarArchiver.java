@@ -0,0 +1,262 @@
+package org.gcd.etl;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.imhotep.archive.ArchiveUtils;
+import com.indeed.imhotep.archive.FileMetadata;
+import com.indeed.imhotep.archive.SquallArchiveReader;
+import com.indeed.imhotep.archive.compression.SquallArchiveCompressor;
+import com.indeed.util.compress.CompressionOutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes a shard directory to a Squall archive (.sqar) readable by {@link SquallArchiveReader}, compressing
+ * several files at once. Files can be handed over as soon as they are final, so that the archive is mostly
+ * written by the time the shard is; {@link #commit} adds whatever is left, writes the archive metadata and,
+ * if configured, reads every file back and checks it against its checksum.
+ */
+public class SqarArchiver implements Closeable {
+    private static final Logger log = Logger.getLogger(SqarArchiver.class);
+
+    private static final Joiner TAB = Joiner.on('\t');
+    private static final Joiner SLASH = Joiner.on('/');
+
+    private final File shardDir;
+    private final Path archivePath;
+    private final SquallArchiveCompressor compressor;
+    private final boolean verify;
+    private final FileSystem fs;
+    private final Set<File> added = new HashSet<>();
+    private final BlockingQueue<File> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor;
+    private final List<Future<List<FileMetadata>>> workers = new ArrayList<>();
+    // a queued file that tells a worker to finish its archive file
+    private final File end = new File("");
+
+    public SqarArchiver(final String shardDir, final String archive, final SquallArchiveCompressor compressor,
+            final int threads, final boolean verify) throws IOException {
+        this.shardDir = new File(shardDir);
+        this.archivePath = new Path(archive);
+        this.compressor = compressor;
+        this.verify = verify;
+        this.fs = FileSystem.getLocal(new Configuration()).getRaw();
+        fs.delete(archivePath, true);
+        fs.mkdirs(archivePath);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                new ThreadFactoryBuilder().setNameFormat("sqar-" + this.shardDir.getName() + "-%d").setDaemon(true).build());
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            final Path archiveFile = new Path(archivePath, "archive" + i + ".bin");
+            workers.add(executor.submit(() -> compressFiles(archiveFile)));
+        }
+    }
+
+    /**
+     * Queues the files and directories directly in the shard directory whose names start with the prefix.
+     */
+    public synchronized void addFinished(final String prefix) {
+        final File[] files = shardDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                add(file);
+            }
+        }
+    }
+
+    private void add(final File file) {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    add(child);
+                }
+            }
+        } else if (added.add(file)) {
+            queue.add(file);
+        }
+    }
+
+    /**
+     * Archives the rest of the shard directory and writes the archive metadata.
+     */
+    public void commit() throws IOException {
+        synchronized (this) {
+            add(shardDir);
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            queue.add(end);
+        }
+        final List<FileMetadata> metadata = new ArrayList<>();
+        try {
+            for (Future<List<FileMetadata>> worker : workers) {
+                metadata.addAll(worker.get());
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted archiving " + shardDir, e);
+        }
+        metadata.sort(Comparator.comparing(FileMetadata::getFilename));
+        writeMetadata(metadata);
+        if (verify) {
+            verify(metadata);
+        }
+        executor.shutdown();
+        log.info("Wrote " + archivePath);
+    }
+
+    /**
+     * Stops the compression threads, abandoning the archive if it has not been committed.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<FileMetadata> compressFiles(final Path archiveFile) throws IOException, InterruptedException {
+        final List<FileMetadata> metadata = new ArrayList<>();
+        try (FSDataOutputStream out = fs.create(archiveFile, true)) {
+            for (File file = queue.take(); file != end; file = queue.take()) {
+                metadata.add(compressFile(out, file, archiveFile.getName()));
+            }
+        }
+        if (metadata.isEmpty()) {
+            fs.delete(archiveFile, false);
+        }
+        return metadata;
+    }
+
+    private FileMetadata compressFile(final FSDataOutputStream out, final File file, final String archiveFilename) throws IOException {
+        final long startOffset = out.getPos();
+        final String checksum;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            final CompressionOutputStream compressed = compressor.newOutputStream(out);
+            final DigestOutputStream digest = new DigestOutputStream(compressed, ArchiveUtils.getMD5Digest());
+            ByteStreams.copy(in, digest);
+            checksum = ArchiveUtils.toHex(digest.getMessageDigest().digest());
+            compressed.finish();
+        }
+        return new FileMetadata(getArchiveName(file), file.length(), file.lastModified(), checksum, startOffset, compressor,
+                archiveFilename);
+    }
+
+    // the path of a file relative to the shard directory, as SquallArchiveWriter names it
+    private String getArchiveName(final File file) {
+        final List<String> parents = new ArrayList<>();
+        for (File parent = file.getParentFile(); !parent.equals(shardDir); parent = parent.getParentFile()) {
+            parents.add(parent.getName());
+        }
+        Collections.reverse(parents);
+        parents.add(file.getName().replaceAll("\\s+", "_"));
+        return SLASH.join(parents);
+    }
+
+    private void writeMetadata(final List<FileMetadata> metadata) throws IOException {
+        final Path tmp = new Path(archivePath, "metadata.txt.tmp");
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(fs.create(tmp, true), StandardCharsets.UTF_8))) {
+            for (FileMetadata file : metadata) {
+                out.println(TAB.join(file.getFilename(), file.getSize(), file.getTimestamp(), file.getChecksum(),
+                        file.getStartOffset(), file.getCompressor().getKey(), file.getArchiveFilename()));
+            }
+        }
+        if (!fs.rename(tmp, new Path(archivePath, "metadata.txt"))) {
+            throw new IOException("Could not rename " + tmp);
+        }
+    }
+
+    /**
+     * Reads the metadata back and decompresses every file, comparing sizes and checksums.
+     */
+    private void verify(final List<FileMetadata> written) throws IOException {
+        final List<FileMetadata> read = new SquallArchiveReader(fs, archivePath).readMetadata();
+        if (read.size() != written.size()) {
+            throw new IOException(archivePath + " lists " + read.size() + " files, expected " + written.size());
+        }
+        final Map<String, FileMetadata> expected = new HashMap<>();
+        for (FileMetadata file : written) {
+            expected.put(file.getFilename(), file);
+        }
+        final List<Future<Void>> checks = new ArrayList<>();
+        for (FileMetadata file : read) {
+            final FileMetadata original = expected.get(file.getFilename());
+            if (original == null || original.getSize() != file.getSize() || !original.getChecksum().equals(file.getChecksum())) {
+                throw new IOException(archivePath + " has unexpected metadata for " + file.getFilename());
+            }
+            checks.add(executor.submit(() -> {
+                verifyFile(file);
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> check : checks) {
+                check.get();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted verifying " + archivePath, e);
+        }
+        log.info("Verified " + read.size() + " files in " + archivePath);
+    }
+
+    private void verifyFile(final FileMetadata file) throws IOException {
+        final MessageDigest md5 = ArchiveUtils.getMD5Digest();
+        try (FSDataInputStream in = fs.open(new Path(archivePath, file.getArchiveFilename()))) {
+            in.seek(file.getStartOffset());
+            final InputStream decompressed = file.getCompressor().newInputStream(in);
+            final byte[] buffer = new byte[65536];
+            long remaining = file.getSize();
+            while (remaining > 0) {
+                final int n = decompressed.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException(archivePath + " is truncated in " + file.getFilename());
+                }
+                md5.update(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        if (!ArchiveUtils.toHex(md5.digest()).equals(file.getChecksum())) {
+            throw new IOException(archivePath + " has a bad checksum for " + file.getFilename());
+        }
+    }
+}
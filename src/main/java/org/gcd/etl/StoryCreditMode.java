@@ -0,0 +1,13 @@
+package org.gcd.etl;
+
+/**
+ * How gcd_story_credit rows are joined to the stories being extracted.
+ */
+public enum StoryCreditMode {
+    // load every story's credits into memory before extraction starts
+    PRELOAD,
+    // like PRELOAD, but packed into primitive arrays with a shared creator dictionary
+    COMPACT,
+    // stream credits ordered by story id alongside a main query ordered by story id
+    MERGE
+}
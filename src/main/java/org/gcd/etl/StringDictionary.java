@@ -0,0 +1,72 @@
+package org.gcd.etl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns the values of repetitive string fields, such as series colors or creator names, so that the rows and
+ * documents the writers buffer, and preloaded credits, share one String per value rather than hold a copy of it
+ * per row. The copy the driver or a split returns is still allocated, but dies young. The dictionary is bounded:
+ * once it holds maxValues values, values not in it are returned as they are. Each interned field has one of its
+ * own, shared by the extractions of a run, and it is safe to use from any number of threads.
+ */
+public final class StringDictionary {
+    /**
+     * A dictionary that interns nothing.
+     */
+    public static final StringDictionary NONE = new StringDictionary(0);
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxValues;
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    public StringDictionary(final int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * The dictionary's instance of a value, which becomes the value itself if the dictionary has room for it.
+     */
+    public String intern(final String value) {
+        if (value == null || maxValues <= 0) {
+            return value;
+        }
+        final String interned = values.get(value);
+        if (interned != null) {
+            hits.increment();
+            return interned;
+        }
+        if (size.get() >= maxValues) {
+            overflows.increment();
+            return value;
+        }
+        final String previous = values.putIfAbsent(value, value);
+        if (previous != null) {
+            hits.increment();
+            return previous;
+        }
+        size.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Interns the values of an array in place.
+     */
+    public String[] internAll(final String[] values) {
+        if (maxValues > 0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = intern(values[i]);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "StringDictionary{" + "values=" + size.get() + ", maxValues=" + maxValues + ", hits=" + hits.sum() +
+                ", overflows=" + overflows.sum() + '}';
+    }
+}
@@ -0,0 +1,167 @@
+package org.gcd.etl;
+
+import java.util.TimeZone;
+
+/**
+ * Decoders for the column values that the extractors turn into comparable ints and multi-value fields. They
+ * produce the same results as the regex, {@code String.format} and {@code SimpleDateFormat} code they replace,
+ * without compiling patterns or allocating formatters per value, and are safe to share between threads.
+ */
+public final class ValueCodecs {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // SimpleDateFormat also captures the default time zone when it is created
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+
+    private static final String[] NO_VALUES = new String[0];
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * Parses a YYYY-MM-DD date into the int YYYYMMDD, or returns -1 if the value is not exactly of that form.
+     */
+    public static int parseDate(final String value) {
+        if (value == null || value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 7) {
+                continue;
+            }
+            final int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Converts unix seconds into the int yMMdd of the date in the default time zone, or -1 if not positive.
+     */
+    public static int epochSecondsToDate(final long unixTime) {
+        return epochSecondsToDate(unixTime, TIME_ZONE);
+    }
+
+    // the date in the given time zone, for tests in zones other than the default
+    static int epochSecondsToDate(final long unixTime, final TimeZone timeZone) {
+        if (unixTime <= 0) {
+            return -1;
+        }
+        final long millis = unixTime * 1000L;
+        final long epochDay = Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+        // civil date from days since 1970-01-01, in a calendar of 400 year eras starting on March 1st
+        final long z = epochDay + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long dayOfEra = z - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long mp = (5 * dayOfYear + 2) / 153;
+        final long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final long month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 10000 + month * 100 + day);
+    }
+
+    /**
+     * Splits a semicolon separated list exactly as {@code value.split("\\s*;\\s*")} does: whitespace around
+     * separators is dropped, leading empty values are kept and trailing empty values are removed.
+     */
+    public static String[] splitMultiValue(final String value) {
+        if (value.indexOf(';') < 0) {
+            return new String[] { value };
+        }
+        // count the values, ignoring the trailing empty ones
+        int count = 0;
+        int kept = 0;
+        int start = 0;
+        while (start >= 0) {
+            final int separator = value.indexOf(';', start);
+            final int end = separator < 0 ? value.length() : trimStart(value, start, separator);
+            count++;
+            if (end > start) {
+                kept = count;
+            }
+            start = separator < 0 ? -1 : trimEnd(value, separator + 1);
+        }
+        if (kept == 0) {
+            return NO_VALUES;
+        }
+        final String[] values = new String[kept];
+        start = 0;
+        for (int i = 0; i < kept; i++) {
+            final int separator = value.indexOf(';', start);
+            final int end = separator < 0 ? value.length() : trimStart(value, start, separator);
+            values[i] = value.substring(start, end);
+            if (separator >= 0) {
+                start = trimEnd(value, separator + 1);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Receives the bounds of one value of a multi-value field.
+     */
+    public interface MultiValueConsumer {
+        void accept(String value, int start, int end);
+    }
+
+    /**
+     * Passes the bounds of each value that {@link #splitMultiValue} returns to the consumer, in order, without
+     * allocating the values, and returns their number.
+     */
+    public static int forEachMultiValue(final String value, final MultiValueConsumer consumer) {
+        if (value.indexOf(';') < 0) {
+            consumer.accept(value, 0, value.length());
+            return 1;
+        }
+        // count the values, ignoring the trailing empty ones
+        int count = 0;
+        int kept = 0;
+        int start = 0;
+        while (start >= 0) {
+            final int separator = value.indexOf(';', start);
+            final int end = separator < 0 ? value.length() : trimStart(value, start, separator);
+            count++;
+            if (end > start) {
+                kept = count;
+            }
+            start = separator < 0 ? -1 : trimEnd(value, separator + 1);
+        }
+        start = 0;
+        for (int i = 0; i < kept; i++) {
+            final int separator = value.indexOf(';', start);
+            final int end = separator < 0 ? value.length() : trimStart(value, start, separator);
+            consumer.accept(value, start, end);
+            if (separator >= 0) {
+                start = trimEnd(value, separator + 1);
+            }
+        }
+        return kept;
+    }
+
+    // the first index of the whitespace before a separator, not before the start of the value
+    private static int trimStart(final String value, final int start, int separator) {
+        while (separator > start && isWhitespace(value.charAt(separator - 1))) {
+            separator--;
+        }
+        return separator;
+    }
+
+    // the first index after the whitespace following a separator
+    private static int trimEnd(final String value, int index) {
+        while (index < value.length() && isWhitespace(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    // the characters of the regex \s
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
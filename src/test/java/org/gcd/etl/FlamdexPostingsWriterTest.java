@@ -0,0 +1,179 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableList;
+import com.indeed.flamdex.api.DocIdStream;
+import com.indeed.flamdex.api.FlamdexReader;
+import com.indeed.flamdex.api.IntTermIterator;
+import com.indeed.flamdex.api.StringTermIterator;
+import com.indeed.flamdex.api.TermIterator;
+import com.indeed.flamdex.simple.SimpleFlamdexDocWriter;
+import com.indeed.flamdex.simple.SimpleFlamdexReader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds the same rows into a shard through {@link SimpleFlamdexDocWriter} and through {@link FlamdexPostingsWriter},
+ * and compares the terms and doc lists of every field.
+ */
+public class FlamdexPostingsWriterTest {
+    private static final int ROWS = 3000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // flamdex cannot write unpaired surrogates, which the driver never returns
+    private ExtractionPlan.Binding binding;
+    private List<BufferedRow> rows;
+    private List<GcdStoryCredit> credits;
+    private String expected;
+
+    @Before
+    public void setUp() throws Exception {
+        final ExtractionPlan plan = ExtractionPlan.compile(new MappingProfile(), new GcdSchema(), ImmutableList.of(OutputType.FLAMDEX));
+        binding = plan.bind(TestRows.COLUMNS, OutputType.FLAMDEX, TestRows.metadata(), 1546300800L, new RunMetrics());
+        rows = TestRows.rows(ROWS, 42, false);
+        final Random random = new Random(7);
+        credits = new ArrayList<>();
+        for (BufferedRow row : rows) {
+            credits.add(TestRows.credit(row, random, false));
+        }
+
+        expected = folder.newFolder("documents").getPath();
+        final SimpleFlamdexDocWriter.Config config = new SimpleFlamdexDocWriter.Config();
+        // several segments, merged on close
+        config.setDocBufferSize(250);
+        config.setMergeFactor(4);
+        final SimpleFlamdexDocWriter writer = new SimpleFlamdexDocWriter(expected, config);
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                writer.addDocument(binding.buildFlamdexDocument(rows.get(i), credits.get(i)));
+            } catch (SQLException e) {
+                // skipped, as the extraction skips it
+            }
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testTermsWithoutSegments() throws Exception {
+        assertSameIndex(writeTerms(1L << 30, false));
+    }
+
+    @Test
+    public void testTermsWithSegments() throws Exception {
+        assertSameIndex(writeTerms(256 * 1024, true));
+    }
+
+    @Test
+    public void testDocumentsWithoutSegments() throws Exception {
+        assertSameIndex(writeDocuments(1L << 30, false));
+    }
+
+    @Test
+    public void testDocumentsWithSegments() throws Exception {
+        assertSameIndex(writeDocuments(256 * 1024, true));
+    }
+
+    // adds each row's terms straight to the postings, as a serial POSTINGS extraction does
+    private String writeTerms(final long bufferBytes, final boolean spills) throws Exception {
+        final String directory = new File(folder.getRoot(), "terms").getPath();
+        final FlamdexPostingsWriter writer = new FlamdexPostingsWriter(directory, bufferBytes);
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                binding.addFlamdexTerms(rows.get(i), credits.get(i), writer);
+                writer.endDocument();
+            } catch (SQLException e) {
+                writer.discardDocument();
+            }
+        }
+        close(writer, directory, spills);
+        return directory;
+    }
+
+    // adds built documents, as a POSTINGS extraction with pipeline threads does
+    private String writeDocuments(final long bufferBytes, final boolean spills) throws Exception {
+        final String directory = new File(folder.getRoot(), "postings").getPath();
+        final FlamdexPostingsWriter writer = new FlamdexPostingsWriter(directory, bufferBytes);
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                writer.addDocument(binding.buildFlamdexDocument(rows.get(i), credits.get(i)));
+            } catch (SQLException e) {
+                // skipped
+            }
+        }
+        close(writer, directory, spills);
+        return directory;
+    }
+
+    private static void close(final FlamdexPostingsWriter writer, final String directory, final boolean spills)
+            throws Exception {
+        final File segments = new File(directory + ".postings");
+        assertEquals("postings segments written", spills, segments.isDirectory());
+        writer.close();
+        assertFalse("postings segments left behind", segments.exists());
+    }
+
+    private void assertSameIndex(final String actual) throws Exception {
+        try (SimpleFlamdexReader documents = SimpleFlamdexReader.open(expected);
+             SimpleFlamdexReader postings = SimpleFlamdexReader.open(actual)) {
+            assertTrue(documents.getNumDocs() > ROWS / 2);
+            assertEquals(documents.getNumDocs(), postings.getNumDocs());
+            assertEquals(new TreeSet<>(documents.getIntFields()), new TreeSet<>(postings.getIntFields()));
+            assertEquals(new TreeSet<>(documents.getStringFields()), new TreeSet<>(postings.getStringFields()));
+            for (String field : documents.getIntFields()) {
+                assertEquals("int field " + field, getIntPostings(documents, field), getIntPostings(postings, field));
+            }
+            for (String field : documents.getStringFields()) {
+                assertEquals("string field " + field, getStringPostings(documents, field), getStringPostings(postings, field));
+            }
+        }
+    }
+
+    // each term of the field with its docs, in term order
+    private static List<String> getIntPostings(final FlamdexReader reader, final String field) {
+        final List<String> postings = new ArrayList<>();
+        try (IntTermIterator terms = reader.getIntTermIterator(field); DocIdStream docs = reader.getDocIdStream()) {
+            while (terms.next()) {
+                postings.add(terms.term() + ": " + getDocs(terms, docs));
+            }
+        }
+        return postings;
+    }
+
+    private static List<String> getStringPostings(final FlamdexReader reader, final String field) {
+        final List<String> postings = new ArrayList<>();
+        try (StringTermIterator terms = reader.getStringTermIterator(field); DocIdStream docs = reader.getDocIdStream()) {
+            while (terms.next()) {
+                postings.add(terms.term() + ": " + getDocs(terms, docs));
+            }
+        }
+        return postings;
+    }
+
+    private static List<Integer> getDocs(final TermIterator term, final DocIdStream docs) {
+        final List<Integer> docIds = new ArrayList<>();
+        final int[] buffer = new int[64];
+        docs.reset(term);
+        int n;
+        do {
+            n = docs.fillDocIdBuffer(buffer);
+            for (int i = 0; i < n; i++) {
+                docIds.add(buffer[i]);
+            }
+        } while (n == buffer.length);
+        return docIds;
+    }
+}
@@ -0,0 +1,154 @@
+package org.gcd.etl;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes the same rows through {@link IssueRowWriteSupport} and through AvroParquetWriter, reads both back as
+ * {@link GcdIssueData} and compares the records.
+ */
+public class IssueRowWriteSupportTest {
+    private static final int ROWS = 3000;
+    private static final long UNIX_TIME = 1546300800L;
+
+    // fields mapped to other columns and codecs than the default mapping's, and only some of the rest
+    private static final String CUSTOM_MAPPING = "" +
+            "include: [issue_id, issue_number_raw, price_raw, price, created, modified, series_id, series_created,\n" +
+            "  series_modified, publisher_id, publisher_created, publisher_modified, publication_date, editing,\n" +
+            "  story_id, story_script, story_credit_source, story_characters]\n" +
+            "fields:\n" +
+            "  - {field: title, column: issue.notes}\n" +
+            "  - {field: series_name, column: series.name, intern: true}\n" +
+            "  - {field: series_color, column: series.language_id, codec: LANGUAGE}\n" +
+            "  - {field: on_sale_date, column: issue.key_date, codec: DATE}\n" +
+            "  - {field: page_count, column: brand.id, type: INT}\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDefaultMapping() throws Exception {
+        assertSameRecords(new MappingProfile());
+    }
+
+    @Test
+    public void testCustomMapping() throws Exception {
+        assertSameRecords(new Yaml().loadAs(CUSTOM_MAPPING, MappingProfile.class));
+    }
+
+    private void assertSameRecords(final MappingProfile mapping) throws Exception {
+        final ExtractionPlan plan = ExtractionPlan.compile(mapping, new GcdSchema(), ImmutableList.of(OutputType.PARQUET));
+        final ExtractionPlan.Binding binding =
+                plan.bind(TestRows.COLUMNS, OutputType.PARQUET, TestRows.metadata(), UNIX_TIME, new RunMetrics());
+        final ParquetProfile profile = new ParquetProfile();
+        profile.setRecordsPerPart(0);
+
+        final String avro = folder.newFolder("avro").getPath();
+        final String direct = folder.newFolder("direct").getPath();
+        final ParquetPartWriter<GcdIssueData> avroWriter =
+                new ParquetPartWriter<>(avro, profile, GcdIssueData.getClassSchema());
+        final ParquetPartWriter<IssueRowWriteSupport.IssueRow> directWriter =
+                new ParquetPartWriter<>(direct, -1, 0, profile, IssueRowWriteSupport.Builder::new);
+        final IssueRowWriteSupport.IssueRow issueRow = new IssueRowWriteSupport.IssueRow(binding);
+
+        final List<BufferedRow> rows = TestRows.rows(ROWS, 42, true);
+        final Random random = new Random(7);
+        int written = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            final BufferedRow row = rows.get(i);
+            final GcdStoryCredit credit = TestRows.credit(row, random, true);
+            GcdIssueData doc;
+            try {
+                doc = binding.buildIssueData(row, credit);
+            } catch (SQLException e) {
+                doc = null;
+            }
+            try {
+                issueRow.set(row, credit);
+            } catch (SQLException e) {
+                assertNull("Row " + i + " skipped only by the direct writer", doc);
+                continue;
+            }
+            assertNotNull("Row " + i + " skipped only by buildIssueData", doc);
+            avroWriter.write(withUtf8(doc));
+            directWriter.write(issueRow);
+            written++;
+        }
+        avroWriter.close();
+        directWriter.close();
+
+        final List<GcdIssueData> expected = read(avro);
+        final List<GcdIssueData> actual = read(direct);
+        assertTrue(written > ROWS / 2);
+        assertEquals(written, expected.size());
+        assertEquals(written, actual.size());
+        for (int i = 0; i < written; i++) {
+            assertEquals("Record " + i, expected.get(i), actual.get(i));
+        }
+        // the rows cover null and empty lists, surrogate pairs and unpaired surrogates
+        assertTrue(actual.stream().anyMatch(doc -> doc.getEditing() == null));
+        assertTrue(actual.stream().anyMatch(doc -> doc.getEditing() != null && doc.getEditing().isEmpty()));
+        assertTrue(actual.stream().anyMatch(doc -> doc.getTitle() != null &&
+                doc.getTitle().toString().codePoints().anyMatch(Character::isSupplementaryCodePoint)));
+        assertTrue(actual.stream().anyMatch(doc -> doc.getTitle() != null && doc.getTitle().toString().contains("unpaired ? high")));
+    }
+
+    /**
+     * AvroParquetWriter rejects unpaired surrogates in Strings, but writes the bytes of Utf8 values, which encode
+     * them as String.getBytes does, as the direct writer does. The driver never returns unpaired surrogates, so only
+     * the test needs the record's text as Utf8.
+     */
+    private static GcdIssueData withUtf8(final GcdIssueData doc) {
+        for (Schema.Field field : doc.getSchema().getFields()) {
+            final Object value = doc.get(field.pos());
+            if (value instanceof CharSequence) {
+                doc.put(field.pos(), new Utf8(value.toString()));
+            } else if (value instanceof List) {
+                final List<Object> values = new ArrayList<>();
+                for (Object element : (List<?>) value) {
+                    values.add(element instanceof CharSequence ? new Utf8(element.toString()) : element);
+                }
+                doc.put(field.pos(), values);
+            }
+        }
+        return doc;
+    }
+
+    private static List<GcdIssueData> read(final String directory) throws Exception {
+        final File[] parts = new File(directory).listFiles((dir, name) -> name.endsWith(".parquet"));
+        assertNotNull(parts);
+        Arrays.sort(parts);
+        final List<GcdIssueData> records = new ArrayList<>();
+        for (File part : parts) {
+            try (ParquetReader<GcdIssueData> reader = AvroParquetReader.<GcdIssueData>builder(new Path(part.getPath()))
+                    .withDataModel(SpecificData.get()).build()) {
+                GcdIssueData record;
+                while ((record = reader.read()) != null) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,109 @@
+package org.gcd.etl;
+
+import com.indeed.imhotep.archive.FileMetadata;
+import com.indeed.imhotep.archive.SquallArchiveReader;
+import com.indeed.imhotep.archive.compression.SquallArchiveCompressor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Archives a shard directory with {@link SqarArchiver} and reads every file back through {@link SquallArchiveReader}.
+ */
+public class SqarArchiverTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSeveralThreads() throws Exception {
+        assertArchived(SquallArchiveCompressor.GZIP, 4, false);
+    }
+
+    @Test
+    public void testSeveralThreadsVerified() throws Exception {
+        assertArchived(SquallArchiveCompressor.GZIP, 4, true);
+    }
+
+    @Test
+    public void testOneThread() throws Exception {
+        assertArchived(SquallArchiveCompressor.NONE, 1, false);
+    }
+
+    private void assertArchived(final SquallArchiveCompressor compressor, final int threads, final boolean verify)
+            throws Exception {
+        final File shardDir = folder.newFolder("shard");
+        // archive names, as SquallArchiveWriter names them, to contents
+        final Map<String, byte[]> files = writeShard(shardDir);
+        final String archive = new File(folder.getRoot(), "shard.sqar").getPath();
+        try (SqarArchiver archiver = new SqarArchiver(shardDir.getPath(), archive, compressor, threads, verify)) {
+            // some files are handed over early, as the shard writers do, the rest on commit
+            archiver.addFinished("fld-a");
+            archiver.addFinished("sub");
+            archiver.commit();
+        }
+
+        final SquallArchiveReader reader =
+                new SquallArchiveReader(FileSystem.getLocal(new Configuration()).getRaw(), new Path(archive));
+        final TreeSet<String> names = new TreeSet<>();
+        final TreeSet<String> archiveFiles = new TreeSet<>();
+        for (FileMetadata file : reader.readMetadata()) {
+            names.add(file.getFilename());
+            archiveFiles.add(file.getArchiveFilename());
+            assertEquals(file.getFilename(), files.get(file.getFilename()).length, file.getSize());
+        }
+        assertEquals(files.keySet(), names);
+        // each thread compresses to an archive file of its own
+        assertTrue(archiveFiles.toString(), threads == 1 ? archiveFiles.size() == 1 : archiveFiles.size() > 1);
+
+        final File copy = folder.newFolder("copy");
+        reader.copyAllToLocal(copy);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), Files.readAllBytes(new File(copy, file.getKey()).toPath()));
+        }
+    }
+
+    private static Map<String, byte[]> writeShard(final File shardDir) throws Exception {
+        final Random random = new Random(42);
+        final Map<String, byte[]> files = new TreeMap<>();
+        for (int i = 0; i < 40; i++) {
+            final String name = "fld-" + (char) ('a' + i % 4) + i + (i % 2 == 0 ? ".intterms" : ".intdocs");
+            final byte[] content = new byte[random.nextInt(200000)];
+            if (i % 3 == 0) {
+                random.nextBytes(content);
+            } else {
+                // compressible
+                for (int j = 0; j < content.length; j++) {
+                    content[j] = (byte) (j / 100 + random.nextInt(4));
+                }
+            }
+            files.put(name, content);
+        }
+        files.put("metadata.txt", "numDocs: 1000\n".getBytes("UTF-8"));
+        files.put("fld-empty.intdocs", new byte[0]);
+        files.put("sub/nested/part.bin", new byte[] {1, 2, 3});
+        files.put("sub/other.bin", new byte[4096]);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            final File target = new File(shardDir, file.getKey());
+            target.getParentFile().mkdirs();
+            Files.write(target.toPath(), file.getValue());
+        }
+        // whitespace in a name is replaced in the archive
+        Files.write(new File(shardDir, "with space.txt").toPath(), new byte[] {7});
+        files.put("with_space.txt", new byte[] {7});
+        return files;
+    }
+}
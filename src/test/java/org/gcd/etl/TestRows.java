@@ -0,0 +1,239 @@
+package org.gcd.etl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Rows shaped like those of the extraction query, with the value types Connector/J returns for them, and the
+ * metadata and story credits to build documents from. Text columns draw on values that are awkward to encode,
+ * such as surrogate pairs, unpaired surrogates and empty multi-values.
+ */
+final class TestRows {
+    // the columns of the wide extraction query
+    static final String[] COLUMNS = {
+            "issue_id", "issue_number_raw", "pubdateraw", "price", "page_count", "indicia_frequency", "isbn",
+            "variant_name", "variant_of_issue_id", "barcode", "title", "onsaledateraw", "rating", "volume_not_printed",
+            "editing", "notes", "created", "modified",
+            "series_id", "series_name", "series_year_began", "series_year_ended", "series_is_current", "scountryid",
+            "slangid", "series_has_gallery", "series_is_comics_publication", "series_color", "series_dimensions",
+            "series_paper_stock", "series_binding", "series_publishing_format", "spubtypeid", "series_is_singleton",
+            "series_created", "series_modified",
+            "publisher_id", "publisher_name", "pubcountryid", "publisher_url", "publisher_created", "publisher_modified",
+            "indicia_publisher_id", "indicia_publisher_name", "indpubcountryid", "indicia_publisher_parent_id",
+            "indicia_publisher_year_began", "indicia_publisher_year_ended", "indicia_publisher_is_surrogate",
+            "indicia_publisher_url", "indicia_publisher_created", "indicia_publisher_modified",
+            "brand_id", "brand_name", "brand_url", "brand_created", "brand_modified",
+            "story_id", "story_title", "story_feature", "story_sequence_number", "story_page_count", "story_script",
+            "story_pencils", "story_inks", "story_colors", "story_letters", "story_editing", "story_genre",
+            "story_characters", "strtypeid", "story_job_number", "story_first_line", "story_created", "story_modified"
+    };
+
+    private static final String[] TEXT = {
+            "Action Comics", "Détective", "Ōkami", "𝔊𝔠𝔡", "😀 smile",
+            "unpaired \uD800 high", "unpaired \uDC00 low", "\uDBFF", "ends high \uD83D", "", " "
+    };
+
+    private static final String[] MULTI_VALUE = {
+            "Jerry Siegel; Joe Shuster", "Jerry Siegel;Joe Shuster", "", " ; ", ";", "a;;b", " ; x ; ", "😀; \uD800",
+            "Stan Lee"
+    };
+
+    private TestRows() {
+    }
+
+    static GcdMetadata metadata() {
+        final Map<Integer, String> countries = new HashMap<>();
+        final Map<Integer, String> languages = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            countries.put(i, "c" + i);
+            languages.put(i, "l" + i);
+        }
+        final Map<Integer, String> publicationTypes = new HashMap<>();
+        publicationTypes.put(1, "magazine");
+        publicationTypes.put(2, "album");
+        final Map<Integer, String> storyTypes = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            storyTypes.put(i, "story type " + i);
+        }
+        return new GcdMetadata(countries, languages, publicationTypes, storyTypes);
+    }
+
+    /**
+     * Rows as the extraction buffers them; most have a story, some are issues without one, and the ids of the
+     * lookup tables are sometimes ones the metadata does not have. Without unpaired surrogates, the text is as the
+     * driver decodes it from UTF-8, with each one replaced.
+     */
+    static List<BufferedRow> rows(final int count, final long seed, final boolean unpairedSurrogates) throws Exception {
+        final Random random = new Random(seed);
+        final BufferedRow.Layout layout = new BufferedRow.Layout(COLUMNS);
+        final List<BufferedRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Object[] values = new Object[COLUMNS.length];
+            for (int column = 0; column < COLUMNS.length; column++) {
+                values[column] = value(COLUMNS[column], i, random);
+                if (!unpairedSurrogates && values[column] instanceof String) {
+                    values[column] = decoded((String) values[column]);
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                for (int column = 0; column < COLUMNS.length; column++) {
+                    if (COLUMNS[column].startsWith("story_") || COLUMNS[column].equals("strtypeid")) {
+                        values[column] = null;
+                    }
+                }
+            }
+            rows.add(layout.copy(new ArrayRow(values)));
+        }
+        return rows;
+    }
+
+    private static Object value(final String column, final int row, final Random random) {
+        switch (column) {
+            case "issue_id":
+                return 1000 + row;
+            case "story_id":
+                return 500000L + row;
+            case "pubdateraw":
+            case "onsaledateraw":
+                return random.nextInt(8) == 0 ? text(random) : String.format("%04d-%02d-%02d", 1900 + random.nextInt(120),
+                        random.nextInt(13), random.nextInt(32));
+            case "price":
+            case "editing":
+            case "story_script":
+            case "story_pencils":
+            case "story_inks":
+            case "story_colors":
+            case "story_letters":
+            case "story_editing":
+            case "story_genre":
+            case "story_characters":
+            case "series_binding":
+                return random.nextInt(10) == 0 ? null : MULTI_VALUE[random.nextInt(MULTI_VALUE.length)];
+            case "issue_number_raw":
+                return random.nextInt(4) == 0 ? text(random) : Integer.toString(random.nextInt(1000));
+            case "page_count":
+            case "variant_of_issue_id":
+            case "series_year_ended":
+            case "indicia_publisher_parent_id":
+            case "indicia_publisher_year_ended":
+            case "brand_id":
+                return random.nextInt(4) == 0 ? null : random.nextInt(5000);
+            case "scountryid":
+            case "slangid":
+            case "pubcountryid":
+            case "indpubcountryid":
+                return random.nextInt(25);
+            case "spubtypeid":
+                return random.nextInt(4);
+            case "strtypeid":
+                return random.nextInt(12);
+            case "story_page_count":
+                return new BigDecimal(random.nextInt(40));
+            case "volume_not_printed":
+            case "series_is_current":
+            case "series_has_gallery":
+            case "series_is_comics_publication":
+            case "series_is_singleton":
+            case "indicia_publisher_is_surrogate":
+                return random.nextBoolean();
+            case "created":
+            case "modified":
+            case "series_created":
+            case "series_modified":
+            case "publisher_created":
+            case "publisher_modified":
+            case "indicia_publisher_created":
+            case "indicia_publisher_modified":
+            case "brand_created":
+            case "brand_modified":
+            case "story_created":
+            case "story_modified":
+                return -500000000L + (long) random.nextInt(Integer.MAX_VALUE);
+            default:
+                if (column.endsWith("_id") || column.endsWith("_year_began") || column.equals("story_sequence_number")) {
+                    return random.nextInt(100000);
+                }
+                return random.nextInt(10) == 0 ? null : text(random);
+        }
+    }
+
+    private static String text(final Random random) {
+        return TEXT[random.nextInt(TEXT.length)];
+    }
+
+    private static String decoded(final String value) {
+        return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The credits of a story, or none for some stories.
+     */
+    static GcdStoryCredit credit(final BufferedRow row, final Random random, final boolean unpairedSurrogates)
+            throws Exception {
+        final Object storyId = row.getObject("story_id");
+        if (storyId == null || random.nextInt(3) == 0) {
+            return null;
+        }
+        final GcdStoryCredit credit = new GcdStoryCredit(((Number) storyId).longValue());
+        final int credits = random.nextInt(6);
+        for (int i = 0; i < credits; i++) {
+            final long creatorId = random.nextInt(50);
+            final String name = text(random) + " " + creatorId;
+            credit.addCredit(1 + random.nextInt(13), creatorId, unpairedSurrogates ? name : decoded(name));
+        }
+        return credit;
+    }
+
+    private static final class ArrayRow implements GcdRow {
+        private final Object[] values;
+
+        private ArrayRow(final Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public String getString(final String column) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(final String column) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLong(final String column) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getObject(final String column) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getString(final int column) {
+            return GcdRow.toString(values[column - 1]);
+        }
+
+        @Override
+        public int getInt(final int column) throws java.sql.SQLException {
+            return GcdRow.toInt(values[column - 1]);
+        }
+
+        @Override
+        public long getLong(final int column) throws java.sql.SQLException {
+            return GcdRow.toLong(values[column - 1]);
+        }
+
+        @Override
+        public Object getObject(final int column) {
+            return values[column - 1];
+        }
+    }
+}
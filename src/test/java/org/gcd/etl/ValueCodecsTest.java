@@ -0,0 +1,168 @@
+package org.gcd.etl;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link ValueCodecs} with the regex, String.format and SimpleDateFormat code it replaced, copied here as it
+ * was in the extractors.
+ */
+public class ValueCodecsTest {
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d\\d\\d\\d)-(\\d\\d)-(\\d\\d)");
+
+    private static final String[] ZONES = {
+            "UTC", "America/Chicago", "Asia/Kolkata", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+            "America/Havana", "Pacific/Apia"
+    };
+
+    private static int regexParseDate(final String dateString) {
+        final Matcher m = DATE_PATTERN.matcher(dateString);
+        if (m.matches()) {
+            try {
+                return Integer.parseInt(String.format("%s%s%s", m.group(1), m.group(2), m.group(3)));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int formatEpochSecondsToDate(final long unixTime, final SimpleDateFormat format) {
+        if (unixTime > 0) {
+            final Date time = new Date(unixTime * 1000L);
+            return Integer.parseInt(format.format(time));
+        }
+        return -1;
+    }
+
+    private static String[] regexSplit(final String value) {
+        return value.split("\\s*;\\s*");
+    }
+
+    @Test
+    public void testParseDate() {
+        for (String date : new String[] {
+                "2019-01-01", "1970-01-01", "1969-12-31", "1899-12-31", "0001-01-01", "0000-00-00", "9999-99-99",
+                "2019-13-45", "2019-02-30", "", "2019-1-01", "2019-01-1", "19-01-01", "2019/01/01", "2019-01-01 ",
+                " 2019-01-01", "2019-01-01T00:00", "+019-01-01", "-019-01-01", "2019--1-01", "2019-0a-01", "abcd-ef-gh",
+                "٢٠١٩-٠١-٠١", "２０１９-01-01", "2019-01-01\n",
+                "2019\u201001\u201001", "[no date]", "1950s", "?"}) {
+            assertEquals(date, regexParseDate(date), ValueCodecs.parseDate(date));
+        }
+        // the old code failed the run on a null date
+        assertEquals(-1, ValueCodecs.parseDate(null));
+
+        final Random random = new Random(42);
+        final char[] chars = {'0', '1', '5', '9', '-', '/', ' ', 'a', '١', '+'};
+        for (int i = 0; i < 200000; i++) {
+            final char[] date = new char[8 + random.nextInt(4)];
+            for (int j = 0; j < date.length; j++) {
+                date[j] = random.nextInt(4) == 0 ? chars[random.nextInt(chars.length)] : (char) ('0' + random.nextInt(10));
+            }
+            if (date.length == 10 && random.nextBoolean()) {
+                date[4] = '-';
+                date[7] = '-';
+            }
+            final String value = new String(date);
+            assertEquals(value, regexParseDate(value), ValueCodecs.parseDate(value));
+        }
+    }
+
+    @Test
+    public void testEpochSecondsToDateInDefaultZone() {
+        final SimpleDateFormat format = new SimpleDateFormat("yMMdd");
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final long unixTime = random.nextInt();
+            assertEquals(Long.toString(unixTime), formatEpochSecondsToDate(unixTime, format),
+                    ValueCodecs.epochSecondsToDate(unixTime));
+        }
+    }
+
+    @Test
+    public void testEpochSecondsToDateBeforeEpoch() {
+        for (long unixTime : new long[] {0, -1, -86400, -1000000000L, Integer.MIN_VALUE}) {
+            assertEquals(-1, ValueCodecs.epochSecondsToDate(unixTime));
+            for (String zone : ZONES) {
+                assertEquals(-1, ValueCodecs.epochSecondsToDate(unixTime, TimeZone.getTimeZone(zone)));
+            }
+        }
+    }
+
+    @Test
+    public void testEpochSecondsToDateAroundTransitions() {
+        final Random random = new Random(42);
+        for (String zone : ZONES) {
+            final TimeZone timeZone = TimeZone.getTimeZone(zone);
+            final SimpleDateFormat format = new SimpleDateFormat("yMMdd");
+            format.setTimeZone(timeZone);
+            // every quarter hour, and a second either side, from a day before to a day after each change of offset
+            final ZoneRules rules = ZoneId.of(zone).getRules();
+            ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(0));
+            while (transition != null && transition.toEpochSecond() < Integer.MAX_VALUE - 86400) {
+                for (long unixTime = transition.toEpochSecond() - 86400; unixTime <= transition.toEpochSecond() + 86400;
+                     unixTime += 900) {
+                    for (long time = unixTime - 1; time <= unixTime + 1; time++) {
+                        assertEquals(zone + " " + time, formatEpochSecondsToDate(time, format),
+                                ValueCodecs.epochSecondsToDate(time, timeZone));
+                    }
+                }
+                transition = rules.nextTransition(transition.getInstant());
+            }
+            for (int i = 0; i < 20000; i++) {
+                final long unixTime = 1 + random.nextInt(Integer.MAX_VALUE);
+                assertEquals(zone + " " + unixTime, formatEpochSecondsToDate(unixTime, format),
+                        ValueCodecs.epochSecondsToDate(unixTime, timeZone));
+            }
+        }
+    }
+
+    @Test
+    public void testSplitMultiValue() {
+        for (String value : new String[] {
+                "", " ", ";", " ; ", ";;", " ; ; ", "a", " a ", "a;b", "a ; b", "a;", "a; ", ";a", " ;a", " ; a",
+                "a;;b", "a ; ; b", "a;b;", "a;b; ;", ";;a;;", "\t;\n", "a\t;\tb", "a\u00a0;\u00a0b", "a\u2003; b",
+                "a\u000b;\fb\r", "Jerry Siegel; Joe Shuster", "😀 ; \ud800", " leading; trailing "}) {
+            assertMultiValue(value);
+        }
+
+        final Random random = new Random(42);
+        final char[] chars = {'a', 'b', ' ', ';', '\t', '\u00a0', '\u2003', '\n'};
+        for (int i = 0; i < 200000; i++) {
+            final char[] value = new char[random.nextInt(12)];
+            for (int j = 0; j < value.length; j++) {
+                value[j] = chars[random.nextInt(chars.length)];
+            }
+            assertMultiValue(new String(value));
+        }
+    }
+
+    private static void assertMultiValue(final String value) {
+        final String[] expected = regexSplit(value);
+        assertArrayEquals(value, expected, ValueCodecs.splitMultiValue(value));
+        final String[] values = new String[value.length() + 1];
+        final int count = ValueCodecs.forEachMultiValue(value, new ValueCodecs.MultiValueConsumer() {
+            private int next = 0;
+
+            @Override
+            public void accept(final String s, final int start, final int end) {
+                values[next++] = s.substring(start, end);
+            }
+        });
+        assertArrayEquals(value, expected, Arrays.copyOf(values, count));
+    }
+}